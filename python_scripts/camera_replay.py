@@ -0,0 +1,90 @@
+#!/usr/bin/env python3
+"""
+Stand-in camera that replays a video file to the live ingest endpoint.
+Every frame is encoded as JPEG and sent as one binary WebSocket message.
+Usage: python camera_replay.py <video_file_path> [--url ws://localhost:8080/ws/ingest/camera_one]
+                               [--fps 10] [--quality 80] [--loop]
+"""
+import argparse
+import sys
+import time
+
+import cv2
+
+try:
+    import websocket
+except ImportError:
+    print("websocket-client not installed. Please install with: pip install websocket-client", file=sys.stderr)
+    sys.exit(1)
+
+
+def replay(video_path, url, fps, quality, loop):
+    cap = cv2.VideoCapture(video_path)
+    if not cap.isOpened():
+        print(f"Error: Could not open video file: {video_path}", file=sys.stderr)
+        return 1
+
+    source_fps = cap.get(cv2.CAP_PROP_FPS) or 25.0
+    target_fps = fps if fps > 0 else source_fps
+    # Skip source frames so the replay runs at the target rate in video time
+    step = max(1, round(source_fps / target_fps))
+    period = 1.0 / target_fps
+
+    ws = websocket.create_connection(url)
+    print(f"Replaying {video_path} to {url} at {target_fps:.1f} fps (every {step} source frame(s))")
+
+    sent = 0
+    frame_index = 0
+    started = time.monotonic()
+    try:
+        while True:
+            ret, frame = cap.read()
+            if not ret:
+                if not loop:
+                    break
+                cap.set(cv2.CAP_PROP_POS_FRAMES, 0)
+                frame_index = 0
+                continue
+
+            frame_index += 1
+            if (frame_index - 1) % step != 0:
+                continue
+
+            ok, jpeg = cv2.imencode(".jpg", frame, [cv2.IMWRITE_JPEG_QUALITY, quality])
+            if not ok:
+                continue
+            ws.send(jpeg.tobytes(), opcode=websocket.ABNF.OPCODE_BINARY)
+            sent += 1
+
+            # Pace like a real camera instead of pushing as fast as possible
+            delay = started + sent * period - time.monotonic()
+            if delay > 0:
+                time.sleep(delay)
+
+            if sent % 50 == 0:
+                elapsed = time.monotonic() - started
+                print(f"Sent {sent} frames ({sent / elapsed:.1f} fps)")
+    except KeyboardInterrupt:
+        pass
+    finally:
+        ws.close()
+        cap.release()
+
+    print(f"Replay finished after {sent} frames")
+    return 0
+
+
+def main():
+    parser = argparse.ArgumentParser(description="Replay a video file as a live camera")
+    parser.add_argument("video_path")
+    parser.add_argument("--url", default="ws://localhost:8080/ws/ingest/camera_one")
+    parser.add_argument("--fps", type=float, default=10.0, help="frames per second to send (0 = source rate)")
+    parser.add_argument("--quality", type=int, default=80, help="JPEG quality")
+    parser.add_argument("--loop", action="store_true", help="restart the video when it ends")
+    args = parser.parse_args()
+
+    sys.exit(replay(args.video_path, args.url, args.fps, args.quality, args.loop))
+
+
+if __name__ == "__main__":
+    main()
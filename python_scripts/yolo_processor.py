@@ -1,11 +1,20 @@
 #!/usr/bin/env python3
 """
 YOLO v10 processor for detecting objects in images and videos.
-This script processes uploaded files and returns detection results as JSON.
+This script processes uploaded files and returns detection results as JSON, or with
+--format cbor as compact CBOR: class names listed once and one row of float32 values
+[classIndex, confidence, x, y, width, height] per detection. --model selects the weights,
+so the backend can run a fast model first and a larger one on uncertain frames.
+
+With --stream a video is decoded here and analyzed frame by frame; one JSON line is written per
+analyzed frame as soon as it is done (NDJSON), so the backend can broadcast results while the rest of
+the video is still being decoded.
 """
 
 import sys
 import json
+import struct
+import time
 import cv2
 import numpy as np
 from pathlib import Path
@@ -20,6 +29,35 @@ except ImportError:
     }))
     sys.exit(1)
 
+def detect(model, image):
+    """Detections of one decoded image."""
+    results = model(image, verbose=False)
+
+    detections = []
+    for result in results:
+        boxes = result.boxes
+        if boxes is not None:
+            for box in boxes:
+                # Extract detection information
+                x1, y1, x2, y2 = box.xyxy[0].cpu().numpy()
+                confidence = float(box.conf[0].cpu().numpy())
+                class_id = int(box.cls[0].cpu().numpy())
+                class_name = model.names[class_id]
+
+                detection = {
+                    "className": class_name,
+                    "confidence": confidence,
+                    "boundingBox": {
+                        "x": float(x1),
+                        "y": float(y1),
+                        "width": float(x2 - x1),
+                        "height": float(y2 - y1)
+                    }
+                }
+                detections.append(detection)
+
+    return detections
+
 def process_image(model, image_path):
     """Process a single image and return detections."""
     try:
@@ -29,32 +67,7 @@ def process_image(model, image_path):
             raise ValueError(f"Could not load image: {image_path}")
 
         # Run YOLO detection
-        results = model(image)
-
-        detections = []
-        for result in results:
-            boxes = result.boxes
-            if boxes is not None:
-                for box in boxes:
-                    # Extract detection information
-                    x1, y1, x2, y2 = box.xyxy[0].cpu().numpy()
-                    confidence = float(box.conf[0].cpu().numpy())
-                    class_id = int(box.cls[0].cpu().numpy())
-                    class_name = model.names[class_id]
-
-                    detection = {
-                        "className": class_name,
-                        "confidence": confidence,
-                        "boundingBox": {
-                            "x": float(x1),
-                            "y": float(y1),
-                            "width": float(x2 - x1),
-                            "height": float(y2 - y1)
-                        }
-                    }
-                    detections.append(detection)
-
-        return detections
+        return detect(model, image)
 
     except Exception as e:
         raise Exception(f"Error processing image: {str(e)}")
@@ -119,15 +132,153 @@ def process_video(model, video_path):
     except Exception as e:
         raise Exception(f"Error processing video: {str(e)}")
 
+def emit(line):
+    """Write one NDJSON line and hand it to the backend right away."""
+    print(json.dumps(line, separators=(",", ":")), flush=True)
+
+def stream_video(model, video_path, frame_interval, max_frames, frames_dir, frame_size):
+    """
+    Analyze every frame_interval-th frame (1-based source frame numbers) and write a line per frame:
+    a "video" line first, one "frame" line per analyzed frame, a "done" line at the end. Detections are
+    in source frame coordinates. With frames_dir, each analyzed frame is also written there as JPEG with
+    its longer side reduced to frame_size (0 keeps the source size), for previews.
+    """
+    cap = cv2.VideoCapture(str(video_path))
+    if not cap.isOpened():
+        raise ValueError(f"Could not open video: {video_path}")
+
+    total_frames = int(cap.get(cv2.CAP_PROP_FRAME_COUNT))
+    emit({
+        "type": "video",
+        "totalFrames": min(total_frames // frame_interval, max_frames) if total_frames > 0 else -1,
+        "fps": cap.get(cv2.CAP_PROP_FPS),
+        "width": int(cap.get(cv2.CAP_PROP_FRAME_WIDTH)),
+        "height": int(cap.get(cv2.CAP_PROP_FRAME_HEIGHT))
+    })
+
+    if frames_dir:
+        Path(frames_dir).mkdir(parents=True, exist_ok=True)
+
+    frame_number = 0
+    analyzed = 0
+    while analyzed < max_frames:
+        ret, frame = cap.read()
+        if not ret:
+            break
+        frame_number += 1
+        if frame_number % frame_interval != 0:
+            continue
+
+        start = time.perf_counter()
+        detections = detect(model, frame)
+        inference_ms = int((time.perf_counter() - start) * 1000)
+        analyzed += 1
+
+        line = {"type": "frame", "frame": frame_number, "index": analyzed, "inferenceMs": inference_ms}
+        if frames_dir:
+            height, width = frame.shape[:2]
+            scale = min(1.0, frame_size / max(width, height)) if frame_size > 0 else 1.0
+            if scale < 1.0:
+                frame = cv2.resize(frame, (max(1, round(width * scale)), max(1, round(height * scale))),
+                                   interpolation=cv2.INTER_AREA)
+            frame_path = Path(frames_dir) / f"frame_{frame_number}.jpg"
+            cv2.imwrite(str(frame_path), frame, [cv2.IMWRITE_JPEG_QUALITY, 90])
+            line["framePath"] = str(frame_path)
+            line["frameWidth"] = frame.shape[1]
+            line["frameHeight"] = frame.shape[0]
+        line["result"] = {
+            "fileName": f"frame_{frame_number}.jpg",
+            "fileType": "IMAGE",
+            "detections": detections,
+            "status": "completed",
+            "totalDetections": len(detections)
+        }
+        emit(line)
+
+    cap.release()
+    emit({"type": "done", "frames": analyzed, "lastFrame": frame_number})
+
+# Precedes the big-endian length and CBOR bytes of the result, so the backend can find it in the output
+CBOR_OUTPUT_MARKER = b"\0YOLO-CBOR\0"
+
+def compact_result(result):
+    """Result with class names listed once and every detection as a row of float32 values."""
+    classes = {}
+    rows = []
+    for detection in result["detections"]:
+        class_index = classes.setdefault(detection["className"], len(classes))
+        box = detection["boundingBox"]
+        row = [class_index] + [float(np.float32(value)) for value in (
+            detection["confidence"], box["x"], box["y"], box["width"], box["height"])]
+        extra = {key: value for key, value in detection.items()
+                 if key not in ("className", "confidence", "boundingBox")}
+        if extra:
+            row.append(extra)
+        rows.append(row)
+    compact = dict(result)
+    compact["classes"] = list(classes)
+    compact["detections"] = rows
+    return compact
+
+def write_result(result, output_format):
+    """Write the result as CBOR if requested and available, otherwise as single-line JSON."""
+    if output_format == "cbor":
+        try:
+            import cbor2
+            # Canonical encoding stores every float in the shortest lossless width, float32 for the rows
+            payload = cbor2.dumps(compact_result(result), canonical=True)
+            sys.stdout.flush()
+            sys.stdout.buffer.write(CBOR_OUTPUT_MARKER + struct.pack(">I", len(payload)) + payload)
+            sys.stdout.buffer.flush()
+            return
+        except ImportError:
+            pass
+    print(json.dumps(result, separators=(",", ":")))
+
+DEFAULT_MODEL = "yolov8n.pt"  # YOLOv8 nano, fast and stable
+
+def parse_args(args):
+    """File path and options, or None if the arguments are invalid."""
+    options = {"--format": "json", "--model": DEFAULT_MODEL, "--frame-interval": "13", "--max-frames": "1500",
+               "--frames-dir": None, "--frame-size": "640"}
+    positional = []
+    stream = False
+    i = 0
+    while i < len(args):
+        if args[i] == "--stream":
+            stream = True
+            i += 1
+        elif args[i] in options and i + 1 < len(args):
+            options[args[i]] = args[i + 1]
+            i += 2
+        else:
+            positional.append(args[i])
+            i += 1
+    if len(positional) != 1 or options["--format"] not in ("json", "cbor"):
+        return None
+    try:
+        frame_interval = max(1, int(options["--frame-interval"]))
+        max_frames = int(options["--max-frames"])
+        frame_size = int(options["--frame-size"])
+    except ValueError:
+        return None
+    return {"file_path": positional[0], "format": options["--format"], "model": options["--model"],
+            "stream": stream, "frame_interval": frame_interval, "max_frames": max_frames,
+            "frames_dir": options["--frames-dir"], "frame_size": frame_size}
+
 def main():
-    if len(sys.argv) != 2:
+    parsed = parse_args(sys.argv[1:])
+    if parsed is None:
         print(json.dumps({
-            "error": "Usage: python yolo_processor.py <file_path>",
+            "error": "Usage: python yolo_processor.py <file_path> [--format json|cbor] [--model weights.pt] "
+                     "[--stream [--frame-interval N] [--max-frames N] [--frames-dir DIR] [--frame-size N]]",
             "status": "failed"
         }))
         sys.exit(1)
 
-    file_path = Path(sys.argv[1])
+    file_path = Path(parsed["file_path"])
+    output_format = parsed["format"]
+    model_path = parsed["model"]
 
     if not file_path.exists():
         print(json.dumps({
@@ -138,12 +289,17 @@ def main():
 
     try:
         # Load YOLO model with verbose=False to suppress output
-        model = YOLO('yolov8n.pt')  # Use YOLOv8 nano which is more stable
+        model = YOLO(model_path)
         model.verbose = False  # Suppress verbose output
 
         # Determine file type and process accordingly
         file_extension = file_path.suffix.lower()
 
+        if parsed["stream"] and file_extension in ['.mp4', '.avi', '.mov', '.wmv', '.mkv']:
+            stream_video(model, file_path, parsed["frame_interval"], parsed["max_frames"],
+                         parsed["frames_dir"], parsed["frame_size"])
+            return
+
         if file_extension in ['.jpg', '.jpeg', '.png', '.gif', '.bmp']:
             detections = process_image(model, file_path)
             file_type = "IMAGE"
@@ -153,7 +309,7 @@ def main():
         else:
             raise ValueError(f"Unsupported file type: {file_extension}")
 
-        # Output results as JSON
+        # Output results
         result = {
             "fileName": file_path.name,
             "fileType": file_type,
@@ -162,9 +318,12 @@ def main():
             "totalDetections": len(detections)
         }
 
-        print(json.dumps(result, indent=2))
+        write_result(result, output_format)
 
     except Exception as e:
+        if parsed["stream"]:
+            emit({"type": "error", "errorMessage": str(e)})
+            sys.exit(1)
         error_result = {
             "fileName": file_path.name,
             "fileType": "UNKNOWN",
@@ -0,0 +1,23 @@
+package com.wavestone.stacamback.config;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * CBOR encoding for clients that ask for it. JSON stays the default; REST clients get CBOR by sending
+ * {@code Accept: application/cbor}, WebSocket clients with the {@code encoding: cbor} subscription option.
+ */
+@Configuration
+public class CborConfig {
+
+    /**
+     * Configured like the JSON mapper, so both encodings carry the same fields and date formats
+     */
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+    }
+}
@@ -0,0 +1,99 @@
+package com.wavestone.stacamback.config;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wavestone.stacamback.service.SubscriptionTracker;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationContext;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.simp.stomp.StompBrokerRelayMessageHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Shares the set of subscribed destinations between nodes in broker-relay mode. Each node
+ * periodically announces its local destinations on a system subscription of the relay, so a node
+ * that processes a job knows which payload variants clients on other nodes are waiting for.
+ */
+@Component
+@ConditionalOnProperty(name = "app.websocket.broker.mode", havingValue = "relay")
+@RequiredArgsConstructor
+@Slf4j
+public class ClusterSubscriptionExchange implements SmartInitializingSingleton {
+
+    public static final String ANNOUNCE_DESTINATION = "/topic/cluster.subscriptions";
+
+    private final SubscriptionTracker subscriptionTracker;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ObjectMapper objectMapper;
+    private final ApplicationContext applicationContext;
+    private final NodeIdentity nodeIdentity;
+
+    @Value("${app.cluster.subscription-sync-interval:2000}")
+    private long syncInterval;
+
+    private Set<String> lastAnnounced = Set.of();
+    private long lastAnnouncedAt;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        // Register before the relay starts so the system session subscribes on connect
+        for (AbstractBrokerMessageHandler handler :
+                applicationContext.getBeansOfType(AbstractBrokerMessageHandler.class).values()) {
+            if (handler instanceof StompBrokerRelayMessageHandler relay) {
+                Map<String, MessageHandler> subscriptions =
+                        new HashMap<>(relay.getSystemSubscriptions());
+                subscriptions.put(ANNOUNCE_DESTINATION, this::handleAnnouncement);
+                relay.setSystemSubscriptions(subscriptions);
+                log.info("Node {} exchanging subscriptions on {}", nodeIdentity.getNodeId(), ANNOUNCE_DESTINATION);
+            }
+        }
+    }
+
+    /**
+     * Announce local destinations when they change, and at least every few intervals as a heartbeat
+     */
+    @Scheduled(fixedDelayString = "${app.cluster.subscription-sync-interval:2000}")
+    public void announce() {
+        Set<String> destinations = subscriptionTracker.getLocalDestinations();
+        long now = System.currentTimeMillis();
+        if (destinations.equals(lastAnnounced) && now - lastAnnouncedAt < syncInterval * 5) {
+            return;
+        }
+        try {
+            Map<String, Object> announcement = new HashMap<>();
+            announcement.put("nodeId", nodeIdentity.getNodeId());
+            announcement.put("destinations", destinations);
+            messagingTemplate.convertAndSend(ANNOUNCE_DESTINATION, announcement);
+            lastAnnounced = destinations;
+            lastAnnouncedAt = now;
+        } catch (Exception e) {
+            log.debug("Could not announce subscriptions: {}", e.getMessage());
+        }
+    }
+
+    private void handleAnnouncement(Message<?> message) {
+        try {
+            JsonNode announcement = objectMapper.readTree((byte[]) message.getPayload());
+            String remoteNodeId = announcement.path("nodeId").asText();
+            if (remoteNodeId.isEmpty() || remoteNodeId.equals(nodeIdentity.getNodeId())) {
+                return;
+            }
+            List<String> destinations = new ArrayList<>();
+            announcement.path("destinations").forEach(destination -> destinations.add(destination.asText()));
+            // Announcements repeat at least every 5 intervals; allow for one missed heartbeat
+            subscriptionTracker.updateRemoteNode(remoteNodeId, destinations, syncInterval * 12);
+        } catch (Exception e) {
+            log.warn("Ignoring malformed subscription announcement", e);
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package com.wavestone.stacamback.config;
+
+import com.wavestone.stacamback.model.SessionDeliveryStats;
+import jakarta.websocket.RemoteEndpoint;
+import jakarta.websocket.SendHandler;
+import jakarta.websocket.SendResult;
+import jakarta.websocket.Session;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+import org.springframework.web.socket.sockjs.transport.SockJsSession;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Session decorator that never blocks the sending thread. Outgoing STOMP frames are queued and
+ * written by a single flush task per session, which sends one frame per run and then resubmits itself so
+ * that sessions take turns on the shared flush threads. Plain WebSocket sessions send asynchronously, so a
+ * slow peer never holds a flush thread; SockJS sessions send blocking, bounded by the container's send
+ * timeout. Either way a send running longer than the send time limit closes the session. Frames carrying a {@code conflation-key} header only keep the
+ * latest pending frame per subscription and key, while all other frames are always delivered in order.
+ */
+@Slf4j
+public class ConflatingWebSocketSession extends WebSocketSessionDecorator {
+
+    public static final String CONFLATION_KEY_HEADER = "conflation-key";
+
+    private static final String BLOCKING_SEND_TIMEOUT_PROPERTY = "org.apache.tomcat.websocket.BLOCKING_SEND_TIMEOUT";
+
+    private final Executor flushExecutor;
+    private final boolean conflate;
+    private final int maxPendingFrames;
+    private final long bufferSizeLimit;
+    private final long sendTimeLimit;
+
+    // Container session for asynchronous sends, null for SockJS sessions which frame messages themselves
+    private final RemoteEndpoint.Async asyncRemote;
+
+    private final Object lock = new Object();
+    private final Deque<Slot> pending = new ArrayDeque<>();
+    private final Map<String, Slot> pendingFrames = new HashMap<>();
+    private final AtomicBoolean flushing = new AtomicBoolean();
+
+    private long pendingBytes;
+    private long deliveredMessages;
+    private long conflatedMessages;
+    private long droppedMessages;
+    private volatile long sendStartTime;
+    private volatile boolean closing;
+
+    public ConflatingWebSocketSession(WebSocketSession delegate, Executor flushExecutor, boolean conflate,
+                                      int maxPendingFrames, long bufferSizeLimit, long sendTimeLimit) {
+        super(delegate);
+        this.flushExecutor = flushExecutor;
+        this.conflate = conflate;
+        this.maxPendingFrames = maxPendingFrames;
+        this.bufferSizeLimit = bufferSizeLimit;
+        this.sendTimeLimit = sendTimeLimit;
+
+        Session nativeSession = delegate instanceof NativeWebSocketSession nativeWebSocket
+                ? nativeWebSocket.getNativeSession(Session.class) : null;
+        if (nativeSession != null) {
+            // Tomcat ends a blocking send after this many milliseconds (default 20 s), e.g. SockJS over WebSocket
+            nativeSession.getUserProperties().put(BLOCKING_SEND_TIMEOUT_PROPERTY, sendTimeLimit);
+        }
+        if (nativeSession != null && !(delegate instanceof SockJsSession)) {
+            this.asyncRemote = nativeSession.getAsyncRemote();
+            this.asyncRemote.setSendTimeout(sendTimeLimit);
+        } else {
+            this.asyncRemote = null;
+        }
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        if (closing) {
+            return;
+        }
+
+        String key = conflate ? conflationKey(message) : null;
+        // Character count for text frames avoids re-encoding large payloads just to measure them
+        int size = message instanceof TextMessage text ? text.getPayload().length() : message.getPayloadLength();
+        synchronized (lock) {
+            if (key != null) {
+                Slot slot = pendingFrames.get(key);
+                if (slot != null) {
+                    // Keep the slot's position, replace its content with the newer frame
+                    pendingBytes += size - slot.size;
+                    slot.message = message;
+                    slot.size = size;
+                    conflatedMessages++;
+                } else {
+                    if (pendingFrames.size() >= maxPendingFrames) {
+                        evictOldestFrame();
+                    }
+                    slot = new Slot(key, message, size);
+                    pendingFrames.put(key, slot);
+                    pending.addLast(slot);
+                    pendingBytes += size;
+                }
+            } else {
+                pending.addLast(new Slot(null, message, size));
+                pendingBytes += size;
+            }
+
+            if (pendingBytes > bufferSizeLimit) {
+                closing = true;
+            }
+        }
+
+        if (closing) {
+            log.warn("Closing WebSocket session {}: pending messages exceed {} bytes", getId(), bufferSizeLimit);
+            closeQuietly(CloseStatus.SESSION_NOT_RELIABLE);
+            return;
+        }
+        scheduleFlush();
+    }
+
+    public SessionDeliveryStats getStats() {
+        synchronized (lock) {
+            return new SessionDeliveryStats(getId(), conflate ? "CONFLATE" : "QUEUE", pending.size(), pendingBytes,
+                    deliveredMessages, conflatedMessages, droppedMessages);
+        }
+    }
+
+    private void evictOldestFrame() {
+        Iterator<Slot> iterator = pending.iterator();
+        while (iterator.hasNext()) {
+            Slot slot = iterator.next();
+            if (slot.key != null) {
+                iterator.remove();
+                pendingFrames.remove(slot.key);
+                pendingBytes -= slot.size;
+                droppedMessages++;
+                return;
+            }
+        }
+    }
+
+    private void scheduleFlush() {
+        if (flushing.compareAndSet(false, true)) {
+            flushExecutor.execute(this::flush);
+        }
+    }
+
+    private void flush() {
+        WebSocketMessage<?> message;
+        synchronized (lock) {
+            Slot slot = pending.pollFirst();
+            if (slot == null) {
+                // Cleared under the lock, so a message queued afterwards schedules a new flush
+                flushing.set(false);
+                return;
+            }
+            if (slot.key != null) {
+                pendingFrames.remove(slot.key);
+            }
+            pendingBytes -= slot.size;
+            message = slot.message;
+        }
+
+        if (closing || !isOpen()) {
+            flushExecutor.execute(this::flush);
+            return;
+        }
+        sendStartTime = System.currentTimeMillis();
+        if (asyncRemote != null && sendAsync(message)) {
+            return;
+        }
+        try {
+            getDelegate().sendMessage(message);
+            sent();
+        } catch (Exception e) {
+            log.debug("Failed to send message to WebSocket session {}: {}", getId(), e.getMessage());
+        }
+        sendStartTime = 0;
+        // Requeue behind the other sessions' flushes instead of holding the thread for the whole backlog
+        flushExecutor.execute(this::flush);
+    }
+
+    /**
+     * Hand a message to the container; the flush continues from the completion callback
+     *
+     * @return false if the message has to be sent blocking
+     */
+    private boolean sendAsync(WebSocketMessage<?> message) {
+        SendHandler handler = this::onSendResult;
+        try {
+            if (message instanceof TextMessage text) {
+                asyncRemote.sendText(text.getPayload(), handler);
+            } else if (message instanceof BinaryMessage binary) {
+                asyncRemote.sendBinary(binary.getPayload(), handler);
+            } else {
+                return false;
+            }
+        } catch (Exception e) {
+            onSendResult(new SendResult(e));
+        }
+        return true;
+    }
+
+    private void onSendResult(SendResult result) {
+        sendStartTime = 0;
+        if (result.isOK()) {
+            sent();
+        } else {
+            // Includes the container's send timeout; a session whose sends fail cannot keep up
+            log.debug("Failed to send message to WebSocket session {}: {}", getId(),
+                    result.getException() != null ? result.getException().getMessage() : "unknown error");
+            abort("send failed");
+        }
+        flushExecutor.execute(this::flush);
+    }
+
+    private void sent() {
+        synchronized (lock) {
+            deliveredMessages++;
+        }
+    }
+
+    /**
+     * Close the session if its current send has been running longer than the send time limit. Called
+     * periodically by the watchdog, as a stuck send cannot notice by itself.
+     */
+    void checkSendTimeLimit() {
+        long start = sendStartTime;
+        if (start > 0 && System.currentTimeMillis() - start > sendTimeLimit) {
+            abort("send exceeded " + sendTimeLimit + " ms");
+        }
+    }
+
+    private void abort(String reason) {
+        if (closing) {
+            return;
+        }
+        closing = true;
+        log.warn("Closing WebSocket session {}: {}", getId(), reason);
+        closeQuietly(CloseStatus.SESSION_NOT_RELIABLE);
+    }
+
+    private void closeQuietly(CloseStatus status) {
+        try {
+            getDelegate().close(status);
+        } catch (Exception e) {
+            log.debug("Failed to close WebSocket session {}", getId(), e);
+        }
+    }
+
+    /**
+     * Read the conflation key of a STOMP MESSAGE frame, scoped to its subscription
+     */
+    private static String conflationKey(WebSocketMessage<?> message) {
+        if (message instanceof TextMessage text) {
+            return conflationKey(text.getPayload());
+        }
+        if (message instanceof BinaryMessage binary) {
+            // Binary STOMP frames still have text headers, ending at the first empty line
+            ByteBuffer payload = binary.getPayload();
+            int end = payload.position();
+            while (end + 1 < payload.limit() && !(payload.get(end) == '\n' && payload.get(end + 1) == '\n')) {
+                end++;
+            }
+            byte[] headers = new byte[end + 2 - payload.position()];
+            payload.duplicate().get(headers, 0, Math.min(headers.length, payload.remaining()));
+            return conflationKey(new String(headers, StandardCharsets.UTF_8));
+        }
+        return null;
+    }
+
+    static String conflationKey(String frame) {
+        if (!frame.startsWith("MESSAGE")) {
+            return null;
+        }
+        String subscription = null;
+        String key = null;
+        int lineStart = frame.indexOf('\n') + 1;
+        while (lineStart > 0 && lineStart < frame.length()) {
+            int lineEnd = frame.indexOf('\n', lineStart);
+            if (lineEnd < 0 || lineEnd == lineStart) {
+                break; // end of headers
+            }
+            String line = frame.substring(lineStart, lineEnd);
+            if (line.startsWith(CONFLATION_KEY_HEADER + ":")) {
+                key = line.substring(CONFLATION_KEY_HEADER.length() + 1);
+            } else if (line.startsWith("subscription:")) {
+                subscription = line.substring("subscription:".length());
+            }
+            lineStart = lineEnd + 1;
+        }
+        return key != null ? subscription + "|" + key : null;
+    }
+
+    private static final class Slot {
+        private final String key;
+        private WebSocketMessage<?> message;
+        private int size;
+
+        private Slot(String key, WebSocketMessage<?> message, int size) {
+            this.key = key;
+            this.message = message;
+            this.size = size;
+        }
+    }
+}
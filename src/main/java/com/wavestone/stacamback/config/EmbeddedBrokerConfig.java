@@ -0,0 +1,47 @@
+package com.wavestone.stacamback.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.activemq.artemis.api.core.SimpleString;
+import org.apache.activemq.artemis.core.config.impl.ConfigurationImpl;
+import org.apache.activemq.artemis.core.server.embedded.EmbeddedActiveMQ;
+import org.apache.activemq.artemis.core.settings.impl.AddressSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Embedded ActiveMQ Artemis broker exposing a STOMP acceptor for the broker relay.
+ * Intended for single-box deployments and tests; production nodes relay to an external broker.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.websocket.broker.embedded.enabled", havingValue = "true")
+@Slf4j
+public class EmbeddedBrokerConfig {
+
+    @Value("${app.websocket.broker.embedded.host:127.0.0.1}")
+    private String host;
+
+    @Value("${app.websocket.broker.embedded.port:61613}")
+    private int port;
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public EmbeddedActiveMQ embeddedStompBroker() throws Exception {
+        ConfigurationImpl configuration = new ConfigurationImpl();
+        configuration.setName("sta-cam-embedded");
+        configuration.setPersistenceEnabled(false);
+        configuration.setSecurityEnabled(false);
+        configuration.setJMXManagementEnabled(false);
+        // STOMP destinations under /topic/ are publish-subscribe addresses
+        configuration.addAcceptorConfiguration("stomp",
+                "tcp://" + host + ":" + port + "?protocols=STOMP;multicastPrefix=/topic/");
+        configuration.addAddressSetting("#", new AddressSettings()
+                .setDeadLetterAddress(SimpleString.of("DLA"))
+                .setExpiryAddress(SimpleString.of("ExpiryQueue")));
+
+        EmbeddedActiveMQ broker = new EmbeddedActiveMQ();
+        broker.setConfiguration(configuration);
+        log.info("Embedded STOMP broker configured on {}:{}", host, port);
+        return broker;
+    }
+}
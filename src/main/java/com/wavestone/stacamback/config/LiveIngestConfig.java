@@ -0,0 +1,24 @@
+package com.wavestone.stacamback.config;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+/**
+ * Plain binary WebSocket endpoint for cameras, next to the STOMP endpoint used by viewers
+ */
+@Configuration
+@EnableWebSocket
+@RequiredArgsConstructor
+public class LiveIngestConfig implements WebSocketConfigurer {
+
+    private final LiveIngestHandler liveIngestHandler;
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        registry.addHandler(liveIngestHandler, "/ws/ingest/*")
+                .setAllowedOriginPatterns("*");
+    }
+}
@@ -0,0 +1,85 @@
+package com.wavestone.stacamback.config;
+
+import com.wavestone.stacamback.model.CameraIds;
+import com.wavestone.stacamback.service.LiveIngestService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.BinaryWebSocketHandler;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+
+/**
+ * Receives live camera frames on {@code /ws/ingest/{cameraId}}: every binary message is one JPEG image.
+ * Connections for unknown cameras are closed with a policy violation.
+ */
+@Component
+@Slf4j
+public class LiveIngestHandler extends BinaryWebSocketHandler {
+
+    private static final String CAMERA_ID_ATTRIBUTE = "cameraId";
+
+    private final LiveIngestService liveIngestService;
+    private final int maxFrameSize;
+
+    public LiveIngestHandler(LiveIngestService liveIngestService,
+                             @Value("${app.live.max-frame-size:4194304}") int maxFrameSize) {
+        this.liveIngestService = liveIngestService;
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        String cameraId = cameraIdOf(session.getUri());
+        if (cameraId == null) {
+            session.close(CloseStatus.BAD_DATA.withReason("Missing camera id"));
+            return;
+        }
+        // Every camera gets state and a frame file, so only known cameras may publish
+        if (!CameraIds.isValid(cameraId)) {
+            session.close(CloseStatus.POLICY_VIOLATION.withReason("Unknown camera id"));
+            return;
+        }
+        session.getAttributes().put(CAMERA_ID_ATTRIBUTE, cameraId);
+        session.setBinaryMessageSizeLimit(maxFrameSize);
+        liveIngestService.publisherConnected(cameraId);
+    }
+
+    @Override
+    protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) {
+        String cameraId = (String) session.getAttributes().get(CAMERA_ID_ATTRIBUTE);
+        if (cameraId == null) {
+            return;
+        }
+        ByteBuffer payload = message.getPayload();
+        byte[] jpeg = new byte[payload.remaining()];
+        payload.get(jpeg);
+        liveIngestService.submitFrame(cameraId, jpeg);
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        String cameraId = (String) session.getAttributes().get(CAMERA_ID_ATTRIBUTE);
+        if (cameraId != null) {
+            liveIngestService.publisherDisconnected(cameraId);
+        }
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) {
+        log.warn("Live ingest transport error on session {}: {}", session.getId(), exception.getMessage());
+    }
+
+    private static String cameraIdOf(URI uri) {
+        if (uri == null) {
+            return null;
+        }
+        String path = uri.getPath();
+        String cameraId = path.substring(path.lastIndexOf('/') + 1);
+        return cameraId.isBlank() || "ingest".equals(cameraId) ? null : cameraId;
+    }
+}
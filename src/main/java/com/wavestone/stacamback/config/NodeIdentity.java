@@ -0,0 +1,22 @@
+package com.wavestone.stacamback.config;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+/**
+ * Identifier of this backend instance, used for job leases and cluster announcements
+ */
+@Component
+@Getter
+public class NodeIdentity {
+
+    private final String nodeId;
+
+    public NodeIdentity(@Value("${app.cluster.node-id:}") String configuredNodeId) {
+        this.nodeId = configuredNodeId == null || configuredNodeId.isBlank()
+                ? "node-" + UUID.randomUUID() : configuredNodeId;
+    }
+}
@@ -0,0 +1,122 @@
+package com.wavestone.stacamback.config;
+
+import com.wavestone.stacamback.service.CancellationToken;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors for the blocking parts of the pipeline (subprocess waits, JDBC, WebSocket sends). With
+ * {@code spring.threads.virtual.enabled} on Java 21+ every task gets its own virtual thread, so thousands
+ * of in-flight uploads and frame jobs cost almost no thread memory; otherwise fixed pools of platform
+ * threads are used. In both modes the number of concurrent model runs is capped by a semaphore rather
+ * than by pool sizes.
+ */
+@Component
+@Slf4j
+public class PipelineExecutors {
+
+    private static final long PERMIT_POLL_MILLIS = 200;
+
+    private final boolean virtualThreads;
+    private final int maxConcurrentInference;
+    private final Semaphore inferencePermits;
+    private final Executor uploadExecutor;
+
+    public PipelineExecutors(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreadsEnabled,
+                             @Value("${app.pipeline.max-concurrent-inference:4}") int maxConcurrentInference) {
+        boolean supported = Runtime.version().feature() >= 21;
+        if (virtualThreadsEnabled && !supported) {
+            log.warn("Virtual threads need Java 21, running on Java {}; using platform thread pools",
+                    Runtime.version().feature());
+        }
+        this.virtualThreads = virtualThreadsEnabled && supported;
+        this.maxConcurrentInference = maxConcurrentInference;
+        this.inferencePermits = new Semaphore(maxConcurrentInference, true);
+        this.uploadExecutor = virtualThreads ? newExecutor("upload-processing", 0) : ForkJoinPool.commonPool();
+        log.info("Pipeline running on {} threads, at most {} concurrent inference runs",
+                virtualThreads ? "virtual" : "platform", maxConcurrentInference);
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Executor for whole-upload processing
+     */
+    public Executor getUploadExecutor() {
+        return uploadExecutor;
+    }
+
+    /**
+     * Executor for blocking pipeline work: one virtual thread per task, or a fixed pool of daemon
+     * platform threads named {@code name-N}
+     */
+    public ExecutorService newExecutor(String name, int platformThreads) {
+        if (virtualThreads) {
+            return newThreadPerTaskExecutor(new VirtualThreadTaskExecutor(name + "-").getVirtualThreadFactory());
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(platformThreads, runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public <T> T runInference(Callable<T> inference) throws Exception {
+        return runInference(CancellationToken.NONE, inference);
+    }
+
+    /**
+     * Run an inference call once a permit is free. Work cancelled or past its deadline while waiting is
+     * dropped without taking a permit.
+     */
+    public <T> T runInference(CancellationToken token, Callable<T> inference) throws Exception {
+        while (!inferencePermits.tryAcquire(PERMIT_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            checkRunnable(token);
+        }
+        try {
+            checkRunnable(token);
+            return inference.call();
+        } finally {
+            releaseInference();
+        }
+    }
+
+    private void releaseInference() {
+        inferencePermits.release();
+    }
+
+    private static void checkRunnable(CancellationToken token) {
+        token.throwIfCancelled();
+        if (token.isExpired()) {
+            throw new CancellationException("Deadline expired before inference");
+        }
+    }
+
+    public int getMaxConcurrentInference() {
+        return maxConcurrentInference;
+    }
+
+    public int getInferenceQueueLength() {
+        return inferencePermits.getQueueLength();
+    }
+
+    /**
+     * Executors.newThreadPerTaskExecutor is looked up reflectively so that the default Java 17 build compiles
+     */
+    private static ExecutorService newThreadPerTaskExecutor(ThreadFactory threadFactory) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, threadFactory);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Thread-per-task executors are not available", e);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.wavestone.stacamback.config;
+
+import com.wavestone.stacamback.model.SessionDeliveryStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.socket.sockjs.transport.SockJsSession;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wraps every WebSocket session in a {@link ConflatingWebSocketSession}. The delivery mode is chosen per
+ * session with the {@code delivery} handshake parameter ({@code /ws?delivery=queue} or {@code conflate}).
+ * All sessions share {@code app.websocket.delivery.flush-threads} flush threads, and a watchdog closes
+ * sessions whose current send has been running longer than {@code app.websocket.delivery.send-time-limit}.
+ */
+@Component
+@Slf4j
+public class SessionDeliveryManager implements WebSocketHandlerDecoratorFactory, HandshakeInterceptor, DisposableBean {
+
+    public static final String DELIVERY_MODE_ATTRIBUTE = "deliveryMode";
+    public static final String CONFLATE_MODE = "conflate";
+    public static final String QUEUE_MODE = "queue";
+    public static final String BINARY_FRAMES_ATTRIBUTE = "binaryFrames";
+
+    private static final long WATCHDOG_INTERVAL_MILLIS = 1000;
+
+    @Value("${app.websocket.delivery.default-mode:queue}")
+    private String defaultMode;
+
+    @Value("${app.websocket.delivery.max-pending-frames:16}")
+    private int maxPendingFrames;
+
+    @Value("${app.websocket.delivery.buffer-size-limit:5242880}")
+    private long bufferSizeLimit;
+
+    @Value("${app.websocket.delivery.send-time-limit:20000}")
+    private long sendTimeLimit;
+
+    private final Map<String, ConflatingWebSocketSession> sessions = new ConcurrentHashMap<>();
+
+    private final ExecutorService flushExecutor;
+
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ws-send-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SessionDeliveryManager(PipelineExecutors pipelineExecutors,
+                                  @Value("${app.websocket.delivery.flush-threads:8}") int flushThreads) {
+        this.flushExecutor = pipelineExecutors.newExecutor("ws-flush", flushThreads);
+        watchdog.scheduleWithFixedDelay(this::checkSendTimeLimits, WATCHDOG_INTERVAL_MILLIS,
+                WATCHDOG_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void checkSendTimeLimits() {
+        for (ConflatingWebSocketSession session : sessions.values()) {
+            try {
+                session.checkSendTimeLimit();
+            } catch (RuntimeException e) {
+                // An exception would cancel the schedule
+                log.debug("Send time check of WebSocket session {} failed", session.getId(), e);
+            }
+        }
+    }
+
+    @Override
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                boolean conflate = CONFLATE_MODE.equalsIgnoreCase(
+                        (String) session.getAttributes().getOrDefault(DELIVERY_MODE_ATTRIBUTE, defaultMode));
+                // SockJS transports only carry text
+                session.getAttributes().put(BINARY_FRAMES_ATTRIBUTE, !(session instanceof SockJsSession));
+                ConflatingWebSocketSession decorated = new ConflatingWebSocketSession(session, flushExecutor,
+                        conflate, maxPendingFrames, bufferSizeLimit, sendTimeLimit);
+                sessions.put(session.getId(), decorated);
+                super.afterConnectionEstablished(decorated);
+            }
+
+            @Override
+            public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+                super.handleMessage(resolve(session), message);
+            }
+
+            @Override
+            public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
+                super.handleTransportError(resolve(session), exception);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                ConflatingWebSocketSession decorated = sessions.remove(session.getId());
+                super.afterConnectionClosed(decorated != null ? decorated : session, closeStatus);
+            }
+        };
+    }
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        String mode = UriComponentsBuilder.fromUri(request.getURI()).build().getQueryParams().getFirst("delivery");
+        if (CONFLATE_MODE.equalsIgnoreCase(mode) || QUEUE_MODE.equalsIgnoreCase(mode)) {
+            attributes.put(DELIVERY_MODE_ATTRIBUTE, mode.toLowerCase());
+        }
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+    }
+
+    public List<SessionDeliveryStats> getSessionStats() {
+        return sessions.values().stream().map(ConflatingWebSocketSession::getStats).toList();
+    }
+
+    @Override
+    public void destroy() {
+        watchdog.shutdownNow();
+        flushExecutor.shutdownNow();
+    }
+
+    private WebSocketSession resolve(WebSocketSession session) {
+        WebSocketSession decorated = sessions.get(session.getId());
+        return decorated != null ? decorated : session;
+    }
+}
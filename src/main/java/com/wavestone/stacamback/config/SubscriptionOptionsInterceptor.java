@@ -0,0 +1,92 @@
+package com.wavestone.stacamback.config;
+
+import com.wavestone.stacamback.model.SubscriptionOptions;
+import com.wavestone.stacamback.service.SubscriptionTracker;
+import lombok.RequiredArgsConstructor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+
+import java.util.Map;
+
+/**
+ * Rewrites SUBSCRIBE frames carrying {@code images} / {@code min-confidence} / {@code encoding} headers to
+ * the canonical variant destination and records subscriptions in the {@link SubscriptionTracker}.
+ * CBOR is only granted to sessions that can receive binary frames, i.e. not over SockJS.
+ * Clients may neither send to nor subscribe to the nodes' {@link ClusterSubscriptionExchange} channel.
+ */
+@Component
+@RequiredArgsConstructor
+public class SubscriptionOptionsInterceptor implements ChannelInterceptor {
+
+    public static final String IMAGES_HEADER = "images";
+    public static final String MIN_CONFIDENCE_HEADER = "min-confidence";
+    public static final String ENCODING_HEADER = "encoding";
+
+    private final SubscriptionTracker subscriptionTracker;
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    /**
+     * Whether a client destination could reach the cluster channel, directly or through a simple broker
+     * ({@code *}, {@code ?}, <code>{</code>) or Artemis ({@code #}, {@code *}) wildcard
+     */
+    static boolean isClusterChannel(String destination) {
+        if (destination == null) {
+            return false;
+        }
+        String announce = ClusterSubscriptionExchange.ANNOUNCE_DESTINATION;
+        if (destination.startsWith(announce)) {
+            return true;
+        }
+        int wildcard = -1;
+        for (char c : new char[]{'*', '?', '{', '#'}) {
+            int index = destination.indexOf(c);
+            if (index >= 0 && (wildcard < 0 || index < wildcard)) {
+                wildcard = index;
+            }
+        }
+        return wildcard >= 0 && announce.startsWith(destination.substring(0, wildcard));
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || accessor.getCommand() == null) {
+            return message;
+        }
+
+        String sessionId = accessor.getSessionId();
+        StompCommand command = accessor.getCommand();
+        if ((command == StompCommand.SEND || command == StompCommand.SUBSCRIBE)
+                && isClusterChannel(accessor.getDestination())) {
+            throw new MessageDeliveryException(message, "Destination is reserved for cluster nodes");
+        }
+        if (command == StompCommand.SUBSCRIBE) {
+            String destination = accessor.getDestination();
+            if (destination != null && !pathMatcher.isPattern(destination) && accessor.isMutable()) {
+                SubscriptionOptions options = SubscriptionOptions.fromDestination(destination).withHeaders(
+                        accessor.getFirstNativeHeader(IMAGES_HEADER),
+                        accessor.getFirstNativeHeader(MIN_CONFIDENCE_HEADER),
+                        accessor.getFirstNativeHeader(ENCODING_HEADER));
+                Map<String, Object> attributes = accessor.getSessionAttributes();
+                if (attributes == null || !Boolean.TRUE.equals(attributes.get(SessionDeliveryManager.BINARY_FRAMES_ATTRIBUTE))) {
+                    options = options.withoutCbor();
+                }
+                destination = options.applyTo(SubscriptionOptions.baseOf(destination));
+                accessor.setDestination(destination);
+            }
+            subscriptionTracker.subscribed(sessionId, accessor.getSubscriptionId(), destination);
+        } else if (command == StompCommand.UNSUBSCRIBE) {
+            subscriptionTracker.unsubscribed(sessionId, accessor.getSubscriptionId());
+        } else if (command == StompCommand.DISCONNECT) {
+            subscriptionTracker.disconnected(sessionId);
+        }
+        return message;
+    }
+}
@@ -1,32 +1,67 @@
 package com.wavestone.stacamback.controller;
 
+import com.wavestone.stacamback.model.CameraIds;
+import com.wavestone.stacamback.model.ChunkedUpload;
 import com.wavestone.stacamback.model.DetectionResult;
+import com.wavestone.stacamback.model.UploadBatch;
+import com.wavestone.stacamback.service.BatchUploadService;
+import com.wavestone.stacamback.service.ChunkedUploadService;
+import com.wavestone.stacamback.service.DetectionExportService;
+import com.wavestone.stacamback.service.ProcessingJobService;
+import com.wavestone.stacamback.service.ResultChangeFeed;
 import com.wavestone.stacamback.service.YoloProcessingService;
 import lombok.RequiredArgsConstructor;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/detection")
 @RequiredArgsConstructor
 @Slf4j
-@CrossOrigin(originPatterns = "*") // Use originPatterns instead of origins
+@CrossOrigin(originPatterns = "*", exposedHeaders = HttpHeaders.ETAG) // Use originPatterns instead of origins
 public class DetectionController {
 
     private final YoloProcessingService yoloProcessingService;
+    private final ProcessingJobService processingJobService;
+    private final ChunkedUploadService chunkedUploadService;
+    private final BatchUploadService batchUploadService;
+    private final ResultChangeFeed changeFeed;
+    private final DetectionExportService exportService;
 
+    @Value("${app.results.long-poll-timeout:30000}")
+    private long longPollTimeout;
+
+    /**
+     * @param deadlineSeconds optional time budget; frames not analyzed by then are dropped
+     */
     @PostMapping("/upload")
     public ResponseEntity<Map<String, Object>> uploadFile(
             @RequestParam("file") MultipartFile file,
-            @RequestParam("cameraId") String cameraId) {
+            @RequestParam("cameraId") String cameraId,
+            @RequestParam(value = "deadlineSeconds", required = false) Integer deadlineSeconds) {
 
         Map<String, Object> response = new HashMap<>();
 
@@ -55,11 +90,17 @@ public class DetectionController {
                 return ResponseEntity.badRequest().body(response);
             }
 
+            if (deadlineSeconds != null && deadlineSeconds <= 0) {
+                response.put("error", "deadlineSeconds must be positive");
+                return ResponseEntity.badRequest().body(response);
+            }
+
             // Save uploaded file with camera information
-            DetectionResult detectionResult = yoloProcessingService.saveUploadedFile(file, cameraId);
+            LocalDateTime deadline = deadlineSeconds != null ? LocalDateTime.now().plusSeconds(deadlineSeconds) : null;
+            DetectionResult detectionResult = yoloProcessingService.saveUploadedFile(file, cameraId, deadline);
 
-            // Start YOLO processing asynchronously
-            yoloProcessingService.processWithYolo(detectionResult);
+            // Start YOLO processing asynchronously (locally or through the shared job queue)
+            processingJobService.submit(detectionResult);
 
             response.put("success", true);
             response.put("message", "File uploaded successfully and processing started");
@@ -67,6 +108,9 @@ public class DetectionController {
             response.put("fileName", detectionResult.getFileName());
             response.put("cameraId", detectionResult.getCameraId());
             response.put("status", detectionResult.getStatus());
+            if (deadline != null) {
+                response.put("deadline", deadline);
+            }
 
             log.info("File uploaded successfully from {}: {}", cameraId, fileName);
 
@@ -79,36 +123,317 @@ public class DetectionController {
         }
     }
 
+    /**
+     * Upload many images or videos at once; ZIP archives are unpacked. Unsupported files are skipped and
+     * listed in {@code rejectedFiles}.
+     */
+    @PostMapping("/upload/batch")
+    public ResponseEntity<Map<String, Object>> uploadBatch(
+            @RequestParam("files") List<MultipartFile> files,
+            @RequestParam("cameraId") String cameraId,
+            @RequestParam(value = "deadlineSeconds", required = false) Integer deadlineSeconds) {
+
+        Map<String, Object> response = new HashMap<>();
+
+        if (!isValidCameraId(cameraId)) {
+            response.put("error", "Invalid camera ID. Must be 'camera_one' or 'camera_two'");
+            return ResponseEntity.badRequest().body(response);
+        }
+        if (deadlineSeconds != null && deadlineSeconds <= 0) {
+            response.put("error", "deadlineSeconds must be positive");
+            return ResponseEntity.badRequest().body(response);
+        }
+
+        try {
+            LocalDateTime deadline = deadlineSeconds != null ? LocalDateTime.now().plusSeconds(deadlineSeconds) : null;
+            UploadBatch batch = batchUploadService.upload(files, cameraId, deadline);
+
+            response.put("success", true);
+            response.put("message", batch.getTotal() + " files uploaded successfully and processing started");
+            response.put("batchId", batch.getBatchId());
+            response.put("cameraId", batch.getCameraId());
+            response.put("total", batch.getTotal());
+            response.put("detectionIds", batch.getDetectionIds());
+            response.put("rejectedFiles", batch.getRejectedFiles());
+            if (deadline != null) {
+                response.put("deadline", deadline);
+            }
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            response.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        } catch (Exception e) {
+            log.error("Error storing bulk upload from camera {}", cameraId, e);
+            response.put("error", "Failed to upload files: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
+    @GetMapping("/upload/batch/{batchId}")
+    public ResponseEntity<UploadBatch> getBatch(@PathVariable String batchId) {
+        return batchUploadService.find(batchId)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Start a resumable chunked upload; chunks are then sent with PUT /uploads/{uploadId}?offset=N
+     */
+    @PostMapping("/uploads")
+    public ResponseEntity<Map<String, Object>> initChunkedUpload(
+            @RequestParam("fileName") String fileName,
+            @RequestParam("cameraId") String cameraId,
+            @RequestParam(value = "totalSize", required = false) Long totalSize) {
+
+        Map<String, Object> response = new HashMap<>();
+
+        if (!isValidCameraId(cameraId)) {
+            response.put("error", "Invalid camera ID. Must be 'camera_one' or 'camera_two'");
+            return ResponseEntity.badRequest().body(response);
+        }
+        if (!isValidFileType(fileName)) {
+            response.put("error", "Invalid file type. Only images and videos are allowed.");
+            return ResponseEntity.badRequest().body(response);
+        }
+
+        try {
+            ChunkedUpload upload = chunkedUploadService.init(fileName, cameraId, totalSize);
+            log.info("Chunked upload {} started from {}: {}", upload.getId(), cameraId, fileName);
+            return ResponseEntity.status(HttpStatus.CREATED).body(toUploadResponse(upload));
+        } catch (Exception e) {
+            log.error("Error starting chunked upload from camera {}", cameraId, e);
+            response.put("error", "Failed to start upload: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
+    /**
+     * Current state of a chunked upload; {@code offset} is where the next chunk must start
+     */
+    @GetMapping("/uploads/{uploadId}")
+    public ResponseEntity<Map<String, Object>> getChunkedUpload(@PathVariable String uploadId) {
+        return chunkedUploadService.find(uploadId)
+                .map(upload -> ResponseEntity.ok(toUploadResponse(upload)))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @PutMapping("/uploads/{uploadId}")
+    public ResponseEntity<Map<String, Object>> appendChunk(
+            @PathVariable String uploadId,
+            @RequestParam("offset") long offset,
+            HttpServletRequest request) {
+
+        Map<String, Object> response = new HashMap<>();
+
+        try {
+            ChunkedUpload upload = chunkedUploadService.append(uploadId, offset, request.getInputStream());
+            return ResponseEntity.ok(toUploadResponse(upload));
+        } catch (ChunkedUploadService.OffsetMismatchException e) {
+            response.put("error", e.getMessage());
+            response.put("offset", e.getExpectedOffset());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+        } catch (IllegalArgumentException e) {
+            response.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        } catch (IllegalStateException e) {
+            response.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+        } catch (Exception e) {
+            log.error("Error appending chunk at offset {} to upload {}", offset, uploadId, e);
+            response.put("error", "Failed to store chunk: " + e.getMessage());
+            chunkedUploadService.find(uploadId).ifPresent(upload -> response.put("offset", upload.getReceivedBytes()));
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
+    @PostMapping("/uploads/{uploadId}/finalize")
+    public ResponseEntity<Map<String, Object>> finalizeChunkedUpload(@PathVariable String uploadId) {
+        Map<String, Object> response = new HashMap<>();
+
+        try {
+            DetectionResult detectionResult = chunkedUploadService.finalizeUpload(uploadId);
+
+            response.put("success", true);
+            response.put("message", "File uploaded successfully and processing started");
+            response.put("detectionId", detectionResult.getId());
+            response.put("fileName", detectionResult.getFileName());
+            response.put("cameraId", detectionResult.getCameraId());
+            response.put("status", detectionResult.getStatus());
+            return ResponseEntity.ok(response);
+        } catch (ChunkedUploadService.OffsetMismatchException e) {
+            response.put("error", "Upload is incomplete");
+            response.put("offset", e.getExpectedOffset());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+        } catch (IllegalArgumentException e) {
+            response.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+        } catch (IllegalStateException e) {
+            response.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+        } catch (Exception e) {
+            log.error("Error finalizing upload {}", uploadId, e);
+            response.put("error", "Failed to finalize upload: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
+    /**
+     * Recent results, of one camera if given. Answers 304 when the If-None-Match ETag is still current.
+     */
     @GetMapping("/results")
-    public ResponseEntity<List<DetectionResult>> getRecentResults() {
+    public ResponseEntity<List<DetectionResult>> getRecentResults(
+            @RequestParam(value = "cameraId", required = false) String cameraId,
+            WebRequest request) {
         try {
-            List<DetectionResult> results = yoloProcessingService.getRecentDetections();
-            return ResponseEntity.ok(results);
+            String etag = encodingEtag(changeFeed.etag(changeFeed.getVersion(cameraId)), request);
+            if (request.checkNotModified(etag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).varyBy(HttpHeaders.ACCEPT).build();
+            }
+            List<DetectionResult> results = cameraId == null
+                    ? yoloProcessingService.getRecentDetections()
+                    : yoloProcessingService.getRecentDetections(cameraId);
+            return ResponseEntity.ok().eTag(etag).varyBy(HttpHeaders.ACCEPT).body(results);
         } catch (Exception e) {
             log.error("Error fetching detection results", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
 
+    /**
+     * Results of the last minutes. The window starts on a whole minute, so the ETag only changes with a
+     * new result or once a minute.
+     */
     @GetMapping("/results/since")
     public ResponseEntity<List<DetectionResult>> getResultsSince(
-            @RequestParam("minutes") int minutes) {
+            @RequestParam("minutes") int minutes,
+            WebRequest request) {
         try {
-            LocalDateTime since = LocalDateTime.now().minusMinutes(minutes);
+            LocalDateTime since = LocalDateTime.now().minusMinutes(minutes).truncatedTo(ChronoUnit.MINUTES);
+            String etag = encodingEtag(changeFeed.etag(changeFeed.getSequence(),
+                    since.toEpochSecond(ZoneOffset.UTC) / 60), request);
+            if (request.checkNotModified(etag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).varyBy(HttpHeaders.ACCEPT).build();
+            }
             List<DetectionResult> results = yoloProcessingService.getDetectionsSince(since);
-            return ResponseEntity.ok(results);
+            return ResponseEntity.ok().eTag(etag).varyBy(HttpHeaders.ACCEPT).body(results);
         } catch (Exception e) {
             log.error("Error fetching detection results since {}", minutes, e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
 
+    /**
+     * Long-poll for the next change of a camera: answers as soon as its sequence passes {@code after}
+     * (immediately if it already has), or with 304 once the timeout elapses. Waiting costs no query.
+     */
+    @GetMapping("/results/poll")
+    public DeferredResult<ResponseEntity<Map<String, Object>>> pollResults(
+            @RequestParam("cameraId") String cameraId,
+            @RequestParam(value = "after", defaultValue = "0") long after,
+            @RequestParam(value = "timeout", required = false) Long timeout,
+            WebRequest request) {
+        long waitMillis = timeout == null ? longPollTimeout : Math.min(Math.max(timeout, 0), longPollTimeout);
+        DeferredResult<ResponseEntity<Map<String, Object>>> deferred = new DeferredResult<>(waitMillis,
+                () -> ResponseEntity.status(HttpStatus.NOT_MODIFIED).build());
+        if (!isValidCameraId(cameraId)) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("error", "Invalid camera ID. Must be 'camera_one' or 'camera_two'");
+            deferred.setResult(ResponseEntity.badRequest().body(response));
+            return deferred;
+        }
+
+        CompletableFuture<Long> change = changeFeed.nextChange(cameraId, after);
+        deferred.onCompletion(() -> changeFeed.cancel(cameraId, change));
+        change.thenAccept(version -> {
+            Map<String, Object> response = new HashMap<>();
+            response.put("cameraId", cameraId);
+            response.put("sequence", version);
+            response.put("results", yoloProcessingService.getRecentDetections(cameraId));
+            deferred.setResult(ResponseEntity.ok().eTag(encodingEtag(changeFeed.etag(version), request))
+                    .varyBy(HttpHeaders.ACCEPT).body(response));
+        });
+        return deferred;
+    }
+
+    /**
+     * Stream all matching results as NDJSON or CSV, optionally gzip-compressed, for offline analysis. Rows
+     * are written while they are read from the database, so exports of any size run in constant memory.
+     *
+     * @param from   first processedAt included (ISO date-time)
+     * @param to     processedAt excluded (ISO date-time)
+     * @param status statuses to include, comma-separated
+     */
+    @GetMapping("/results/export")
+    public ResponseEntity<StreamingResponseBody> exportResults(
+            @RequestParam(value = "format", defaultValue = "ndjson") String format,
+            @RequestParam(value = "cameraId", required = false) String cameraId,
+            @RequestParam(value = "from", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(value = "to", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(value = "status", required = false) List<String> status,
+            @RequestParam(value = "gzip", defaultValue = "false") boolean gzip) {
+        DetectionExportService.Format exportFormat;
+        try {
+            exportFormat = DetectionExportService.Format.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        List<String> statuses = status == null ? null
+                : status.stream().map(value -> value.trim().toUpperCase(Locale.ROOT)).toList();
+
+        String fileName = "detections-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"))
+                + (exportFormat == DetectionExportService.Format.CSV ? ".csv" : ".ndjson") + (gzip ? ".gz" : "");
+        MediaType contentType = gzip ? MediaType.parseMediaType("application/gzip")
+                : exportFormat == DetectionExportService.Format.CSV ? MediaType.parseMediaType("text/csv;charset=UTF-8")
+                : MediaType.parseMediaType("application/x-ndjson");
+
+        StreamingResponseBody body = output -> {
+            if (gzip) {
+                try (GZIPOutputStream compressed = new GZIPOutputStream(output, 64 * 1024)) {
+                    exportService.export(cameraId, from, to, statuses, exportFormat, compressed);
+                }
+            } else {
+                exportService.export(cameraId, from, to, statuses, exportFormat, output);
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(contentType)
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(fileName).build().toString())
+                .body(body);
+    }
+
+    /**
+     * Stop processing an upload: the running model call is killed, remaining frames are dropped and
+     * temporary frames removed
+     */
+    @PostMapping("/results/{id}/cancel")
+    public ResponseEntity<Map<String, Object>> cancelProcessing(@PathVariable Long id) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            return processingJobService.cancel(id)
+                    .map(result -> {
+                        response.put("success", true);
+                        response.put("detectionId", result.getId());
+                        response.put("status", result.getStatus());
+                        return ResponseEntity.ok(response);
+                    })
+                    .orElse(ResponseEntity.notFound().build());
+        } catch (IllegalStateException e) {
+            response.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+        } catch (Exception e) {
+            log.error("Error cancelling detection {}", id, e);
+            response.put("error", "Failed to cancel: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
     @GetMapping("/results/{id}")
     public ResponseEntity<DetectionResult> getDetectionResult(@PathVariable Long id) {
         try {
-            return yoloProcessingService.getRecentDetections().stream()
-                    .filter(result -> result.getId().equals(id))
-                    .findFirst()
+            return yoloProcessingService.getDetection(id)
                     .map(ResponseEntity::ok)
                     .orElse(ResponseEntity.notFound().build());
         } catch (Exception e) {
@@ -117,6 +442,22 @@ public class DetectionController {
         }
     }
 
+    private Map<String, Object> toUploadResponse(ChunkedUpload upload) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("uploadId", upload.getId());
+        response.put("fileName", upload.getOriginalFileName());
+        response.put("cameraId", upload.getCameraId());
+        response.put("offset", upload.getReceivedBytes());
+        response.put("totalSize", upload.getTotalSize());
+        response.put("status", upload.getStatus());
+        response.put("detectionId", upload.getDetectionResultId());
+        Map<String, Object> progress = chunkedUploadService.getProgress(upload.getId());
+        if (progress != null) {
+            response.put("progressive", progress);
+        }
+        return response;
+    }
+
     private boolean isValidFileType(String fileName) {
         String extension = fileName.substring(fileName.lastIndexOf(".") + 1).toLowerCase();
         return switch (extension) {
@@ -126,6 +467,17 @@ public class DetectionController {
     }
 
     private boolean isValidCameraId(String cameraId) {
-        return "camera_one".equals(cameraId) || "camera_two".equals(cameraId);
+        return CameraIds.isValid(cameraId);
+    }
+
+    /**
+     * JSON and CBOR bodies of the same version differ, so they get different ETags
+     */
+    private static String encodingEtag(String etag, WebRequest request) {
+        String accept = request.getHeader(HttpHeaders.ACCEPT);
+        if (accept == null || !accept.contains(MediaType.APPLICATION_CBOR_VALUE)) {
+            return etag;
+        }
+        return etag.substring(0, etag.length() - 1) + "-cbor\"";
     }
 }
@@ -0,0 +1,35 @@
+package com.wavestone.stacamback.controller;
+
+import com.wavestone.stacamback.model.InferenceCacheStats;
+import com.wavestone.stacamback.model.ModelCascadeStats;
+import com.wavestone.stacamback.service.InferenceCache;
+import com.wavestone.stacamback.service.ModelCascade;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/inference")
+@RequiredArgsConstructor
+@CrossOrigin(originPatterns = "*")
+public class InferenceController {
+
+    private final InferenceCache inferenceCache;
+    private final ModelCascade modelCascade;
+
+    @GetMapping("/cache")
+    public ResponseEntity<InferenceCacheStats> getCacheStats() {
+        return ResponseEntity.ok(inferenceCache.getStats());
+    }
+
+    @DeleteMapping("/cache")
+    public ResponseEntity<Void> clearCache() {
+        inferenceCache.clear();
+        return ResponseEntity.noContent().build();
+    }
+
+    @GetMapping("/models")
+    public ResponseEntity<ModelCascadeStats> getModelStats() {
+        return ResponseEntity.ok(modelCascade.getStats());
+    }
+}
@@ -0,0 +1,30 @@
+package com.wavestone.stacamback.controller;
+
+import com.wavestone.stacamback.model.LiveCameraStats;
+import com.wavestone.stacamback.service.LiveIngestService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/live")
+@RequiredArgsConstructor
+@CrossOrigin(originPatterns = "*")
+public class LiveIngestController {
+
+    private final LiveIngestService liveIngestService;
+
+    @GetMapping("/cameras")
+    public ResponseEntity<List<LiveCameraStats>> getCameraStats() {
+        return ResponseEntity.ok(liveIngestService.getStats());
+    }
+
+    @GetMapping("/cameras/{cameraId}")
+    public ResponseEntity<LiveCameraStats> getCameraStats(@PathVariable String cameraId) {
+        return liveIngestService.getStats(cameraId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+}
@@ -0,0 +1,217 @@
+package com.wavestone.stacamback.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wavestone.stacamback.model.DetectionResult;
+import com.wavestone.stacamback.service.MediaStorageService;
+import com.wavestone.stacamback.service.YoloProcessingService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Serves uploads and previews so broadcasts can reference images by URL. Previews and the uploads of
+ * finished results never change, so responses carry a strong ETag and long-lived cache headers; uploads
+ * still being processed may still be appended to and are sent with {@code no-store}. Conditional requests
+ * are answered with 304, and single byte ranges with 206 so videos can be seeked. Bodies are handed to
+ * Tomcat's sendfile, which copies the file to the socket in the kernel; other servers get a channel
+ * transfer.
+ */
+@RestController
+@RequestMapping("/api/media")
+@RequiredArgsConstructor
+@CrossOrigin(originPatterns = "*", exposedHeaders = {"Accept-Ranges", "Content-Range", "ETag"})
+@Slf4j
+public class MediaController {
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    private static final List<String> FINISHED_STATUSES = List.of("COMPLETED", "FAILED", "CANCELLED");
+
+    private final YoloProcessingService yoloProcessingService;
+    private final MediaStorageService mediaStorageService;
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.media.cache-max-age:365d}")
+    private Duration cacheMaxAge;
+
+    /**
+     * The uploaded image or video as stored
+     */
+    @GetMapping("/{id}")
+    public void getOriginal(@PathVariable Long id, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        Optional<DetectionResult> result = yoloProcessingService.getDetection(id);
+        Path file = result.map(DetectionResult::getFilePath).map(Paths::get).filter(Files::isRegularFile).orElse(null);
+        if (file == null) {
+            sendError(response, HttpServletResponse.SC_NOT_FOUND, "No stored media for result " + id);
+            return;
+        }
+        MediaType mediaType = MediaTypeFactory.getMediaType(result.get().getFileName())
+                .orElse(MediaType.APPLICATION_OCTET_STREAM);
+        serve(file, mediaType, isFinished(result.get()), request, response);
+    }
+
+    /**
+     * JPEG preview of an image upload, scaled down like the WebSocket previews
+     */
+    @GetMapping("/{id}/preview")
+    public void getUploadPreview(@PathVariable Long id, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        Optional<DetectionResult> result = yoloProcessingService.getDetection(id);
+        Optional<Path> preview = Optional.empty();
+        if (result.isPresent()) {
+            try {
+                preview = yoloProcessingService.getUploadPreview(result.get());
+            } catch (IOException e) {
+                log.error("Error rendering preview of result {}", id, e);
+                sendError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                        "Failed to render preview: " + e.getMessage());
+                return;
+            }
+        }
+        if (preview.isEmpty()) {
+            sendError(response, HttpServletResponse.SC_NOT_FOUND, "No image preview for result " + id);
+            return;
+        }
+        serve(preview.get(), MediaType.IMAGE_JPEG, isFinished(result.get()), request, response);
+    }
+
+    /**
+     * Preview of a broadcast frame, kept for {@code app.storage.preview-max-age-minutes}
+     */
+    @GetMapping("/previews/{name}")
+    public void getPreview(@PathVariable String name, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        Optional<Path> preview = mediaStorageService.findPreview(name);
+        if (preview.isEmpty()) {
+            sendError(response, HttpServletResponse.SC_NOT_FOUND, "Preview not found or expired: " + name);
+            return;
+        }
+        serve(preview.get(), MediaType.IMAGE_JPEG, true, request, response);
+    }
+
+    private static boolean isFinished(DetectionResult result) {
+        return FINISHED_STATUSES.contains(result.getStatus());
+    }
+
+    /**
+     * Write a file or the requested range of it. Several ranges in one request are answered with the whole
+     * file, which HTTP allows and saves a multipart body.
+     *
+     * @param immutable whether the file is final and may be cached for {@code app.media.cache-max-age}
+     */
+    void serve(Path file, MediaType mediaType, boolean immutable, HttpServletRequest request,
+               HttpServletResponse response) throws IOException {
+        long length = Files.size(file);
+        long lastModified = Files.getLastModifiedTime(file).toMillis();
+        // Size and modification time identify the bytes, as files are replaced but never rewritten in place
+        String etag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+
+        response.setHeader(HttpHeaders.CACHE_CONTROL, immutable
+                ? CacheControl.maxAge(cacheMaxAge).cachePublic().immutable().getHeaderValue()
+                : CacheControl.noStore().getHeaderValue());
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        // Sets ETag and Last-Modified, answers If-None-Match and If-Modified-Since with 304
+        if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified)) {
+            return;
+        }
+
+        long start = 0;
+        long end = length - 1;
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader != null && isRangeCurrent(request, etag, lastModified)) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(rangeHeader);
+            } catch (IllegalArgumentException e) {
+                ranges = null;
+            }
+            if (ranges != null && ranges.size() == 1) {
+                start = ranges.get(0).getRangeStart(length);
+                end = ranges.get(0).getRangeEnd(length);
+            }
+            if (ranges == null || start >= length || start > end) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            if (ranges.size() == 1) {
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+
+        long count = end - start + 1;
+        response.setContentType(mediaType.toString());
+        response.setContentLengthLong(count);
+        if ("HEAD".equals(request.getMethod()) || count == 0) {
+            return;
+        }
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            // Tomcat writes the range once the handler returns, without passing it through the JVM heap
+            request.setAttribute(SENDFILE_FILENAME, file.toRealPath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel output = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            while (position <= end) {
+                long transferred = channel.transferTo(position, end + 1 - position, output);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+            }
+        }
+    }
+
+    /**
+     * A range applies unless If-Range names another version of the file
+     */
+    private static boolean isRangeCurrent(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(etag);
+        }
+        try {
+            return request.getDateHeader(HttpHeaders.IF_RANGE) >= lastModified / 1000 * 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private void sendError(HttpServletResponse response, int status, String message) throws IOException {
+        response.setStatus(status);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), Map.of("error", message));
+    }
+}
@@ -0,0 +1,90 @@
+package com.wavestone.stacamback.controller;
+
+import com.wavestone.stacamback.service.FlightRecorderService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Flight recording dumps over HTTP. Dumps include the JVM's environment variables and system properties,
+ * so the endpoint is only registered with {@code app.profiling.endpoint.enabled=true} and is not open to
+ * cross-origin requests.
+ */
+@RestController
+@RequestMapping("/api/profiling")
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.profiling.endpoint.enabled", havingValue = "true")
+@Slf4j
+public class ProfilingController {
+
+    private final FlightRecorderService flightRecorderService;
+
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> getStatus() {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            List<Map<String, Object>> dumps = new ArrayList<>();
+            for (Path file : flightRecorderService.listDumps()) {
+                dumps.add(toDumpResponse(file));
+            }
+            response.put("recording", flightRecorderService.isRecording());
+            response.put("dumps", dumps);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            log.error("Error listing flight recording dumps", e);
+            response.put("error", "Failed to list dumps: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
+    @PostMapping("/dump")
+    public ResponseEntity<Map<String, Object>> dump(@RequestParam(value = "minutes", defaultValue = "5") long minutes) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            Optional<Path> file = flightRecorderService.dump(minutes);
+            if (file.isEmpty()) {
+                response.put("error", "Flight recording is not running");
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(response);
+            }
+            response.putAll(toDumpResponse(file.get()));
+            response.put("minutes", minutes);
+            return ResponseEntity.status(HttpStatus.CREATED).body(response);
+        } catch (Exception e) {
+            log.error("Error dumping flight recording", e);
+            response.put("error", "Failed to dump flight recording: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
+    @GetMapping("/dumps/{name}")
+    public ResponseEntity<Resource> download(@PathVariable String name) {
+        return flightRecorderService.findDump(name)
+                .<ResponseEntity<Resource>>map(file -> ResponseEntity.ok()
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .header(HttpHeaders.CONTENT_DISPOSITION,
+                                ContentDisposition.attachment().filename(name).build().toString())
+                        .body(new FileSystemResource(file)))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    private static Map<String, Object> toDumpResponse(Path file) throws Exception {
+        Map<String, Object> dump = new HashMap<>();
+        String name = file.getFileName().toString();
+        dump.put("name", name);
+        dump.put("sizeBytes", Files.size(file));
+        dump.put("url", "/api/profiling/dumps/" + name);
+        return dump;
+    }
+}
@@ -0,0 +1,54 @@
+package com.wavestone.stacamback.controller;
+
+import com.wavestone.stacamback.model.RoiPoint;
+import com.wavestone.stacamback.service.RoiService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/roi")
+@RequiredArgsConstructor
+@CrossOrigin(originPatterns = "*")
+public class RoiController {
+
+    private final RoiService roiService;
+
+    @GetMapping
+    public ResponseEntity<Map<String, List<RoiPoint>>> getRegions() {
+        return ResponseEntity.ok(roiService.getRegions());
+    }
+
+    @GetMapping("/{cameraId}")
+    public ResponseEntity<List<RoiPoint>> getRegion(@PathVariable String cameraId) {
+        return roiService.getRegion(cameraId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @PutMapping("/{cameraId}")
+    public ResponseEntity<Map<String, Object>> setRegion(@PathVariable String cameraId,
+                                                         @RequestBody List<RoiPoint> polygon) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            roiService.setRegion(cameraId, polygon);
+        } catch (IllegalArgumentException e) {
+            response.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+        response.put("cameraId", cameraId);
+        response.put("polygon", polygon);
+        return ResponseEntity.ok(response);
+    }
+
+    @DeleteMapping("/{cameraId}")
+    public ResponseEntity<Void> removeRegion(@PathVariable String cameraId) {
+        return roiService.removeRegion(cameraId)
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.notFound().build();
+    }
+}
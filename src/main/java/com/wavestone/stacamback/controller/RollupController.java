@@ -0,0 +1,71 @@
+package com.wavestone.stacamback.controller;
+
+import com.wavestone.stacamback.model.RollupBucket;
+import com.wavestone.stacamback.service.DetectionRollupService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+@RestController
+@RequestMapping("/api/rollups")
+@RequiredArgsConstructor
+@CrossOrigin(originPatterns = "*")
+public class RollupController {
+
+    private final DetectionRollupService rollupService;
+
+    /**
+     * Detection counts per class of a camera, by default per minute since midnight. Totals are tracked
+     * objects that appeared and the peak is the most objects seen at once.
+     */
+    @GetMapping("/{cameraId}")
+    public ResponseEntity<Map<String, Object>> getSeries(
+            @PathVariable String cameraId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "1") int bucketMinutes,
+            @RequestParam(required = false) String className) {
+
+        Map<String, Object> response = new HashMap<>();
+        if (from == null) {
+            from = LocalDate.now().atStartOfDay();
+        }
+        if (to == null) {
+            to = LocalDateTime.now().truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+        }
+
+        List<RollupBucket> buckets;
+        try {
+            buckets = rollupService.getSeries(cameraId, from, to, bucketMinutes, className);
+        } catch (IllegalArgumentException e) {
+            response.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+
+        Map<String, Long> totals = new TreeMap<>();
+        Map<String, Integer> peaks = new TreeMap<>();
+        for (RollupBucket bucket : buckets) {
+            bucket.getAppeared().forEach((name, count) -> totals.merge(name, count, Long::sum));
+            bucket.getPeaks().forEach((name, peak) -> peaks.merge(name, peak, Math::max));
+        }
+
+        response.put("cameraId", cameraId);
+        response.put("from", from);
+        response.put("to", to);
+        response.put("bucketMinutes", bucketMinutes);
+        response.put("className", className);
+        response.put("totals", totals);
+        response.put("peaks", peaks);
+        response.put("buckets", buckets);
+        return ResponseEntity.ok(response);
+    }
+}
@@ -0,0 +1,21 @@
+package com.wavestone.stacamback.controller;
+
+import com.wavestone.stacamback.model.StorageUsage;
+import com.wavestone.stacamback.service.MediaStorageService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/storage")
+@RequiredArgsConstructor
+@CrossOrigin(originPatterns = "*")
+public class StorageController {
+
+    private final MediaStorageService mediaStorageService;
+
+    @GetMapping
+    public ResponseEntity<StorageUsage> getUsage() {
+        return ResponseEntity.ok(mediaStorageService.getUsage());
+    }
+}
@@ -1,27 +1,45 @@
 package com.wavestone.stacamback.controller;
 
-import com.wavestone.stacamback.service.YoloProcessingService;
+import com.wavestone.stacamback.model.DetectionResult;
+import com.wavestone.stacamback.service.RecentResultsCache;
 import lombok.RequiredArgsConstructor;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.SendTo;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.annotation.SendToUser;
+import org.springframework.messaging.simp.annotation.SubscribeMapping;
 import org.springframework.stereotype.Controller;
 
 import java.time.LocalDateTime;
+import java.util.List;
 
 @Controller
 @RequiredArgsConstructor
 public class WebSocketController {
 
-    private final SimpMessagingTemplate messagingTemplate;
-    private final YoloProcessingService yoloProcessingService;
+    private final RecentResultsCache recentResultsCache;
 
+    /**
+     * Initial snapshot, answered directly to the subscribing session: subscribe to {@code /app/detections/initial}
+     */
+    @SubscribeMapping("/detections/initial")
+    public List<DetectionResult> initialDetections() {
+        return recentResultsCache.getRecent();
+    }
+
+    @SubscribeMapping("/cameras/{cameraId}/initial")
+    public List<DetectionResult> initialCameraDetections(@DestinationVariable String cameraId) {
+        return recentResultsCache.getRecent(cameraId);
+    }
+
+    /**
+     * Older clients request the snapshot with a message; it goes to {@code /user/topic/detections/initial}
+     * of the requesting session only
+     */
     @MessageMapping("/subscribe")
-    @SendTo("/topic/detections")
-    public void subscribeToDetections() {
-        // Send recent detections to new subscribers
-        var recentDetections = yoloProcessingService.getRecentDetections();
-        messagingTemplate.convertAndSend("/topic/detections/initial", recentDetections);
+    @SendToUser(destinations = "/topic/detections/initial", broadcast = false)
+    public List<DetectionResult> subscribeToDetections() {
+        return recentResultsCache.getRecent();
     }
 
     @MessageMapping("/ping")
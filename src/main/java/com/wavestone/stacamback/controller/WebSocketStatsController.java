@@ -0,0 +1,23 @@
+package com.wavestone.stacamback.controller;
+
+import com.wavestone.stacamback.config.SessionDeliveryManager;
+import com.wavestone.stacamback.model.SessionDeliveryStats;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/websocket")
+@RequiredArgsConstructor
+@CrossOrigin(originPatterns = "*")
+public class WebSocketStatsController {
+
+    private final SessionDeliveryManager sessionDeliveryManager;
+
+    @GetMapping("/sessions")
+    public ResponseEntity<List<SessionDeliveryStats>> getSessionStats() {
+        return ResponseEntity.ok(sessionDeliveryManager.getSessionStats());
+    }
+}
@@ -0,0 +1,18 @@
+package com.wavestone.stacamback.model;
+
+import java.util.List;
+
+/**
+ * The cameras this backend accepts uploads, frames and subscriptions for
+ */
+public final class CameraIds {
+
+    public static final List<String> ALL = List.of("camera_one", "camera_two");
+
+    private CameraIds() {
+    }
+
+    public static boolean isValid(String cameraId) {
+        return cameraId != null && ALL.contains(cameraId);
+    }
+}
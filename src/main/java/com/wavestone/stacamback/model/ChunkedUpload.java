@@ -0,0 +1,62 @@
+package com.wavestone.stacamback.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Upload sent in several chunks. The bytes received so far are appended to {@code filePath}, so an
+ * interrupted upload resumes at {@code receivedBytes} instead of starting over.
+ */
+@Entity
+@Table(name = "chunked_uploads")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChunkedUpload {
+
+    @Id
+    private String id;
+
+    @Column(nullable = false)
+    private String originalFileName;
+
+    @Column(nullable = false)
+    private String cameraId;
+
+    @Column(nullable = false)
+    private String filePath;
+
+    private Long totalSize; // declared by the client, optional
+
+    @Column(nullable = false)
+    private long receivedBytes;
+
+    @Column(nullable = false)
+    private String status; // UPLOADING, FINALIZED
+
+    private Long detectionResultId;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        updatedAt = createdAt;
+        if (status == null) {
+            status = "UPLOADING";
+        }
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+}
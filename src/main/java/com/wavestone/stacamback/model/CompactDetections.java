@@ -0,0 +1,137 @@
+package com.wavestone.stacamback.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.cbor.CBORGenerator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact layout of a YOLO result for binary encodings. Class names are listed once in {@code classes}
+ * and every detection becomes a row {@code [classIndex, confidence, x, y, width, height]} of float32
+ * values, followed by an object with any further fields such as {@code trackId} or {@code frame}:
+ * <pre>
+ * {"classes": ["person", "car"], "detections": [[0, 0.91, 12.5, 40.0, 80.0, 200.0], [1, ...]], ...}
+ * </pre>
+ * All other fields of the result are kept as they are. The model process writes this layout and clients
+ * asking for CBOR receive it; inside the backend results stay in the expanded JSON layout.
+ */
+public final class CompactDetections {
+
+    public static final String CLASSES_FIELD = "classes";
+    public static final String DETECTIONS_FIELD = "detections";
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+
+    private CompactDetections() {
+    }
+
+    /**
+     * Compact layout of a result in the expanded layout, or the result itself if it has no detection list
+     */
+    public static JsonNode compact(JsonNode result) {
+        if (!(result instanceof ObjectNode expanded) || !(expanded.get(DETECTIONS_FIELD) instanceof ArrayNode list)) {
+            return result;
+        }
+        List<String> classes = new ArrayList<>();
+        ArrayNode rows = NODES.arrayNode(list.size());
+        for (JsonNode detection : list) {
+            String className = detection.path("className").asText();
+            int classIndex = classes.indexOf(className);
+            if (classIndex < 0) {
+                classIndex = classes.size();
+                classes.add(className);
+            }
+            JsonNode box = detection.path("boundingBox");
+            ArrayNode row = rows.addArray()
+                    .add(classIndex)
+                    .add(detection.path("confidence").floatValue())
+                    .add(box.path("x").floatValue())
+                    .add(box.path("y").floatValue())
+                    .add(box.path("width").floatValue())
+                    .add(box.path("height").floatValue());
+            ObjectNode extra = NODES.objectNode();
+            for (Map.Entry<String, JsonNode> field : detection.properties()) {
+                if (!field.getKey().equals("className") && !field.getKey().equals("confidence")
+                        && !field.getKey().equals("boundingBox")) {
+                    extra.set(field.getKey(), field.getValue());
+                }
+            }
+            if (!extra.isEmpty()) {
+                row.add(extra);
+            }
+        }
+        ObjectNode compact = expanded.deepCopy();
+        ArrayNode classList = compact.putArray(CLASSES_FIELD);
+        classes.forEach(classList::add);
+        compact.set(DETECTIONS_FIELD, rows);
+        return compact;
+    }
+
+    /**
+     * Expanded layout of a result in the compact layout, or the result itself if it is not compact
+     */
+    public static JsonNode expand(JsonNode result) {
+        if (!(result instanceof ObjectNode compact) || !(compact.get(CLASSES_FIELD) instanceof ArrayNode classes)
+                || !(compact.get(DETECTIONS_FIELD) instanceof ArrayNode rows)) {
+            return result;
+        }
+        ArrayNode list = NODES.arrayNode(rows.size());
+        for (JsonNode row : rows) {
+            ObjectNode detection = list.addObject();
+            detection.put("className", classes.path(row.path(0).asInt()).asText());
+            // Kept as float32 so the JSON text does not grow digits the values never had
+            detection.put("confidence", row.path(1).floatValue());
+            ObjectNode box = detection.putObject("boundingBox");
+            box.put("x", row.path(2).floatValue());
+            box.put("y", row.path(3).floatValue());
+            box.put("width", row.path(4).floatValue());
+            box.put("height", row.path(5).floatValue());
+            if (row.get(6) instanceof ObjectNode extra) {
+                detection.setAll(extra);
+            }
+        }
+        ObjectNode expanded = compact.deepCopy();
+        expanded.remove(CLASSES_FIELD);
+        expanded.set(DETECTIONS_FIELD, list);
+        return expanded;
+    }
+
+    /**
+     * Compact layout of a detections JSON string, or null if it is not valid JSON
+     */
+    public static JsonNode compact(String detectionsJson) {
+        try {
+            return compact(JSON.readTree(detectionsJson));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes a detections JSON string as it is to text formats and in the compact layout to CBOR
+     */
+    public static class Serializer extends JsonSerializer<String> {
+
+        @Override
+        public void serialize(String detectionsJson, JsonGenerator generator, SerializerProvider provider)
+                throws IOException {
+            JsonNode compact = generator instanceof CBORGenerator ? compact(detectionsJson) : null;
+            if (compact != null) {
+                generator.writeTree(compact);
+            } else {
+                generator.writeString(detectionsJson);
+            }
+        }
+    }
+}
@@ -1,22 +1,26 @@
 package com.wavestone.stacamback.model;
 
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.wavestone.stacamback.repository.DetectionResultListener;
 import jakarta.persistence.*;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
 
 import java.time.LocalDateTime;
-import java.util.List;
 
 @Entity
-@Table(name = "detection_results")
+@Table(name = "detection_results", indexes = @Index(name = "idx_detection_results_batch", columnList = "batchId"))
+@EntityListeners(DetectionResultListener.class)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class DetectionResult {
 
+    // Sequence IDs are assigned before the insert, so bulk uploads can batch their inserts
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "detection_results_seq")
+    @SequenceGenerator(name = "detection_results_seq", sequenceName = "detection_results_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false)
@@ -25,17 +29,17 @@ public class DetectionResult {
     @Column(nullable = false)
     private String fileType; // IMAGE or VIDEO
 
-    @Column(nullable = false)
-    private String filePath;
+    private String filePath; // null once the media has been removed by retention
 
     @Column(columnDefinition = "TEXT")
-    private String detections; // JSON string of YOLO detections
+    @JsonSerialize(using = CompactDetections.Serializer.class)
+    private String detections; // JSON string of YOLO detections, compact layout in CBOR responses
 
     @Column(nullable = false)
     private LocalDateTime processedAt;
 
     @Column(nullable = false)
-    private String status; // PENDING, PROCESSING, COMPLETED, FAILED
+    private String status; // PENDING, PROCESSING, COMPLETED, FAILED, CANCELLED
 
     private String errorMessage;
 
@@ -45,6 +49,12 @@ public class DetectionResult {
     @Column(nullable = false)
     private String cameraId; // camera_one or camera_two
 
+    private LocalDateTime deadline; // frames not analyzed by then are dropped, null for no deadline
+
+    private String batchId; // bulk upload the file belongs to, null for single uploads
+
+    private LocalDateTime capturedAt; // when the camera took the image or started the video, null if unknown
+
     @PrePersist
     protected void onCreate() {
         processedAt = LocalDateTime.now();
@@ -0,0 +1,7 @@
+package com.wavestone.stacamback.model;
+
+/**
+ * Published after a detection result has been inserted or updated in the database
+ */
+public record DetectionResultSaved(DetectionResult result) {
+}
@@ -0,0 +1,42 @@
+package com.wavestone.stacamback.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Detections of one class on one camera within one minute of capture time
+ */
+@Entity
+@Table(name = "detection_rollups", uniqueConstraints = @UniqueConstraint(
+        name = "uk_detection_rollups_bucket", columnNames = {"cameraId", "bucketStart", "className"}))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DetectionRollup {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String cameraId;
+
+    @Column(nullable = false)
+    private LocalDateTime bucketStart; // start of the minute
+
+    @Column(nullable = false)
+    private String className;
+
+    @Column(nullable = false)
+    private long appearedCount; // tracked objects that appeared, 0 without tracking
+
+    @Column(nullable = false)
+    private long detectionFrames; // detections summed over every analyzed image/frame
+
+    @Column(nullable = false)
+    private int peakCount; // most objects of the class in a single image/frame
+}
@@ -0,0 +1,13 @@
+package com.wavestone.stacamback.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FrameRangeResult {
+    private int totalFrames; // frames extracted from the range
+    private int successfulFrames; // frames processed by YOLO without error
+}
@@ -0,0 +1,20 @@
+package com.wavestone.stacamback.model;
+
+import lombok.Data;
+
+/**
+ * Effect of the near-duplicate inference cache since startup
+ */
+@Data
+public class InferenceCacheStats {
+    private boolean enabled;
+    private long hits; // images answered from the cache without running the model
+    private long misses;
+    private double hitRate;
+    private long savedInferenceMillis; // inference time of the cached images the hits replaced
+    private long inferenceMillis; // inference time spent on misses
+    private int entries;
+    private long bytes; // estimated memory held by cached detections
+    private int maxEntries;
+    private long maxBytes;
+}
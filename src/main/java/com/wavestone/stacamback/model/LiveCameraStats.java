@@ -0,0 +1,20 @@
+package com.wavestone.stacamback.model;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+public class LiveCameraStats {
+    private String cameraId;
+    private int connectedPublishers;
+    private long framesReceived;
+    private long framesProcessed;
+    private long framesSkipped; // replaced by a newer frame before inference picked them up
+    private long framesFailed;
+    private long framesExpired; // dropped because they outlived app.live.max-frame-age-ms or their publisher left
+    private double ingestFps;
+    private double inferenceFps;
+    private long lastInferenceMs;
+    private LocalDateTime lastFrameAt;
+}
@@ -0,0 +1,35 @@
+package com.wavestone.stacamback.model;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Routing of frames between the fast and the accurate model since startup
+ */
+@Data
+public class ModelCascadeStats {
+    private boolean enabled;
+    private String fastModel;
+    private String accurateModel;
+    private double minConfidence; // fast detections in [minConfidence, maxConfidence) escalate the frame
+    private double maxConfidence;
+    private Set<String> escalateClasses; // fast detections of these classes always escalate the frame
+    private long frames;
+    private long escalated;
+    private double escalationRate;
+    private long escalationFailures; // escalated frames answered with the fast result because the accurate run failed
+    private List<ModelCallStats> models = new ArrayList<>();
+
+    @Data
+    public static class ModelCallStats {
+        private String model;
+        private long calls;
+        private long failures;
+        private long totalMillis;
+        private double averageMillis;
+        private long maxMillis;
+    }
+}
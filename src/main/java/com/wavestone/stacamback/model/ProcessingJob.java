@@ -0,0 +1,61 @@
+package com.wavestone.stacamback.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Unit of inference work stored in shared storage so that any node can claim it.
+ * Large videos are split into child jobs covering a range of source frames.
+ */
+@Entity
+@Table(name = "processing_jobs", indexes = {
+        @Index(name = "idx_processing_jobs_status", columnList = "status, createdAt"),
+        @Index(name = "idx_processing_jobs_parent", columnList = "parentJobId")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProcessingJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long detectionResultId;
+
+    private Long parentJobId; // set on frame-range sub-jobs
+
+    @Column(nullable = false)
+    private String status; // PENDING, RUNNING, SPLIT, COMPLETED, FAILED, CANCELLED
+
+    private Integer frameStart; // first source frame (inclusive), null for whole file
+    private Integer frameEnd; // last source frame (exclusive), null for whole file
+
+    private String ownerNode;
+    private LocalDateTime leaseExpiresAt;
+    private LocalDateTime heartbeatAt;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    private Integer totalFrames; // frames analyzed by this job
+    private Integer successfulFrames;
+
+    private String errorMessage;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        if (status == null) {
+            status = "PENDING";
+        }
+    }
+}
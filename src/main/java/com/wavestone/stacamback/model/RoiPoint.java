@@ -0,0 +1,16 @@
+package com.wavestone.stacamback.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+/**
+ * Vertex of a region-of-interest polygon, relative to the frame size (0 to 1)
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RoiPoint {
+    private double x;
+    private double y;
+}
@@ -0,0 +1,35 @@
+package com.wavestone.stacamback.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * One bucket of a detection count series, keyed by class name: tracked objects that appeared, detections
+ * summed over the analyzed images/frames, and the most objects seen at once
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RollupBucket {
+    private LocalDateTime bucketStart;
+    private Map<String, Long> appeared = new TreeMap<>();
+    private Map<String, Long> detectionFrames = new TreeMap<>();
+    private Map<String, Integer> peaks = new TreeMap<>();
+
+    public RollupBucket(LocalDateTime bucketStart) {
+        this.bucketStart = bucketStart;
+    }
+
+    public void add(String className, long appearedCount, long detectionFrameCount, int peak) {
+        if (appearedCount > 0) {
+            appeared.merge(className, appearedCount, Long::sum);
+        }
+        detectionFrames.merge(className, detectionFrameCount, Long::sum);
+        peaks.merge(className, peak, Math::max);
+    }
+}
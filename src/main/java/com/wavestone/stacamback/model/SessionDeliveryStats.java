@@ -0,0 +1,19 @@
+package com.wavestone.stacamback.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SessionDeliveryStats {
+
+    private String sessionId;
+    private String deliveryMode; // CONFLATE or QUEUE
+    private int pendingMessages; // messages waiting to be written to the socket
+    private long pendingBytes;
+    private long deliveredMessages;
+    private long conflatedMessages; // frame updates replaced by a newer frame for the same key
+    private long droppedMessages; // frame updates evicted because the pending frame limit was reached
+}
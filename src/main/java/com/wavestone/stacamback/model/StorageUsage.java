@@ -0,0 +1,25 @@
+package com.wavestone.stacamback.model;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * Disk usage of stored media, as measured by the last storage sweep
+ */
+@Data
+public class StorageUsage {
+    private long mediaBytes;
+    private long mediaFiles;
+    private Map<String, Long> mediaBytesPerCamera;
+    private long frameBytes; // temporary video frames
+    private long frameFiles;
+    private long usableSpaceBytes; // free space left on the upload volume
+    private long totalSpaceBytes;
+    private long maxTotalBytes; // retention limit, 0 when unlimited
+    private int maxAgeDays; // retention limit, 0 when unlimited
+    private long deletedFiles; // removed by retention since startup
+    private long reclaimedBytes;
+    private LocalDateTime measuredAt;
+}
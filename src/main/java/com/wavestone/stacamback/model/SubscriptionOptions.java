@@ -0,0 +1,112 @@
+package com.wavestone.stacamback.model;
+
+import lombok.Data;
+
+import java.util.Locale;
+
+/**
+ * Per-subscription delivery options. Options are encoded into the destination as
+ * matrix-style parameters (e.g. {@code /topic/cameras/camera_one;images=false;minConfidence=0.50;encoding=cbor})
+ * so that every distinct combination is a separate broker destination that is serialized once
+ * and fanned out to all of its subscribers.
+ */
+@Data
+public class SubscriptionOptions {
+
+    public static final SubscriptionOptions DEFAULT = new SubscriptionOptions(true, 0.0, false);
+    public static final String CBOR_ENCODING = "cbor";
+
+    private static final String IMAGES_PARAM = "images";
+    private static final String MIN_CONFIDENCE_PARAM = "minConfidence";
+    private static final String ENCODING_PARAM = "encoding";
+
+    private final boolean images;
+    private final double minConfidence; // quantized to two decimals to bound the number of variants
+    private final boolean cbor; // binary CBOR frames with compact detections instead of JSON text
+
+    public SubscriptionOptions(boolean images, double minConfidence, boolean cbor) {
+        this.images = images;
+        this.minConfidence = Math.round(Math.max(0.0, Math.min(1.0, minConfidence)) * 100) / 100.0;
+        this.cbor = cbor;
+    }
+
+    public boolean isDefault() {
+        return images && minConfidence <= 0.0 && !cbor;
+    }
+
+    /**
+     * Parse options encoded in a destination, ignoring unknown parameters
+     */
+    public static SubscriptionOptions fromDestination(String destination) {
+        if (destination == null || destination.indexOf(';') < 0) {
+            return DEFAULT;
+        }
+        boolean images = true;
+        double minConfidence = 0.0;
+        boolean cbor = false;
+        String[] parts = destination.split(";");
+        for (int i = 1; i < parts.length; i++) {
+            String[] keyValue = parts[i].split("=", 2);
+            if (keyValue.length != 2) {
+                continue;
+            }
+            if (IMAGES_PARAM.equals(keyValue[0])) {
+                images = !"false".equalsIgnoreCase(keyValue[1].trim());
+            } else if (MIN_CONFIDENCE_PARAM.equals(keyValue[0])) {
+                minConfidence = parseConfidence(keyValue[1], minConfidence);
+            } else if (ENCODING_PARAM.equals(keyValue[0])) {
+                cbor = CBOR_ENCODING.equalsIgnoreCase(keyValue[1].trim());
+            }
+        }
+        return new SubscriptionOptions(images, minConfidence, cbor);
+    }
+
+    /**
+     * Override options with values taken from STOMP SUBSCRIBE headers (null headers are ignored)
+     */
+    public SubscriptionOptions withHeaders(String imagesHeader, String minConfidenceHeader, String encodingHeader) {
+        boolean newImages = imagesHeader != null ? !"false".equalsIgnoreCase(imagesHeader.trim()) : images;
+        double newMinConfidence = minConfidenceHeader != null
+                ? parseConfidence(minConfidenceHeader, minConfidence) : minConfidence;
+        boolean newCbor = encodingHeader != null ? CBOR_ENCODING.equalsIgnoreCase(encodingHeader.trim()) : cbor;
+        return new SubscriptionOptions(newImages, newMinConfidence, newCbor);
+    }
+
+    /**
+     * The same options with JSON encoding, for sessions that cannot receive binary frames
+     */
+    public SubscriptionOptions withoutCbor() {
+        return cbor ? new SubscriptionOptions(images, minConfidence, false) : this;
+    }
+
+    /**
+     * Build the canonical variant destination for a base destination
+     */
+    public String applyTo(String baseDestination) {
+        StringBuilder destination = new StringBuilder(baseDestination);
+        if (!images) {
+            destination.append(';').append(IMAGES_PARAM).append("=false");
+        }
+        if (minConfidence > 0.0) {
+            destination.append(';').append(MIN_CONFIDENCE_PARAM).append('=')
+                    .append(String.format(Locale.ROOT, "%.2f", minConfidence));
+        }
+        if (cbor) {
+            destination.append(';').append(ENCODING_PARAM).append('=').append(CBOR_ENCODING);
+        }
+        return destination.toString();
+    }
+
+    public static String baseOf(String destination) {
+        int separator = destination.indexOf(';');
+        return separator < 0 ? destination : destination.substring(0, separator);
+    }
+
+    private static double parseConfidence(String value, double fallback) {
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.wavestone.stacamback.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TrackEvent {
+    private String type; // TRACK_APPEARED, TRACK_MOVED, TRACK_DISAPPEARED
+    private String trackId;
+    private String className;
+    private double confidence;
+    private YoloDetection.BoundingBox boundingBox;
+}
@@ -0,0 +1,21 @@
+package com.wavestone.stacamback.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+/**
+ * Object followed across frames under a stable track ID
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TrackedObject {
+    private String trackId;
+    private String className;
+    private double confidence; // confidence of the latest matched detection
+    private YoloDetection.BoundingBox boundingBox;
+    private int firstFrame;
+    private int lastFrame;
+    private double maxConfidence;
+}
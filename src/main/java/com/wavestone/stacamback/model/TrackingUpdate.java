@@ -0,0 +1,21 @@
+package com.wavestone.stacamback.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Result of feeding one frame to a tracker: the track changes it caused and, on keyframes,
+ * the full list of active tracks
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TrackingUpdate {
+    private int frameIndex;
+    private boolean keyframe;
+    private List<TrackEvent> events;
+    private List<TrackedObject> tracks; // active confirmed tracks, only filled on keyframes
+}
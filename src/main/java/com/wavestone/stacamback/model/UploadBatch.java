@@ -0,0 +1,23 @@
+package com.wavestone.stacamback.model;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Progress of a bulk upload: the uploads it created and how many of them have finished
+ */
+@Data
+public class UploadBatch {
+    private String batchId;
+    private String cameraId;
+    private LocalDateTime createdAt;
+    private List<Long> detectionIds;
+    private List<String> rejectedFiles; // files and archive entries skipped as unsupported
+    private int total;
+    private int completed;
+    private int failed;
+    private int cancelled;
+    private boolean finished;
+}
@@ -22,6 +22,7 @@ public class WebSocketDetectionResponse {
     private Integer height; // Image or video height in pixels
     private String cameraId; // camera_one or camera_two
     private String imageBase64; // Base64 encoded image data
+    private String mediaUrl; // original upload, served with range requests by /api/media
     private String mimeType; // e.g., "image/jpeg", "image/png"
 
     // Constructor from DetectionResult
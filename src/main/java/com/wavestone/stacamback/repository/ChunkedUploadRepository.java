@@ -0,0 +1,14 @@
+package com.wavestone.stacamback.repository;
+
+import com.wavestone.stacamback.model.ChunkedUpload;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface ChunkedUploadRepository extends JpaRepository<ChunkedUpload, String> {
+
+    List<ChunkedUpload> findByStatusAndUpdatedAtBefore(String status, LocalDateTime updatedBefore);
+}
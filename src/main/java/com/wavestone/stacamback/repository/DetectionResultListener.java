@@ -0,0 +1,39 @@
+package com.wavestone.stacamback.repository;
+
+import com.wavestone.stacamback.model.DetectionResult;
+import com.wavestone.stacamback.model.DetectionResultSaved;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostUpdate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Turns every write of a {@link DetectionResult} into a {@link DetectionResultSaved} application event,
+ * whichever code path saved it. JPA callbacks run before the transaction commits, so the event is held
+ * back until the commit and dropped on rollback; listeners only ever see rows other readers can see.
+ */
+@Component
+@RequiredArgsConstructor
+public class DetectionResultListener {
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    @PostPersist
+    @PostUpdate
+    public void saved(DetectionResult result) {
+        DetectionResultSaved event = new DetectionResultSaved(result);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            eventPublisher.publishEvent(event);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                eventPublisher.publishEvent(event);
+            }
+        });
+    }
+}
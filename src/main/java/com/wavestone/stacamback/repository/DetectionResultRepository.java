@@ -1,12 +1,18 @@
 package com.wavestone.stacamback.repository;
 
 import com.wavestone.stacamback.model.DetectionResult;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface DetectionResultRepository extends JpaRepository<DetectionResult, Long> {
@@ -19,4 +25,32 @@ public interface DetectionResultRepository extends JpaRepository<DetectionResult
     List<DetectionResult> findRecentDetections(LocalDateTime since);
 
     List<DetectionResult> findTop10ByOrderByProcessedAtDesc();
+
+    List<DetectionResult> findByCameraIdOrderByProcessedAtDesc(String cameraId, Pageable pageable);
+
+    @Query("SELECT d.status FROM DetectionResult d WHERE d.batchId = :batchId")
+    List<String> findStatusesByBatchId(String batchId);
+
+    @Query("SELECT DISTINCT d.cameraId FROM DetectionResult d")
+    List<String> findCameraIds();
+
+    /**
+     * Oldest results that still have their media file, for retention
+     */
+    List<DetectionResult> findByFilePathIsNotNullAndStatusInOrderByProcessedAt(Collection<String> statuses,
+                                                                                Pageable pageable);
+
+    /**
+     * Results for export, oldest first, read through a cursor in batches of the fetch size. Null filters
+     * match everything; must be consumed in a transaction and closed.
+     */
+    @QueryHints({
+            @QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = AvailableHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT d FROM DetectionResult d WHERE (:cameraId IS NULL OR d.cameraId = :cameraId)"
+            + " AND (:from IS NULL OR d.processedAt >= :from) AND (:to IS NULL OR d.processedAt < :to)"
+            + " AND (:anyStatus = true OR d.status IN :statuses) ORDER BY d.id")
+    Stream<DetectionResult> streamForExport(String cameraId, LocalDateTime from, LocalDateTime to,
+                                            boolean anyStatus, Collection<String> statuses);
 }
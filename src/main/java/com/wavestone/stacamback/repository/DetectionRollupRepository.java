@@ -0,0 +1,31 @@
+package com.wavestone.stacamback.repository;
+
+import com.wavestone.stacamback.model.DetectionRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface DetectionRollupRepository extends JpaRepository<DetectionRollup, Long> {
+
+    @Query("SELECT r FROM DetectionRollup r WHERE r.cameraId = :cameraId " +
+            "AND r.bucketStart >= :from AND r.bucketStart < :to ORDER BY r.bucketStart")
+    List<DetectionRollup> findRange(String cameraId, LocalDateTime from, LocalDateTime to);
+
+    /**
+     * Add to an existing bucket in place, so that nodes flushing the same bucket never overwrite each other
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE DetectionRollup r SET r.appearedCount = r.appearedCount + :appeared, " +
+            "r.detectionFrames = r.detectionFrames + :detectionFrames, " +
+            "r.peakCount = CASE WHEN r.peakCount < :peak THEN :peak ELSE r.peakCount END " +
+            "WHERE r.cameraId = :cameraId AND r.bucketStart = :bucketStart AND r.className = :className")
+    int addToBucket(String cameraId, LocalDateTime bucketStart, String className, long appeared,
+                    long detectionFrames, int peak);
+}
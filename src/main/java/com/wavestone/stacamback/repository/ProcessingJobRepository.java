@@ -0,0 +1,56 @@
+package com.wavestone.stacamback.repository;
+
+import com.wavestone.stacamback.model.ProcessingJob;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ProcessingJobRepository extends JpaRepository<ProcessingJob, Long> {
+
+    /**
+     * Pending jobs and jobs whose lease expired, locked with SELECT ... FOR UPDATE SKIP LOCKED
+     * (lock timeout -2) so concurrent nodes claim disjoint rows. Dialects without SKIP LOCKED
+     * support fall back to a blocking FOR UPDATE.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT j FROM ProcessingJob j WHERE j.status = 'PENDING' " +
+            "OR (j.status = 'RUNNING' AND j.leaseExpiresAt < :now) ORDER BY j.createdAt")
+    List<ProcessingJob> findClaimable(LocalDateTime now, Pageable pageable);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT j FROM ProcessingJob j WHERE j.id = :id")
+    Optional<ProcessingJob> findByIdForUpdate(Long id);
+
+    @Modifying
+    @Query("UPDATE ProcessingJob j SET j.leaseExpiresAt = :leaseExpiresAt, j.heartbeatAt = :now " +
+            "WHERE j.id IN :ids AND j.ownerNode = :ownerNode AND j.status = 'RUNNING'")
+    int extendLeases(Collection<Long> ids, String ownerNode, LocalDateTime now, LocalDateTime leaseExpiresAt);
+
+    /**
+     * Cancel every unfinished job of an upload; running ones are stopped by their owner at its next heartbeat
+     */
+    @Modifying
+    @Query("UPDATE ProcessingJob j SET j.status = 'CANCELLED', j.leaseExpiresAt = NULL " +
+            "WHERE j.detectionResultId = :detectionResultId AND j.status IN ('PENDING', 'RUNNING', 'SPLIT')")
+    int cancelByDetectionResultId(Long detectionResultId);
+
+    @Query("SELECT DISTINCT j.detectionResultId FROM ProcessingJob j WHERE j.id IN :ids AND j.status = 'CANCELLED'")
+    List<Long> findCancelledDetectionResultIds(Collection<Long> ids);
+
+    List<ProcessingJob> findByParentJobId(Long parentJobId);
+
+    long countByStatus(String status);
+}
@@ -0,0 +1,276 @@
+package com.wavestone.stacamback.service;
+
+import com.wavestone.stacamback.model.DetectionResult;
+import com.wavestone.stacamback.model.DetectionResultSaved;
+import com.wavestone.stacamback.model.UploadBatch;
+import com.wavestone.stacamback.repository.DetectionResultRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Bulk uploads of many images or videos at once, e.g. the snapshots a camera took while it was offline.
+ * Files and the entries of ZIP archives are streamed to storage, all their detection records are inserted
+ * in one batched transaction and inference is started for them as one job. Every finished upload of the
+ * batch is announced by a {@code BATCH_PROGRESS} event on the camera destinations, the last one by
+ * {@code BATCH_COMPLETED}. The node that finishes an upload counts the batch from the database, so events
+ * are sent wherever the uploads are processed. ZIP entries keep their modification time as capture time, so
+ * snapshots taken while a camera was offline are counted in the minute they were taken.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BatchUploadService {
+
+    private static final List<String> FINISHED_STATUSES = List.of("COMPLETED", "FAILED", "CANCELLED");
+    private static final int MAX_TRACKED_BATCHES = 100;
+
+    private final YoloProcessingService yoloProcessingService;
+    private final ProcessingJobService processingJobService;
+    private final MediaStorageService mediaStorageService;
+    private final DetectionResultRepository repository;
+    private final DetectionBroadcaster broadcaster;
+
+    @Value("${app.upload.batch.max-files:1000}")
+    private int maxFiles;
+
+    @Value("${app.upload.batch.max-archive-size:2GB}")
+    private DataSize maxArchiveSize;
+
+    // Insertion-ordered, so the oldest batch is dropped first
+    private final Map<String, Batch> batches = new LinkedHashMap<>();
+    // Batches whose BATCH_COMPLETED this node sent, insertion-ordered like batches
+    private final Set<String> completedBatches = new LinkedHashSet<>();
+
+    /**
+     * Store the files (ZIP archives are unpacked), create their detection records and start inference
+     *
+     * @param deadline frames not analyzed by then are dropped, null for no deadline
+     * @throws IllegalArgumentException if there is no supported file or the batch exceeds its limits
+     */
+    public UploadBatch upload(List<MultipartFile> files, String cameraId, LocalDateTime deadline) throws IOException {
+        Map<Path, String> stored = new LinkedHashMap<>();
+        Map<Path, LocalDateTime> captureTimes = new HashMap<>();
+        List<String> rejected = new ArrayList<>();
+        try {
+            for (MultipartFile file : files) {
+                String fileName = Objects.requireNonNullElse(file.getOriginalFilename(), "");
+                if (fileName.toLowerCase().endsWith(".zip")) {
+                    try (ZipInputStream archive = new ZipInputStream(file.getInputStream())) {
+                        storeEntries(archive, cameraId, stored, captureTimes, rejected);
+                    }
+                } else if (!file.isEmpty() && yoloProcessingService.isSupportedFile(fileName)) {
+                    try (InputStream input = file.getInputStream()) {
+                        store(input, fileName, cameraId, stored, Long.MAX_VALUE);
+                    }
+                } else {
+                    rejected.add(fileName);
+                }
+            }
+            if (stored.isEmpty()) {
+                throw new IllegalArgumentException("No images or videos in the upload");
+            }
+        } catch (IOException | RuntimeException e) {
+            deleteAll(stored.keySet());
+            throw e;
+        }
+
+        String batchId = UUID.randomUUID().toString();
+        List<DetectionResult> results = yoloProcessingService.createDetectionResults(stored, captureTimes, cameraId,
+                deadline, batchId);
+        Batch batch = track(batchId, cameraId, results, rejected);
+        log.info("Bulk upload {} from {}: {} files stored, {} rejected", batchId, cameraId, results.size(),
+                rejected.size());
+        publishProgress(batchId, cameraId, Collections.nCopies(results.size(), "PENDING"), "BATCH_PROGRESS");
+        processingJobService.submitBatch(results);
+        return toUploadBatch(batch, List.of());
+    }
+
+    /**
+     * Progress of a batch, counted from the database so uploads processed by other nodes are included
+     */
+    public Optional<UploadBatch> find(String batchId) {
+        Batch batch;
+        synchronized (batches) {
+            batch = batches.get(batchId);
+        }
+        if (batch == null) {
+            return Optional.empty();
+        }
+        return Optional.of(toUploadBatch(batch, repository.findStatusesByBatchId(batchId)));
+    }
+
+    /**
+     * Announce the progress of the batch of a finished upload, counted from the committed statuses of all
+     * its uploads. In cluster mode two nodes finishing the last uploads at the same moment may both count
+     * the batch as complete, so {@code BATCH_COMPLETED} is sent at least once.
+     */
+    @EventListener
+    public void onSaved(DetectionResultSaved event) {
+        DetectionResult result = event.result();
+        if (result.getBatchId() == null || !FINISHED_STATUSES.contains(result.getStatus())) {
+            return;
+        }
+        List<String> statuses = repository.findStatusesByBatchId(result.getBatchId());
+        boolean last = statuses.stream().allMatch(FINISHED_STATUSES::contains);
+        if (last) {
+            synchronized (completedBatches) {
+                if (!completedBatches.add(result.getBatchId())) {
+                    return;
+                }
+                Iterator<String> eldest = completedBatches.iterator();
+                while (completedBatches.size() > MAX_TRACKED_BATCHES) {
+                    eldest.next();
+                    eldest.remove();
+                }
+            }
+            log.info("Bulk upload {} finished", result.getBatchId());
+        }
+        publishProgress(result.getBatchId(), result.getCameraId(), statuses,
+                last ? "BATCH_COMPLETED" : "BATCH_PROGRESS");
+    }
+
+    /**
+     * Store the supported entries of an archive, with their modification time as capture time where it is set
+     */
+    void storeEntries(ZipInputStream archive, String cameraId, Map<Path, String> stored,
+                      Map<Path, LocalDateTime> captureTimes, List<String> rejected) throws IOException {
+        long remaining = maxArchiveSize.toBytes();
+        ZipEntry entry;
+        while ((entry = archive.getNextEntry()) != null) {
+            String entryName = entry.getName().replace('\\', '/');
+            String baseName = entryName.substring(entryName.lastIndexOf('/') + 1);
+            if (entry.isDirectory() || baseName.startsWith(".") || entryName.startsWith("__MACOSX/")) {
+                continue;
+            }
+            if (!yoloProcessingService.isSupportedFile(baseName)) {
+                rejected.add(entryName);
+                continue;
+            }
+            // Entries of different folders may share a name
+            Path filePath = store(archive, entryName.replace('/', '_'), cameraId, stored, remaining);
+            remaining -= Files.size(filePath);
+            if (entry.getTimeLocal() != null) {
+                captureTimes.put(filePath, entry.getTimeLocal());
+            }
+        }
+    }
+
+    /**
+     * @return the stored file
+     */
+    private Path store(InputStream input, String fileName, String cameraId, Map<Path, String> stored,
+                       long maxBytes) throws IOException {
+        if (stored.size() >= maxFiles) {
+            throw new IllegalArgumentException("A bulk upload may contain at most " + maxFiles + " files");
+        }
+        if (stored.containsValue(fileName)) {
+            fileName = stored.size() + "_" + fileName;
+        }
+        Path filePath = mediaStorageService.newUploadPath(cameraId, fileName);
+        stored.put(filePath, fileName);
+        byte[] buffer = new byte[8192];
+        long written = 0;
+        try (OutputStream output = Files.newOutputStream(filePath)) {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                written += read;
+                if (written > maxBytes) {
+                    throw new IllegalArgumentException("Archive expands to more than " + maxArchiveSize);
+                }
+                output.write(buffer, 0, read);
+            }
+        }
+        return filePath;
+    }
+
+    private Batch track(String batchId, String cameraId, List<DetectionResult> results, List<String> rejected) {
+        Batch batch = new Batch(batchId, cameraId, LocalDateTime.now(),
+                results.stream().map(DetectionResult::getId).toList(), List.copyOf(rejected));
+        synchronized (batches) {
+            batches.put(batch.batchId, batch);
+            Iterator<Batch> eldest = batches.values().iterator();
+            while (batches.size() > MAX_TRACKED_BATCHES) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * @param statuses current status of every upload of the batch
+     */
+    private void publishProgress(String batchId, String cameraId, List<String> statuses, String type) {
+        Map<String, Object> message = new HashMap<>();
+        message.put("type", type);
+        message.put("batchId", batchId);
+        message.put("cameraId", cameraId);
+        message.put("total", statuses.size());
+        message.put("completed", Collections.frequency(statuses, "COMPLETED"));
+        message.put("failed", Collections.frequency(statuses, "FAILED"));
+        message.put("cancelled", Collections.frequency(statuses, "CANCELLED"));
+        message.put("timestamp", LocalDateTime.now());
+        broadcaster.publishStatus(cameraId, null, message, null);
+    }
+
+    /**
+     * @param statuses current status of the uploads, empty before any has finished
+     */
+    private static UploadBatch toUploadBatch(Batch batch, List<String> statuses) {
+        UploadBatch uploadBatch = new UploadBatch();
+        uploadBatch.setBatchId(batch.batchId);
+        uploadBatch.setCameraId(batch.cameraId);
+        uploadBatch.setCreatedAt(batch.createdAt);
+        uploadBatch.setDetectionIds(batch.detectionIds);
+        uploadBatch.setRejectedFiles(batch.rejectedFiles);
+        uploadBatch.setTotal(batch.detectionIds.size());
+        uploadBatch.setCompleted(Collections.frequency(statuses, "COMPLETED"));
+        uploadBatch.setFailed(Collections.frequency(statuses, "FAILED"));
+        uploadBatch.setCancelled(Collections.frequency(statuses, "CANCELLED"));
+        uploadBatch.setFinished(uploadBatch.getCompleted() + uploadBatch.getFailed() + uploadBatch.getCancelled()
+                >= uploadBatch.getTotal());
+        return uploadBatch;
+    }
+
+    private static void deleteAll(Collection<Path> files) {
+        for (Path file : files) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Could not delete {}: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    private static final class Batch {
+        final String batchId;
+        final String cameraId;
+        final LocalDateTime createdAt;
+        final List<Long> detectionIds;
+        final List<String> rejectedFiles;
+
+        Batch(String batchId, String cameraId, LocalDateTime createdAt, List<Long> detectionIds,
+              List<String> rejectedFiles) {
+            this.batchId = batchId;
+            this.cameraId = cameraId;
+            this.createdAt = createdAt;
+            this.detectionIds = detectionIds;
+            this.rejectedFiles = rejectedFiles;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.wavestone.stacamback.service;
+
+import com.wavestone.stacamback.model.DetectionResult;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cancellation tokens of the uploads being processed on this node. Several frame-range jobs of one video
+ * can run here at once, so a token stays registered until the last of them closes it.
+ */
+@Service
+public class CancellationRegistry {
+
+    private final Map<Long, Registration> registrations = new ConcurrentHashMap<>();
+
+    /**
+     * Token of an upload about to be processed; every call must be paired with {@link #close}
+     */
+    public CancellationToken open(DetectionResult detectionResult) {
+        return registrations.compute(detectionResult.getId(), (id, registration) -> {
+            if (registration == null) {
+                registration = new Registration(new CancellationToken(detectionResult.getDeadline()));
+            }
+            registration.users++;
+            return registration;
+        }).token;
+    }
+
+    public void close(Long detectionResultId) {
+        registrations.computeIfPresent(detectionResultId,
+                (id, registration) -> --registration.users > 0 ? registration : null);
+    }
+
+    /**
+     * Token of an upload processed on this node, or {@link CancellationToken#NONE}
+     */
+    public CancellationToken get(Long detectionResultId) {
+        Registration registration = detectionResultId == null ? null : registrations.get(detectionResultId);
+        return registration != null ? registration.token : CancellationToken.NONE;
+    }
+
+    /**
+     * @return whether the upload was being processed on this node
+     */
+    public boolean cancel(Long detectionResultId, String reason) {
+        Registration registration = registrations.get(detectionResultId);
+        if (registration == null) {
+            return false;
+        }
+        registration.token.cancel(reason);
+        return true;
+    }
+
+    private static final class Registration {
+        final CancellationToken token;
+        int users; // guarded by the map's compute
+
+        Registration(CancellationToken token) {
+            this.token = token;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.wavestone.stacamback.service;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cancellation state and optional deadline of one upload or live frame. Decoding, inference and
+ * broadcasting check it between steps; model processes registered with the token are killed when it is
+ * cancelled, so an in-flight inference call does not run to the end.
+ */
+public class CancellationToken {
+
+    /**
+     * Token of work that cannot be cancelled and has no deadline
+     */
+    public static final CancellationToken NONE = new CancellationToken(null);
+
+    private final LocalDateTime deadline;
+    private final Set<Process> processes = ConcurrentHashMap.newKeySet();
+    private volatile String reason;
+
+    public CancellationToken(LocalDateTime deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * @return false if the token was already cancelled
+     */
+    public boolean cancel(String reason) {
+        if (this == NONE) {
+            return false;
+        }
+        synchronized (this) {
+            if (this.reason != null) {
+                return false;
+            }
+            this.reason = reason;
+        }
+        processes.forEach(Process::destroyForcibly);
+        return true;
+    }
+
+    public boolean isCancelled() {
+        return reason != null;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public LocalDateTime getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Whether the deadline has passed; work started after it is dropped
+     */
+    public boolean isExpired() {
+        return deadline != null && LocalDateTime.now().isAfter(deadline);
+    }
+
+    public void throwIfCancelled() {
+        if (reason != null) {
+            throw new CancellationException(reason);
+        }
+    }
+
+    /**
+     * Kill {@code process} if the token is (or gets) cancelled before it is unregistered
+     */
+    public void register(Process process) {
+        if (this == NONE) {
+            return;
+        }
+        processes.add(process);
+        if (isCancelled()) {
+            process.destroyForcibly();
+        }
+    }
+
+    public void unregister(Process process) {
+        processes.remove(process);
+    }
+}
@@ -0,0 +1,192 @@
+package com.wavestone.stacamback.service;
+
+import com.wavestone.stacamback.model.ChunkedUpload;
+import com.wavestone.stacamback.model.DetectionResult;
+import com.wavestone.stacamback.repository.ChunkedUploadRepository;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resumable uploads sent as a sequence of chunks. Every chunk names the offset it starts at, which must
+ * match the bytes already stored; after an interruption the client asks for the current offset and
+ * continues from there.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ChunkedUploadService {
+
+    private final ChunkedUploadRepository uploadRepository;
+    private final YoloProcessingService yoloProcessingService;
+    private final ProcessingJobService processingJobService;
+    private final ProgressiveVideoProcessor progressiveVideoProcessor;
+    private final MediaStorageService mediaStorageService;
+
+    @Value("${app.upload.chunked.expire-hours:24}")
+    private long expireHours;
+
+    private final Map<String, Object> uploadLocks = new ConcurrentHashMap<>();
+
+    /**
+     * Thrown when a chunk does not start where the stored data ends
+     */
+    @Getter
+    public static class OffsetMismatchException extends RuntimeException {
+        private final long expectedOffset;
+
+        public OffsetMismatchException(long expectedOffset) {
+            super("Chunk must start at offset " + expectedOffset);
+            this.expectedOffset = expectedOffset;
+        }
+    }
+
+    public ChunkedUpload init(String originalFileName, String cameraId, Long totalSize) throws IOException {
+        Path filePath = mediaStorageService.newUploadPath(cameraId, originalFileName);
+        Files.createFile(filePath);
+
+        ChunkedUpload upload = new ChunkedUpload();
+        upload.setId(UUID.randomUUID().toString());
+        upload.setOriginalFileName(originalFileName);
+        upload.setCameraId(cameraId);
+        upload.setFilePath(filePath.toString());
+        upload.setTotalSize(totalSize);
+        upload.setReceivedBytes(0);
+        return uploadRepository.save(upload);
+    }
+
+    public Optional<ChunkedUpload> find(String uploadId) {
+        return uploadRepository.findById(uploadId);
+    }
+
+    public Map<String, Object> getProgress(String uploadId) {
+        return progressiveVideoProcessor.getProgress(uploadId);
+    }
+
+    /**
+     * Append a chunk starting at {@code offset}. Bytes written before a broken connection are kept,
+     * so the stored size is always the offset to resume from.
+     */
+    public ChunkedUpload append(String uploadId, long offset, InputStream data) throws IOException {
+        synchronized (lockFor(uploadId)) {
+            ChunkedUpload upload = uploadRepository.findById(uploadId)
+                    .orElseThrow(() -> new IllegalArgumentException("Unknown upload: " + uploadId));
+            if (!"UPLOADING".equals(upload.getStatus())) {
+                throw new IllegalStateException("Upload is already finalized");
+            }
+
+            Path filePath = Paths.get(upload.getFilePath());
+            long storedBytes = Files.size(filePath);
+            if (offset != storedBytes) {
+                throw new OffsetMismatchException(storedBytes);
+            }
+
+            boolean oversized = false;
+            try (OutputStream out = Files.newOutputStream(filePath, StandardOpenOption.APPEND)) {
+                data.transferTo(out);
+            } finally {
+                storedBytes = Files.size(filePath);
+                if (upload.getTotalSize() != null && storedBytes > upload.getTotalSize()) {
+                    truncate(filePath, offset);
+                    storedBytes = offset;
+                    oversized = true;
+                }
+                upload.setReceivedBytes(storedBytes);
+                upload = uploadRepository.save(upload);
+            }
+            if (oversized) {
+                throw new IllegalArgumentException("Chunk exceeds the declared size of " + upload.getTotalSize() + " bytes");
+            }
+
+            progressiveVideoProcessor.dataAvailable(upload, storedBytes);
+            return upload;
+        }
+    }
+
+    /**
+     * Complete the upload and make sure it gets processed: progressively analyzed videos continue on
+     * their own, anything else is submitted as a regular upload.
+     */
+    public DetectionResult finalizeUpload(String uploadId) throws IOException {
+        synchronized (lockFor(uploadId)) {
+            ChunkedUpload upload = uploadRepository.findById(uploadId)
+                    .orElseThrow(() -> new IllegalArgumentException("Unknown upload: " + uploadId));
+            if (!"UPLOADING".equals(upload.getStatus())) {
+                throw new IllegalStateException("Upload is already finalized");
+            }
+
+            Path filePath = Paths.get(upload.getFilePath());
+            long storedBytes = Files.size(filePath);
+            if (upload.getTotalSize() != null && storedBytes != upload.getTotalSize()) {
+                throw new OffsetMismatchException(storedBytes);
+            }
+            if (storedBytes == 0) {
+                throw new IllegalStateException("Upload is empty");
+            }
+
+            DetectionResult detectionResult = progressiveVideoProcessor.complete(upload, storedBytes);
+            if (detectionResult == null) {
+                detectionResult = yoloProcessingService.createDetectionResult(filePath,
+                        upload.getOriginalFileName(), upload.getCameraId(), null, null);
+                processingJobService.submit(detectionResult);
+            }
+
+            upload.setStatus("FINALIZED");
+            upload.setReceivedBytes(storedBytes);
+            upload.setDetectionResultId(detectionResult.getId());
+            uploadRepository.save(upload);
+            uploadLocks.remove(uploadId);
+
+            log.info("Chunked upload {} finalized as {} ({} bytes)", uploadId, detectionResult.getFileName(), storedBytes);
+            return detectionResult;
+        }
+    }
+
+    /**
+     * Delete uploads that have not received a chunk for longer than the expiry time
+     */
+    @Scheduled(fixedDelayString = "${app.upload.chunked.cleanup-interval:3600000}")
+    public void removeExpiredUploads() {
+        LocalDateTime cutoff = LocalDateTime.now().minusHours(expireHours);
+        for (ChunkedUpload upload : uploadRepository.findByStatusAndUpdatedAtBefore("UPLOADING", cutoff)) {
+            synchronized (lockFor(upload.getId())) {
+                progressiveVideoProcessor.abandon(upload.getId());
+                try {
+                    Files.deleteIfExists(Paths.get(upload.getFilePath()));
+                } catch (IOException e) {
+                    log.warn("Could not delete expired upload file: {}", upload.getFilePath());
+                }
+                uploadRepository.delete(upload);
+                uploadLocks.remove(upload.getId());
+                log.info("Removed expired chunked upload {} ({} bytes received)", upload.getId(), upload.getReceivedBytes());
+            }
+        }
+    }
+
+    private Object lockFor(String uploadId) {
+        return uploadLocks.computeIfAbsent(uploadId, id -> new Object());
+    }
+
+    private static void truncate(Path filePath, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.wavestone.stacamback.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.wavestone.stacamback.config.ConflatingWebSocketSession;
+import com.wavestone.stacamback.config.SubscriptionOptionsInterceptor;
+import com.wavestone.stacamback.model.CompactDetections;
+import com.wavestone.stacamback.model.SubscriptionOptions;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+
+/**
+ * Publishes detection events to the hierarchical topic layout:
+ * <ul>
+ *     <li>{@code /topic/detections} - every event (legacy destination)</li>
+ *     <li>{@code /topic/detections/metadata} - every event without images or detection lists</li>
+ *     <li>{@code /topic/cameras/{cameraId}} - every event of one camera</li>
+ *     <li>{@code /topic/jobs/{id}} - status events of one job</li>
+ *     <li>{@code /topic/jobs/{id}/frames} - frame events of one job</li>
+ * </ul>
+ * Each payload variant is only built and serialized when at least one session subscribes to it.
+ * Frame events carry a conflation key so slow sessions only receive the latest frame per camera and job.
+ * CBOR variants are sent as binary frames with the detections in the {@link CompactDetections} layout.
+ * Images are referenced by a media endpoint URL in {@code imageUrl}, or embedded in {@code imageBase64}
+ * with {@code app.websocket.image.delivery=base64}.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DetectionBroadcaster {
+
+    public static final String ALL_DETECTIONS_DESTINATION = "/topic/detections";
+    public static final String METADATA_DESTINATION = "/topic/detections/metadata";
+    public static final String CAMERA_DESTINATION_PREFIX = "/topic/cameras/";
+    public static final String JOB_DESTINATION_PREFIX = "/topic/jobs/";
+
+    private static final String IMAGE_FIELD = "imageBase64";
+    private static final String IMAGE_URL_FIELD = "imageUrl";
+    private static final String DETECTIONS_FIELD = "detections";
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final SubscriptionTracker subscriptionTracker;
+    private final ObjectMapper objectMapper;
+    private final MappingJackson2CborHttpMessageConverter cborConverter;
+
+    @Value("${app.websocket.image.delivery:url}")
+    private String imageDelivery;
+
+    /**
+     * Publish a job status event (processing started, completed, failed, ...)
+     *
+     * @param image lazily computed image URL or Base64 image, or null when the event carries no image
+     */
+    public void publishStatus(String cameraId, Long jobId, Map<String, Object> message, Callable<String> image) {
+        publish(cameraId, jobId,
+                Arrays.asList(ALL_DETECTIONS_DESTINATION, cameraDestination(cameraId), jobDestination(jobId)),
+                message, image, null);
+    }
+
+    /**
+     * Publish a per-frame event (frame detections or frame error)
+     */
+    public void publishFrame(String cameraId, Long jobId, Map<String, Object> message, Callable<String> image) {
+        publish(cameraId, jobId,
+                Arrays.asList(ALL_DETECTIONS_DESTINATION, cameraDestination(cameraId), jobFramesDestination(jobId)),
+                message, image, cameraId + "/" + jobId);
+    }
+
+    /**
+     * Publish track changes on the frame destinations. Unlike frames they are never conflated, since
+     * clients keep track state from them.
+     */
+    public void publishTrackEvents(String cameraId, Long jobId, Map<String, Object> message) {
+        publish(cameraId, jobId,
+                Arrays.asList(ALL_DETECTIONS_DESTINATION, cameraDestination(cameraId), jobFramesDestination(jobId)),
+                message, null, null);
+    }
+
+    public static String cameraDestination(String cameraId) {
+        return cameraId != null ? CAMERA_DESTINATION_PREFIX + cameraId : null;
+    }
+
+    public static String jobDestination(Long jobId) {
+        return jobId != null ? JOB_DESTINATION_PREFIX + jobId : null;
+    }
+
+    public static String jobFramesDestination(Long jobId) {
+        return jobId != null ? JOB_DESTINATION_PREFIX + jobId + "/frames" : null;
+    }
+
+    private void publish(String cameraId, Long jobId, List<String> baseDestinations, Map<String, Object> message,
+                         Callable<String> image, String conflationKey) {
+        try (PipelineTrace.Stage stage = PipelineTrace.stage(PipelineTrace.BROADCAST, jobId, cameraId)) {
+            publish(baseDestinations, message, image, conflationKey);
+        }
+    }
+
+    private void publish(List<String> baseDestinations, Map<String, Object> message, Callable<String> image,
+                         String conflationKey) {
+        LazyImage lazyImage = new LazyImage(image);
+        Map<SubscriptionOptions, byte[]> serialized = new HashMap<>();
+
+        for (String baseDestination : baseDestinations) {
+            if (baseDestination == null) {
+                continue;
+            }
+            for (SubscriptionOptions options : subscriptionTracker.activeOptions(baseDestination)) {
+                byte[] payload = serialized.computeIfAbsent(options,
+                        o -> serialize(buildPayload(message, o, lazyImage), o.isCbor()));
+                if (payload != null) {
+                    send(options.applyTo(baseDestination), payload, conflationKey, options.isCbor());
+                }
+            }
+        }
+
+        if (subscriptionTracker.hasSubscribers(METADATA_DESTINATION)) {
+            byte[] payload = serialize(buildMetadata(message), false);
+            if (payload != null) {
+                send(METADATA_DESTINATION, payload, conflationKey, false);
+            }
+        }
+    }
+
+    private Map<String, Object> buildPayload(Map<String, Object> message, SubscriptionOptions options, LazyImage image) {
+        Map<String, Object> payload = new LinkedHashMap<>(message);
+        if (options.isImages()) {
+            String imageReference = image.get();
+            if (imageReference != null) {
+                payload.put("url".equalsIgnoreCase(imageDelivery) ? IMAGE_URL_FIELD : IMAGE_FIELD, imageReference);
+            }
+        } else {
+            payload.remove(IMAGE_FIELD);
+            payload.remove(IMAGE_URL_FIELD);
+        }
+        if (options.getMinConfidence() > 0.0 && payload.get(DETECTIONS_FIELD) instanceof String detections) {
+            payload.put(DETECTIONS_FIELD, filterByConfidence(detections, options.getMinConfidence()));
+        }
+        if (options.isCbor() && payload.get(DETECTIONS_FIELD) instanceof String detections) {
+            JsonNode compact = CompactDetections.compact(detections);
+            if (compact != null) {
+                payload.put(DETECTIONS_FIELD, compact);
+            }
+        }
+        return payload;
+    }
+
+    private Map<String, Object> buildMetadata(Map<String, Object> message) {
+        Map<String, Object> metadata = new LinkedHashMap<>(message);
+        metadata.remove(IMAGE_FIELD);
+        metadata.remove(IMAGE_URL_FIELD);
+        Object detections = metadata.remove(DETECTIONS_FIELD);
+        if (detections instanceof String json) {
+            JsonNode list = readDetectionList(json);
+            if (list != null) {
+                metadata.put("detectionCount", list.size());
+            }
+        }
+        return metadata;
+    }
+
+    /**
+     * Drop detections below the confidence threshold from a YOLO JSON result
+     */
+    private String filterByConfidence(String detectionsJson, double minConfidence) {
+        try {
+            JsonNode root = objectMapper.readTree(detectionsJson);
+            if (!(root instanceof ObjectNode result) || !(result.get(DETECTIONS_FIELD) instanceof ArrayNode list)) {
+                return detectionsJson;
+            }
+            ArrayNode filtered = objectMapper.createArrayNode();
+            for (JsonNode detection : list) {
+                if (detection.path("confidence").asDouble() >= minConfidence) {
+                    filtered.add(detection);
+                }
+            }
+            result.set(DETECTIONS_FIELD, filtered);
+            if (result.has("totalDetections")) {
+                result.put("totalDetections", filtered.size());
+            }
+            return objectMapper.writeValueAsString(result);
+        } catch (Exception e) {
+            log.debug("Could not filter detections by confidence: {}", e.getMessage());
+            return detectionsJson;
+        }
+    }
+
+    private JsonNode readDetectionList(String detectionsJson) {
+        try {
+            JsonNode list = objectMapper.readTree(detectionsJson).get(DETECTIONS_FIELD);
+            return list != null && list.isArray() ? list : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private byte[] serialize(Map<String, Object> payload, boolean cbor) {
+        try {
+            return (cbor ? cborConverter.getObjectMapper() : objectMapper).writeValueAsBytes(payload);
+        } catch (Exception e) {
+            log.error("Failed to serialize broadcast payload", e);
+            return null;
+        }
+    }
+
+    private void send(String destination, byte[] payload, String conflationKey, boolean cbor) {
+        try {
+            SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            if (cbor) {
+                // Only octet-stream payloads go out as binary WebSocket frames; the encoding header names the format
+                accessor.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+                accessor.setNativeHeader(SubscriptionOptionsInterceptor.ENCODING_HEADER, SubscriptionOptions.CBOR_ENCODING);
+            } else {
+                accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+            }
+            if (conflationKey != null) {
+                accessor.setNativeHeader(ConflatingWebSocketSession.CONFLATION_KEY_HEADER, conflationKey);
+            }
+            accessor.setLeaveMutable(true);
+            messagingTemplate.send(destination, MessageBuilder.createMessage(payload, accessor.getMessageHeaders()));
+        } catch (Exception e) {
+            log.error("Failed to broadcast to {}", destination, e);
+        }
+    }
+
+    /**
+     * Computes or stores the image at most once per event, and only if a subscriber wants it
+     */
+    private static final class LazyImage {
+        private final Callable<String> supplier;
+        private boolean resolved;
+        private String value;
+
+        private LazyImage(Callable<String> supplier) {
+            this.supplier = supplier;
+        }
+
+        private String get() {
+            if (!resolved) {
+                resolved = true;
+                if (supplier != null) {
+                    try {
+                        value = supplier.call();
+                    } catch (Exception e) {
+                        log.warn("Could not prepare image for broadcast", e);
+                    }
+                }
+            }
+            return value;
+        }
+    }
+}
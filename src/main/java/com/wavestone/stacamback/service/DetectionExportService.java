@@ -0,0 +1,118 @@
+package com.wavestone.stacamback.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.wavestone.stacamback.model.DetectionResult;
+import com.wavestone.stacamback.repository.DetectionResultRepository;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * Bulk export of detection results for offline analysis. Results are read through a database cursor and
+ * detached from the persistence context once written, so memory use does not grow with the export.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DetectionExportService {
+
+    private static final List<String> CSV_COLUMNS = List.of("id", "cameraId", "fileName", "fileType", "status",
+            "processedAt", "width", "height", "errorMessage", "detections");
+
+    private final DetectionResultRepository repository;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+
+    public enum Format {
+        NDJSON, CSV
+    }
+
+    /**
+     * Write the matching results, oldest first: one JSON object per line in the layout of the results API,
+     * or CSV with a header row and the detections as a JSON column
+     *
+     * @param cameraId camera, null for all
+     * @param from     first processedAt included, null for no lower bound
+     * @param to       processedAt excluded, null for no upper bound
+     * @param statuses statuses to include, null or empty for all
+     * @return number of results written
+     */
+    @Transactional(readOnly = true)
+    public long export(String cameraId, LocalDateTime from, LocalDateTime to, Collection<String> statuses,
+                       Format format, OutputStream output) throws IOException {
+        boolean anyStatus = statuses == null || statuses.isEmpty();
+        long count = 0;
+        try (Stream<DetectionResult> results = repository.streamForExport(cameraId, from, to, anyStatus,
+                anyStatus ? List.of("") : statuses)) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), 64 * 1024);
+            ResultWriter resultWriter = format == Format.CSV ? csvWriter(writer) : ndjsonWriter(writer);
+            for (DetectionResult result : (Iterable<DetectionResult>) results::iterator) {
+                resultWriter.write(result);
+                entityManager.detach(result);
+                count++;
+            }
+            writer.flush();
+        }
+        log.info("Exported {} detection results as {}", count, format);
+        return count;
+    }
+
+    @FunctionalInterface
+    private interface ResultWriter {
+        void write(DetectionResult result) throws IOException;
+    }
+
+    private ResultWriter ndjsonWriter(Writer writer) throws IOException {
+        // Rows only reach the response when the buffered writer fills up, not after every row
+        ObjectWriter objectWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(writer)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+        return result -> {
+            objectWriter.writeValue(generator, result);
+            generator.writeRaw('\n');
+            generator.flush();
+        };
+    }
+
+    private static ResultWriter csvWriter(Writer writer) throws IOException {
+        writer.write(String.join(",", CSV_COLUMNS));
+        writer.write("\r\n");
+        return result -> writeRow(writer, result.getId(), result.getCameraId(), result.getFileName(),
+                result.getFileType(), result.getStatus(), result.getProcessedAt(), result.getWidth(),
+                result.getHeight(), result.getErrorMessage(), result.getDetections());
+    }
+
+    private static void writeRow(Writer writer, Object... values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write(escapeCsv(Objects.toString(values[i], "")));
+        }
+        writer.write("\r\n");
+    }
+
+    /**
+     * Quote a CSV field (RFC 4180) if it contains a separator, quote or line break
+     */
+    private static String escapeCsv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
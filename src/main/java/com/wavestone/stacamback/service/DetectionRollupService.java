@@ -0,0 +1,238 @@
+package com.wavestone.stacamback.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wavestone.stacamback.model.DetectionRollup;
+import com.wavestone.stacamback.model.RollupBucket;
+import com.wavestone.stacamback.model.TrackEvent;
+import com.wavestone.stacamback.repository.DetectionRollupRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Maintains detection counts per camera, class and minute as results arrive. Counts are kept in memory
+ * and periodically added to the {@code detection_rollups} table, so dashboards read one row per class
+ * and minute instead of parsing stored detection JSON.
+ * <p>
+ * A person standing in view is detected in every analyzed frame, so distinct objects are only counted
+ * from {@link ObjectTracker#TRACK_APPEARED} events; the per-frame sum is kept as detection-frames and the
+ * peak is the primary series without tracking. Results are bucketed by capture time where it is known.
+ */
+@Service
+@Slf4j
+public class DetectionRollupService implements DisposableBean {
+
+    public static final int MAX_BUCKETS = 10080; // one week of minutes
+
+    private final DetectionRollupRepository repository;
+    private final ObjectMapper objectMapper;
+
+    // Recording takes the read lock, so any number of threads record concurrently;
+    // a flush takes the write lock only to swap in an empty map
+    private final ReadWriteLock swapLock = new ReentrantReadWriteLock();
+    private volatile Map<RollupKey, Counter> pending = new ConcurrentHashMap<>();
+    private volatile Map<RollupKey, Counter> flushing = Map.of();
+
+    public DetectionRollupService(DetectionRollupRepository repository, ObjectMapper objectMapper) {
+        this.repository = repository;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Count the detections of one analyzed image or frame
+     *
+     * @param capturedAt     when the image or frame was taken, null to use the current time
+     * @param detectionsJson YOLO output with a {@code detections} list
+     * @param trackEvents    events the frame caused in its tracker, null if it is not tracked
+     */
+    public void record(String cameraId, LocalDateTime capturedAt, String detectionsJson,
+                       List<TrackEvent> trackEvents) {
+        if (cameraId == null || detectionsJson == null) {
+            return;
+        }
+        Map<String, Integer> perClass = new HashMap<>();
+        try {
+            for (JsonNode detection : objectMapper.readTree(detectionsJson).path("detections")) {
+                perClass.merge(detection.path("className").asText("unknown"), 1, Integer::sum);
+            }
+        } catch (Exception e) {
+            log.debug("Could not parse detections for rollup: {}", e.getMessage());
+            return;
+        }
+        Map<String, Integer> appeared = new HashMap<>();
+        if (trackEvents != null) {
+            for (TrackEvent event : trackEvents) {
+                if (ObjectTracker.TRACK_APPEARED.equals(event.getType())) {
+                    appeared.merge(event.getClassName(), 1, Integer::sum);
+                }
+            }
+        }
+        if (perClass.isEmpty() && appeared.isEmpty()) {
+            return;
+        }
+
+        LocalDateTime bucketStart = Objects.requireNonNullElseGet(capturedAt, LocalDateTime::now)
+                .truncatedTo(ChronoUnit.MINUTES);
+        Set<String> classes = new HashSet<>(perClass.keySet());
+        classes.addAll(appeared.keySet());
+        swapLock.readLock().lock();
+        try {
+            for (String className : classes) {
+                Counter counter = pending.computeIfAbsent(
+                        new RollupKey(cameraId, bucketStart, className), key -> new Counter());
+                int detections = perClass.getOrDefault(className, 0);
+                counter.appeared.add(appeared.getOrDefault(className, 0));
+                counter.detectionFrames.add(detections);
+                counter.peak.accumulateAndGet(detections, Math::max);
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Add the counts recorded since the last flush to the rollup table
+     */
+    @Scheduled(fixedDelayString = "${app.rollups.flush-interval:10000}")
+    public synchronized void flush() {
+        swapLock.writeLock().lock();
+        try {
+            if (pending.isEmpty()) {
+                return;
+            }
+            flushing = pending;
+            pending = new ConcurrentHashMap<>();
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+
+        try {
+            Iterator<Map.Entry<RollupKey, Counter>> iterator = flushing.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<RollupKey, Counter> entry = iterator.next();
+                write(entry.getKey(), entry.getValue());
+                // Written buckets leave the map right away so queries do not count them twice
+                iterator.remove();
+            }
+        } catch (Exception e) {
+            log.error("Failed to flush detection rollups, re-queueing {} buckets", flushing.size(), e);
+            requeue();
+        } finally {
+            flushing = Map.of();
+        }
+    }
+
+    /**
+     * Detection counts of a camera from {@code from} (inclusive) to {@code to} (exclusive), in buckets of
+     * {@code bucketMinutes}. Every bucket of the range is present, including empty ones.
+     *
+     * @param className only this class, or every class if null
+     */
+    public List<RollupBucket> getSeries(String cameraId, LocalDateTime from, LocalDateTime to,
+                                        int bucketMinutes, String className) {
+        if (bucketMinutes < 1) {
+            throw new IllegalArgumentException("bucketMinutes must be at least 1");
+        }
+        LocalDateTime start = from.truncatedTo(ChronoUnit.MINUTES);
+        long buckets = (Duration.between(start, to).toMinutes() + bucketMinutes - 1) / bucketMinutes;
+        if (buckets < 0 || buckets > MAX_BUCKETS) {
+            throw new IllegalArgumentException("Range must cover between 0 and " + MAX_BUCKETS + " buckets");
+        }
+
+        List<RollupBucket> series = new ArrayList<>((int) buckets);
+        for (int i = 0; i < buckets; i++) {
+            series.add(new RollupBucket(start.plusMinutes((long) i * bucketMinutes)));
+        }
+
+        for (DetectionRollup rollup : repository.findRange(cameraId, start, to)) {
+            addToSeries(series, start, bucketMinutes, className, rollup.getBucketStart(), rollup.getClassName(),
+                    rollup.getAppearedCount(), rollup.getDetectionFrames(), rollup.getPeakCount());
+        }
+        // Counts not yet in the table
+        for (Map<RollupKey, Counter> counters : List.of(flushing, pending)) {
+            for (Map.Entry<RollupKey, Counter> entry : counters.entrySet()) {
+                RollupKey key = entry.getKey();
+                if (key.cameraId().equals(cameraId) && !key.bucketStart().isBefore(start) && key.bucketStart().isBefore(to)) {
+                    addToSeries(series, start, bucketMinutes, className, key.bucketStart(), key.className(),
+                            entry.getValue().appeared.sum(), entry.getValue().detectionFrames.sum(),
+                            entry.getValue().peak.get());
+                }
+            }
+        }
+        return series;
+    }
+
+    @Override
+    public void destroy() {
+        flush();
+    }
+
+    private void addToSeries(List<RollupBucket> series, LocalDateTime start, int bucketMinutes, String className,
+                             LocalDateTime bucketStart, String rollupClass, long appeared,
+                             long detectionFrames, int peak) {
+        if (className != null && !className.equals(rollupClass)) {
+            return;
+        }
+        int index = (int) (Duration.between(start, bucketStart).toMinutes() / bucketMinutes);
+        if (index >= 0 && index < series.size()) {
+            series.get(index).add(rollupClass, appeared, detectionFrames, peak);
+        }
+    }
+
+    private void write(RollupKey key, Counter counter) {
+        long appeared = counter.appeared.sum();
+        long detectionFrames = counter.detectionFrames.sum();
+        int peak = counter.peak.get();
+        if (repository.addToBucket(key.cameraId(), key.bucketStart(), key.className(), appeared, detectionFrames,
+                peak) > 0) {
+            return;
+        }
+        try {
+            repository.save(new DetectionRollup(null, key.cameraId(), key.bucketStart(), key.className(), appeared,
+                    detectionFrames, peak));
+        } catch (DataIntegrityViolationException e) {
+            // Another node created the bucket in the meantime
+            repository.addToBucket(key.cameraId(), key.bucketStart(), key.className(), appeared, detectionFrames,
+                    peak);
+        }
+    }
+
+    /**
+     * Put the buckets of a failed flush back so they are written with the next one
+     */
+    private void requeue() {
+        swapLock.readLock().lock();
+        try {
+            for (Map.Entry<RollupKey, Counter> entry : flushing.entrySet()) {
+                Counter counter = pending.computeIfAbsent(entry.getKey(), key -> new Counter());
+                counter.appeared.add(entry.getValue().appeared.sum());
+                counter.detectionFrames.add(entry.getValue().detectionFrames.sum());
+                counter.peak.accumulateAndGet(entry.getValue().peak.get(), Math::max);
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    private record RollupKey(String cameraId, LocalDateTime bucketStart, String className) {
+    }
+
+    private static final class Counter {
+        final LongAdder appeared = new LongAdder();
+        final LongAdder detectionFrames = new LongAdder();
+        final AtomicInteger peak = new AtomicInteger();
+    }
+}
@@ -0,0 +1,154 @@
+package com.wavestone.stacamback.service;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Continuous JDK Flight Recorder recording with the low-overhead {@code default} settings plus the
+ * {@link PipelineStageEvent}s, bounded by age and size. The last minutes can be dumped to a {@code .jfr}
+ * file at any time, so slow frames can be analyzed afterwards in JDK Mission Control without restarting
+ * the backend with a profiler.
+ */
+@Service
+@Slf4j
+public class FlightRecorderService implements DisposableBean {
+
+    private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+    private static final String DUMP_PREFIX = "pipeline-";
+    private static final String DUMP_SUFFIX = ".jfr";
+
+    private final boolean enabled;
+    private final Duration maxAge;
+    private final long maxSizeBytes;
+    private final Duration stageThreshold;
+    private final Path dumpDir;
+    private final int maxDumps;
+
+    private volatile Recording recording;
+
+    public FlightRecorderService(@Value("${app.profiling.enabled:true}") boolean enabled,
+                                 @Value("${app.profiling.max-age-minutes:30}") long maxAgeMinutes,
+                                 @Value("${app.profiling.max-size:256MB}") DataSize maxSize,
+                                 @Value("${app.profiling.stage-threshold-ms:0}") long stageThresholdMillis,
+                                 @Value("${app.profiling.dir:profiling}") String dumpDir,
+                                 @Value("${app.profiling.max-dumps:10}") int maxDumps) {
+        this.enabled = enabled;
+        this.maxAge = Duration.ofMinutes(maxAgeMinutes);
+        this.maxSizeBytes = maxSize.toBytes();
+        this.stageThreshold = Duration.ofMillis(stageThresholdMillis);
+        this.dumpDir = Paths.get(dumpDir).normalize();
+        this.maxDumps = maxDumps;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled || !FlightRecorder.isAvailable()) {
+            log.info("Continuous flight recording disabled");
+            return;
+        }
+        try {
+            Recording continuous = new Recording(Configuration.getConfiguration("default"));
+            continuous.setName("sta-cam-continuous");
+            continuous.setToDisk(true);
+            continuous.setMaxAge(maxAge);
+            continuous.setMaxSize(maxSizeBytes);
+            continuous.enable(PipelineStageEvent.class).withThreshold(stageThreshold);
+            continuous.start();
+            recording = continuous;
+            log.info("Continuous flight recording started, keeping the last {} minutes", maxAge.toMinutes());
+        } catch (Exception e) {
+            log.warn("Could not start continuous flight recording: {}", e.getMessage());
+        }
+    }
+
+    public boolean isRecording() {
+        return recording != null;
+    }
+
+    /**
+     * Write the last {@code minutes} of the continuous recording to a new file in the dump directory.
+     * Data is kept in chunks, so the file may reach a little further back.
+     *
+     * @return the written file, or empty if nothing is being recorded
+     */
+    public Optional<Path> dump(long minutes) throws IOException {
+        if (recording == null) {
+            return Optional.empty();
+        }
+        Files.createDirectories(dumpDir);
+        Path file = dumpDir.resolve(DUMP_PREFIX + LocalDateTime.now().format(FILE_TIMESTAMP) + DUMP_SUFFIX);
+        try (Recording snapshot = FlightRecorder.getFlightRecorder().takeSnapshot()) {
+            snapshot.setMaxAge(Duration.ofMinutes(Math.max(1, minutes)));
+            snapshot.dump(file);
+        }
+        log.info("Dumped the last {} minutes of flight recording to {}", minutes, file);
+        removeOldDumps();
+        return Optional.of(file);
+    }
+
+    /**
+     * Dump files, newest first
+     */
+    public List<Path> listDumps() throws IOException {
+        if (!Files.isDirectory(dumpDir)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(dumpDir)) {
+            return files.filter(FlightRecorderService::isDump)
+                    .sorted(Comparator.comparing(Path::getFileName).reversed())
+                    .toList();
+        }
+    }
+
+    /**
+     * A dump file by name; names outside the dump directory are rejected
+     */
+    public Optional<Path> findDump(String name) {
+        Path file = dumpDir.resolve(name).normalize();
+        if (!dumpDir.equals(file.getParent()) || !isDump(file) || !Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+        return Optional.of(file);
+    }
+
+    private void removeOldDumps() throws IOException {
+        List<Path> dumps = listDumps();
+        for (Path old : dumps.subList(Math.min(maxDumps, dumps.size()), dumps.size())) {
+            Files.deleteIfExists(old);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        Recording continuous = recording;
+        recording = null;
+        if (continuous != null) {
+            continuous.close();
+        }
+    }
+
+    private static boolean isDump(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(DUMP_PREFIX) && name.endsWith(DUMP_SUFFIX);
+    }
+}
@@ -0,0 +1,253 @@
+package com.wavestone.stacamback.service;
+
+import org.jcodec.codecs.h264.H264Decoder;
+import org.jcodec.codecs.h264.H264Utils;
+import org.jcodec.codecs.h264.mp4.AvcCBox;
+import org.jcodec.common.model.ColorSpace;
+import org.jcodec.common.model.Picture;
+import org.jcodec.common.model.Size;
+import org.jcodec.containers.mp4.BoxFactory;
+import org.jcodec.containers.mp4.boxes.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Incremental reader for fragmented MP4 (H.264) files that are still being written. Each call decodes
+ * the frames of the movie fragments (moof + mdat) that are complete within the bytes received so far.
+ * Regular MP4 files, whose sample tables are only known once the whole file is present, are reported as
+ * {@link State#UNSUPPORTED} so that the caller can fall back to whole-file processing.
+ */
+public class FragmentedMp4Reader implements Closeable {
+
+    public enum State { WAITING_FOR_MOVIE, FRAGMENTED, UNSUPPORTED }
+
+    @FunctionalInterface
+    public interface FrameHandler {
+        /**
+         * @param frameNumber 1-based index of the frame in decoding order
+         */
+        void onFrame(int frameNumber, Picture picture) throws Exception;
+    }
+
+    private static final int MAX_MOVIE_BOX_SIZE = 16 * 1024 * 1024;
+
+    private final FileChannel channel;
+
+    private State state = State.WAITING_FOR_MOVIE;
+    private String unsupportedReason;
+    private long position;
+    private int frameNumber;
+
+    private int videoTrackId;
+    private TrackExtendsBox trackDefaults;
+    private AvcCBox avcC;
+    private H264Decoder decoder;
+    private Size codedSize;
+    private Integer width;
+    private Integer height;
+
+    public FragmentedMp4Reader(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public String getUnsupportedReason() {
+        return unsupportedReason;
+    }
+
+    public Integer getWidth() {
+        return width;
+    }
+
+    public Integer getHeight() {
+        return height;
+    }
+
+    public int getFrameCount() {
+        return frameNumber;
+    }
+
+    /**
+     * Decode every frame of the fragments lying completely within the first {@code available} bytes
+     *
+     * @param complete whether {@code available} is the final file size
+     * @return number of frames decoded by this call
+     */
+    public int readAvailable(long available, boolean complete, FrameHandler handler) throws Exception {
+        int decoded = 0;
+        while (state != State.UNSUPPORTED && position + 8 <= available) {
+            ByteBuffer headerBytes = read(position, (int) Math.min(16, available - position));
+            long size = headerBytes.getInt() & 0xFFFFFFFFL;
+            String type = new String(headerBytes.array(), 4, 4, StandardCharsets.ISO_8859_1);
+            if (size == 1) {
+                if (headerBytes.remaining() < 12) {
+                    break;
+                }
+                headerBytes.position(8);
+                size = headerBytes.getLong();
+            } else if (size == 0) {
+                // Box extends to the end of the file, which is only known once the upload is complete
+                if (!complete) {
+                    break;
+                }
+                size = available - position;
+            }
+            if (size < 8) {
+                unsupported("Malformed box '" + type + "' at offset " + position);
+                break;
+            }
+
+            if ("moov".equals(type)) {
+                if (position + size > available) {
+                    break;
+                }
+                if (size > MAX_MOVIE_BOX_SIZE) {
+                    unsupported("Movie box too large for progressive reading");
+                    break;
+                }
+                readMovie(read(position, (int) size));
+            } else if ("moof".equals(type)) {
+                if (state != State.FRAGMENTED) {
+                    unsupported("Movie fragment before movie box");
+                    break;
+                }
+                if (position + size > available) {
+                    break;
+                }
+                int fragmentFrames = readFragment(position, read(position, (int) size), available, handler);
+                if (fragmentFrames < 0) {
+                    break; // sample data not fully received yet
+                }
+                decoded += fragmentFrames;
+            } else if ("mdat".equals(type) && state == State.WAITING_FOR_MOVIE) {
+                unsupported("Media data before movie box (not a fragmented MP4)");
+                break;
+            } else if (position + size > available) {
+                break;
+            }
+            position += size;
+        }
+        return decoded;
+    }
+
+    private void readMovie(ByteBuffer buffer) {
+        MovieBox movie = (MovieBox) NodeBox.parseChildBox(buffer, BoxFactory.getDefault());
+        TrakBox videoTrack = movie.getVideoTrack();
+        if (videoTrack == null) {
+            unsupported("No video track");
+            return;
+        }
+        SampleEntry[] sampleEntries = videoTrack.getSampleEntries();
+        if (sampleEntries == null || sampleEntries.length == 0
+                || !(sampleEntries[0] instanceof VideoSampleEntry videoEntry)
+                || !videoEntry.getFourcc().startsWith("avc")) {
+            unsupported("Only H.264 video can be read progressively");
+            return;
+        }
+
+        videoTrackId = videoTrack.getTrackHeader().getTrackId();
+        TrackExtendsBox[] extendsBoxes = NodeBox.findAllPath(movie, TrackExtendsBox.class, new String[]{"mvex", "trex"});
+        for (TrackExtendsBox extendsBox : extendsBoxes) {
+            if (extendsBox.getTrackId() == videoTrackId) {
+                trackDefaults = extendsBox;
+            }
+        }
+        if (trackDefaults == null) {
+            unsupported("Not a fragmented MP4");
+            return;
+        }
+
+        avcC = H264Utils.parseAVCC(videoEntry);
+        decoder = new H264Decoder();
+        decoder.addSps(avcC.getSpsList());
+        decoder.addPps(avcC.getPpsList());
+        codedSize = H264Utils.getPicSize(H264Utils.readSPS(avcC.getSpsList().get(0).duplicate()));
+        width = (int) videoEntry.getWidth();
+        height = (int) videoEntry.getHeight();
+        state = State.FRAGMENTED;
+    }
+
+    /**
+     * @return frames decoded from the fragment, or -1 if its samples are not fully received yet
+     */
+    private int readFragment(long moofOffset, ByteBuffer buffer, long available, FrameHandler handler) throws Exception {
+        MovieFragmentBox fragment = (MovieFragmentBox) NodeBox.parseChildBox(buffer, BoxFactory.getDefault());
+
+        List<long[]> samples = new ArrayList<>(); // {offset, size}
+        for (TrackFragmentBox trackFragment : fragment.getTracks()) {
+            TrackFragmentHeaderBox header = NodeBox.findFirst(trackFragment, TrackFragmentHeaderBox.class, "tfhd");
+            if (header == null || header.getTrackId() != videoTrackId) {
+                continue;
+            }
+            long base = header.isBaseDataOffsetAvailable() ? header.getBaseDataOffset() : moofOffset;
+            long next = base;
+            for (TrunBox run : NodeBox.findAll(trackFragment, TrunBox.class, "trun")) {
+                if (run.isDataOffsetAvailable()) {
+                    next = base + run.getDataOffset();
+                }
+                for (int i = 0; i < run.getSampleCount(); i++) {
+                    long sampleSize = run.isSampleSizeAvailable() ? run.getSampleSize(i)
+                            : header.isDefaultSampleSizeAvailable() ? header.getDefaultSampleSize()
+                            : trackDefaults.getDefaultSampleBytes();
+                    samples.add(new long[]{next, sampleSize});
+                    next += sampleSize;
+                }
+            }
+        }
+
+        for (long[] sample : samples) {
+            if (sample[0] + sample[1] > available) {
+                return -1;
+            }
+        }
+
+        int decoded = 0;
+        for (long[] sample : samples) {
+            ByteBuffer data = read(sample[0], (int) sample[1]);
+            // Each decoded frame may be kept as a reference picture, so it needs its own buffer
+            byte[][] frameBuffer = Picture.create(codedSize.getWidth(), codedSize.getHeight(), ColorSpace.YUV420J).getData();
+            Picture picture;
+            try (PipelineTrace.Stage stage = PipelineTrace.stage(PipelineTrace.DECODE, frameNumber + 1)) {
+                picture = decoder.decodeFrameFromNals(H264Utils.splitMOVPacket(data, avcC), frameBuffer);
+            }
+            if (picture != null) {
+                frameNumber++;
+                decoded++;
+                handler.onFrame(frameNumber, picture);
+            }
+        }
+        return decoded;
+    }
+
+    private void unsupported(String reason) {
+        state = State.UNSUPPORTED;
+        unsupportedReason = reason;
+    }
+
+    private ByteBuffer read(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file at offset " + (offset + buffer.position()));
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,133 @@
+package com.wavestone.stacamback.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Scales decoded video frames down to the model input size before they are written, so full-resolution
+ * pixels are never JPEG-encoded, stored and read by the model only to be thrown away there. The scale of
+ * every written frame is kept until its detections have been mapped back to source coordinates.
+ * Frames are not padded: the model letterboxes its input itself, and unpadded frames keep the preview
+ * free of bars and region-of-interest coordinates relative to the picture.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class FramePreprocessor {
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.inference.input-size:640}")
+    private int inputSize;
+
+    private final Map<String, Transform> transforms = new ConcurrentHashMap<>();
+
+    /**
+     * Whether frames are reduced; a size of 0 keeps frames at source resolution
+     */
+    public boolean isEnabled() {
+        return inputSize > 0;
+    }
+
+    /**
+     * Longer side of the frames given to the model, 0 for source resolution
+     */
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    /**
+     * Scale a frame so its longer side fits the model input size and remember the scale for the file the
+     * frame is written to
+     */
+    public BufferedImage resize(BufferedImage source, String framePath) {
+        if (!isEnabled()) {
+            return source;
+        }
+        int sourceWidth = source.getWidth();
+        int sourceHeight = source.getHeight();
+        double scale = Math.min(1.0, (double) inputSize / Math.max(sourceWidth, sourceHeight));
+        int width = Math.max(1, (int) Math.round(sourceWidth * scale));
+        int height = Math.max(1, (int) Math.round(sourceHeight * scale));
+
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        graphics.drawImage(source, 0, 0, width, height, null);
+        graphics.dispose();
+
+        transforms.put(framePath, new Transform((double) sourceWidth / width, (double) sourceHeight / height,
+                sourceWidth, sourceHeight));
+        return target;
+    }
+
+    /**
+     * Remember the scale of a frame that was reduced elsewhere, e.g. by the native video worker
+     */
+    public void remember(String framePath, int sourceWidth, int sourceHeight, int width, int height) {
+        if (width > 0 && height > 0 && (width != sourceWidth || height != sourceHeight)) {
+            transforms.put(framePath, new Transform((double) sourceWidth / width, (double) sourceHeight / height,
+                    sourceWidth, sourceHeight));
+        }
+    }
+
+    /**
+     * Map the YOLO output of a reduced frame back to the coordinates of the source frame
+     */
+    public String mapToSource(String framePath, String detectionsJson) {
+        Transform transform = transforms.remove(framePath);
+        if (transform == null || detectionsJson == null) {
+            return detectionsJson;
+        }
+        try {
+            JsonNode root = objectMapper.readTree(detectionsJson);
+            for (JsonNode detection : root.path("detections")) {
+                if (detection.path("boundingBox") instanceof ObjectNode box) {
+                    double left = clamp(box.path("x").asDouble() * transform.scaleX(), transform.sourceWidth());
+                    double top = clamp(box.path("y").asDouble() * transform.scaleY(), transform.sourceHeight());
+                    double right = clamp((box.path("x").asDouble() + box.path("width").asDouble()) * transform.scaleX(),
+                            transform.sourceWidth());
+                    double bottom = clamp((box.path("y").asDouble() + box.path("height").asDouble()) * transform.scaleY(),
+                            transform.sourceHeight());
+                    box.put("x", left);
+                    box.put("y", top);
+                    box.put("width", right - left);
+                    box.put("height", bottom - top);
+                }
+            }
+            return objectMapper.writeValueAsString(root);
+        } catch (Exception e) {
+            log.warn("Could not map detections of {} to source coordinates: {}", framePath, e.getMessage());
+            return detectionsJson;
+        }
+    }
+
+    /**
+     * Drop the scale of a frame whose detections will not be mapped
+     */
+    public void forget(String framePath) {
+        transforms.remove(framePath);
+    }
+
+    private static double clamp(double value, int max) {
+        return Math.max(0, Math.min(max, value));
+    }
+
+    /**
+     * Source coordinate = reduced coordinate * scale; kept per axis since rounding makes them differ slightly
+     */
+    private record Transform(double scaleX, double scaleY, int sourceWidth, int sourceHeight) {
+    }
+}
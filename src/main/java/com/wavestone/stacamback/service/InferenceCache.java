@@ -0,0 +1,264 @@
+package com.wavestone.stacamback.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.wavestone.stacamback.model.InferenceCacheStats;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reuses YOLO output for near-duplicate images of the same camera. Images are keyed by a 64-bit
+ * difference hash (dHash) of a 9x8 grayscale thumbnail; an image whose hash lies within
+ * {@code app.inference.cache.max-distance} bits of a cached image of the same camera and size gets that
+ * image's detections instead of running the model. Entries expire after a TTL and the least recently
+ * used ones are evicted beyond the entry and memory limits. The hash covers the whole frame, so an object
+ * entering a small part of the view may not change it: the cache is opt-in and trades missed detections
+ * for saved inference.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class InferenceCache {
+
+    private static final int HASH_WIDTH = 9;
+    private static final int HASH_HEIGHT = 8;
+    private static final long ENTRY_OVERHEAD_BYTES = 128;
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.inference.cache.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.inference.cache.max-distance:0}")
+    private int maxDistance;
+
+    @Value("${app.inference.cache.ttl-seconds:30}")
+    private long ttlSeconds;
+
+    @Value("${app.inference.cache.max-entries:5000}")
+    private int maxEntries;
+
+    @Value("${app.inference.cache.max-bytes:33554432}")
+    private long maxBytes;
+
+    // Access-ordered, so iteration starts with the least recently used entry
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long nextEntryId;
+    private long cachedBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong savedInferenceMillis = new AtomicLong();
+    private final AtomicLong inferenceMillis = new AtomicLong();
+
+    /**
+     * Detections of an image: reused from a near-duplicate image of the camera if one is cached,
+     * otherwise computed by {@code inference} and cached
+     */
+    public String detect(String cameraId, String imagePath, Callable<String> inference) throws Exception {
+        if (!enabled) {
+            return inference.call();
+        }
+        Fingerprint fingerprint = fingerprint(imagePath);
+        if (fingerprint == null) {
+            return inference.call();
+        }
+
+        Entry cached = find(cameraId, fingerprint);
+        if (cached != null) {
+            hits.incrementAndGet();
+            savedInferenceMillis.addAndGet(cached.inferenceMillis);
+            log.debug("Reusing detections for {} of camera {}", imagePath, cameraId);
+            return withFileName(cached.detectionsJson, imagePath);
+        }
+
+        misses.incrementAndGet();
+        long startTime = System.currentTimeMillis();
+        String detectionsJson = inference.call();
+        long elapsed = System.currentTimeMillis() - startTime;
+        inferenceMillis.addAndGet(elapsed);
+        if (detectionsJson != null) {
+            store(new Entry(cameraId, fingerprint, detectionsJson, elapsed, System.currentTimeMillis()));
+        }
+        return detectionsJson;
+    }
+
+    public InferenceCacheStats getStats() {
+        InferenceCacheStats stats = new InferenceCacheStats();
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        stats.setEnabled(enabled);
+        stats.setHits(hitCount);
+        stats.setMisses(missCount);
+        stats.setHitRate(hitCount + missCount == 0 ? 0 : (double) hitCount / (hitCount + missCount));
+        stats.setSavedInferenceMillis(savedInferenceMillis.get());
+        stats.setInferenceMillis(inferenceMillis.get());
+        synchronized (entries) {
+            stats.setEntries(entries.size());
+            stats.setBytes(cachedBytes);
+        }
+        stats.setMaxEntries(maxEntries);
+        stats.setMaxBytes(maxBytes);
+        return stats;
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            cachedBytes = 0;
+        }
+    }
+
+    private Entry find(String cameraId, Fingerprint fingerprint) {
+        long expiredBefore = System.currentTimeMillis() - ttlSeconds * 1000;
+        synchronized (entries) {
+            Long bestId = null;
+            int bestDistance = Integer.MAX_VALUE;
+            Iterator<Map.Entry<Long, Entry>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Long, Entry> mapEntry = iterator.next();
+                Entry entry = mapEntry.getValue();
+                if (entry.createdAt < expiredBefore) {
+                    iterator.remove();
+                    cachedBytes -= entry.bytes;
+                    continue;
+                }
+                if (!entry.cameraId.equals(cameraId) || entry.fingerprint.width != fingerprint.width
+                        || entry.fingerprint.height != fingerprint.height) {
+                    continue;
+                }
+                int distance = Long.bitCount(entry.fingerprint.hash ^ fingerprint.hash);
+                if (distance <= maxDistance && distance < bestDistance) {
+                    bestId = mapEntry.getKey();
+                    bestDistance = distance;
+                }
+            }
+            // get() marks the entry as recently used
+            return bestId == null ? null : entries.get(bestId);
+        }
+    }
+
+    private void store(Entry entry) {
+        synchronized (entries) {
+            entries.put(nextEntryId++, entry);
+            cachedBytes += entry.bytes;
+            Iterator<Entry> eldest = entries.values().iterator();
+            while ((entries.size() > maxEntries || cachedBytes > maxBytes) && eldest.hasNext()) {
+                cachedBytes -= eldest.next().bytes;
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * dHash: each bit tells whether a pixel of the grayscale thumbnail is brighter than its right neighbour
+     */
+    private static Fingerprint fingerprint(String imagePath) {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new File(imagePath))) {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            BufferedImage image;
+            int sourceWidth;
+            int sourceHeight;
+            try {
+                reader.setInput(input, true, true);
+                sourceWidth = reader.getWidth(0);
+                sourceHeight = reader.getHeight(0);
+                // The thumbnail needs far fewer pixels than the frame has; skip most of them while decoding
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, Math.min(sourceWidth / (HASH_WIDTH * 8), sourceHeight / (HASH_HEIGHT * 8)));
+                param.setSourceSubsampling(step, step, 0, 0);
+                image = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+            int width = image.getWidth();
+            int height = image.getHeight();
+
+            // Area average into the thumbnail cells
+            double[] sums = new double[HASH_WIDTH * HASH_HEIGHT];
+            int[] counts = new int[HASH_WIDTH * HASH_HEIGHT];
+            int[] row = new int[width];
+            for (int y = 0; y < height; y++) {
+                image.getRGB(0, y, width, 1, row, 0, width);
+                int cellRow = y * HASH_HEIGHT / height * HASH_WIDTH;
+                for (int x = 0; x < width; x++) {
+                    int rgb = row[x];
+                    int cell = cellRow + x * HASH_WIDTH / width;
+                    sums[cell] += 0.299 * ((rgb >> 16) & 0xFF) + 0.587 * ((rgb >> 8) & 0xFF) + 0.114 * (rgb & 0xFF);
+                    counts[cell]++;
+                }
+            }
+
+            long hash = 0;
+            for (int y = 0; y < HASH_HEIGHT; y++) {
+                for (int x = 0; x < HASH_WIDTH - 1; x++) {
+                    int cell = y * HASH_WIDTH + x;
+                    double left = sums[cell] / Math.max(1, counts[cell]);
+                    double right = sums[cell + 1] / Math.max(1, counts[cell + 1]);
+                    hash = (hash << 1) | (left > right ? 1 : 0);
+                }
+            }
+            return new Fingerprint(hash, sourceWidth, sourceHeight);
+        } catch (Exception e) {
+            log.debug("Could not hash {}: {}", imagePath, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Cached output names the image it was computed for; reused output names the current one
+     */
+    private String withFileName(String detectionsJson, String imagePath) {
+        try {
+            JsonNode root = objectMapper.readTree(detectionsJson);
+            if (root instanceof ObjectNode object && object.has("fileName")) {
+                object.put("fileName", Path.of(imagePath).getFileName().toString());
+                return objectMapper.writeValueAsString(object);
+            }
+        } catch (Exception e) {
+            log.debug("Could not rename cached detections: {}", e.getMessage());
+        }
+        return detectionsJson;
+    }
+
+    private record Fingerprint(long hash, int width, int height) {
+    }
+
+    private static final class Entry {
+        final String cameraId;
+        final Fingerprint fingerprint;
+        final String detectionsJson;
+        final long inferenceMillis;
+        final long createdAt;
+        final long bytes;
+
+        Entry(String cameraId, Fingerprint fingerprint, String detectionsJson, long inferenceMillis, long createdAt) {
+            this.cameraId = cameraId;
+            this.fingerprint = fingerprint;
+            this.detectionsJson = detectionsJson;
+            this.inferenceMillis = inferenceMillis;
+            this.createdAt = createdAt;
+            this.bytes = ENTRY_OVERHEAD_BYTES + 2L * (detectionsJson.length() + cameraId.length());
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.wavestone.stacamback.service;
+
+import com.wavestone.stacamback.config.PipelineExecutors;
+import com.wavestone.stacamback.model.DetectionResult;
+import com.wavestone.stacamback.model.FrameRangeResult;
+import com.wavestone.stacamback.model.ProcessingJob;
+import com.wavestone.stacamback.repository.DetectionResultRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Claims jobs from the shared job table in cluster mode and runs them locally, renewing the leases of
+ * running jobs with periodic heartbeats. On platform threads the number of running jobs is bounded by the
+ * pool size; on virtual threads many more jobs can be in flight since inference itself is capped separately.
+ */
+@Component
+@Slf4j
+public class JobWorker implements DisposableBean {
+
+    private final ProcessingJobService jobService;
+    private final YoloProcessingService yoloProcessingService;
+    private final DetectionResultRepository detectionResultRepository;
+    private final CancellationRegistry cancellations;
+    private final int maxRunningJobs;
+    private final ExecutorService executor;
+
+    private final Set<Long> runningJobs = ConcurrentHashMap.newKeySet();
+
+    public JobWorker(ProcessingJobService jobService,
+                     YoloProcessingService yoloProcessingService,
+                     DetectionResultRepository detectionResultRepository,
+                     CancellationRegistry cancellations,
+                     PipelineExecutors pipelineExecutors,
+                     @Value("${app.jobs.worker-threads:2}") int workerThreads,
+                     @Value("${app.jobs.virtual.max-running-jobs:256}") int virtualMaxRunningJobs) {
+        this.jobService = jobService;
+        this.yoloProcessingService = yoloProcessingService;
+        this.detectionResultRepository = detectionResultRepository;
+        this.cancellations = cancellations;
+        this.maxRunningJobs = pipelineExecutors.isVirtualThreads() ? virtualMaxRunningJobs : workerThreads;
+        this.executor = pipelineExecutors.newExecutor("job-worker", workerThreads);
+    }
+
+    @Scheduled(fixedDelayString = "${app.jobs.poll-interval:1000}")
+    public void poll() {
+        if (!jobService.isClusterMode()) {
+            return;
+        }
+        try {
+            List<ProcessingJob> claimed = jobService.claim(maxRunningJobs - runningJobs.size());
+            for (ProcessingJob job : claimed) {
+                runningJobs.add(job.getId());
+                executor.execute(() -> run(job));
+            }
+        } catch (Exception e) {
+            log.error("Failed to claim processing jobs", e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.jobs.heartbeat-interval:10000}")
+    public void heartbeat() {
+        if (runningJobs.isEmpty()) {
+            return;
+        }
+        try {
+            Set<Long> jobIds = Set.copyOf(runningJobs);
+            jobService.heartbeat(jobIds);
+            // Cancellations requested on any node reach the running jobs here
+            for (Long detectionResultId : jobService.findCancelledUploads(jobIds)) {
+                cancellations.cancel(detectionResultId, "Cancelled by request");
+            }
+        } catch (Exception e) {
+            log.error("Failed to renew job leases", e);
+        }
+    }
+
+    public int getRunningJobCount() {
+        return runningJobs.size();
+    }
+
+    private void run(ProcessingJob job) {
+        try {
+            DetectionResult detectionResult = detectionResultRepository.findById(job.getDetectionResultId()).orElse(null);
+            if (detectionResult == null) {
+                jobService.complete(job.getId(), null, "Upload not found");
+                return;
+            }
+
+            if (job.getParentJobId() == null) {
+                DetectionResult result = yoloProcessingService.process(detectionResult);
+                jobService.complete(job.getId(), null,
+                        "FAILED".equals(result.getStatus()) ? String.valueOf(result.getErrorMessage()) : null);
+            } else {
+                if ("PENDING".equals(detectionResult.getStatus())) {
+                    yoloProcessingService.markProcessing(detectionResult);
+                }
+                FrameRangeResult rangeResult = yoloProcessingService.processVideoRange(
+                        detectionResult, job.getFrameStart(), job.getFrameEnd());
+                jobService.complete(job.getId(), rangeResult, null);
+            }
+        } catch (Exception e) {
+            log.error("Processing job {} failed", job.getId(), e);
+            try {
+                jobService.complete(job.getId(), null, e.getMessage() != null ? e.getMessage() : e.toString());
+            } catch (Exception completionError) {
+                log.error("Could not record failure of job {}", job.getId(), completionError);
+            }
+        } finally {
+            runningJobs.remove(job.getId());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
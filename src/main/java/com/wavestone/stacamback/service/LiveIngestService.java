@@ -0,0 +1,298 @@
+package com.wavestone.stacamback.service;
+
+import com.wavestone.stacamback.config.PipelineExecutors;
+import com.wavestone.stacamback.model.LiveCameraStats;
+import com.wavestone.stacamback.model.TrackEvent;
+import com.wavestone.stacamback.model.TrackingUpdate;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs inference on JPEG frames pushed by live cameras. Each camera has a single pending slot:
+ * a frame arriving while inference is busy replaces the pending one, so results always describe
+ * the most recent picture and never queue up behind a slow model. Frames still waiting for an inference
+ * permit {@code app.live.max-frame-age-ms} after they arrived are dropped.
+ */
+@Service
+@Slf4j
+public class LiveIngestService implements DisposableBean {
+
+    private final YoloProcessingService yoloProcessingService;
+    private final DetectionBroadcaster broadcaster;
+    private final TrackingService trackingService;
+    private final DetectionRollupService rollupService;
+    private final Path liveDir;
+    private final long maxFrameAgeMillis;
+    private final ExecutorService executor;
+
+    private final Map<String, LiveCamera> cameras = new ConcurrentHashMap<>();
+
+    public LiveIngestService(YoloProcessingService yoloProcessingService,
+                             DetectionBroadcaster broadcaster,
+                             TrackingService trackingService,
+                             DetectionRollupService rollupService,
+                             PipelineExecutors pipelineExecutors,
+                             @Value("${app.upload.dir:uploads}") String uploadDir,
+                             @Value("${app.live.inference-threads:2}") int inferenceThreads,
+                             @Value("${app.live.max-frame-age-ms:2000}") long maxFrameAgeMillis) {
+        this.yoloProcessingService = yoloProcessingService;
+        this.broadcaster = broadcaster;
+        this.trackingService = trackingService;
+        this.rollupService = rollupService;
+        this.liveDir = Paths.get(uploadDir, "live");
+        this.maxFrameAgeMillis = maxFrameAgeMillis;
+        this.executor = pipelineExecutors.newExecutor("live-inference", inferenceThreads);
+    }
+
+    public void publisherConnected(String cameraId) {
+        camera(cameraId).publishers.incrementAndGet();
+        log.info("Live publisher connected for camera {}", cameraId);
+    }
+
+    public void publisherDisconnected(String cameraId) {
+        LiveCamera camera = camera(cameraId);
+        if (camera.publishers.decrementAndGet() == 0) {
+            // Nobody is producing frames for this camera any more; stop the inference in flight
+            camera.current.cancel("Last publisher disconnected");
+        }
+        if (camera.publishers.get() == 0 && trackingService.isEnabled()) {
+            // Nothing is in view any more once the last publisher of the camera is gone
+            List<TrackEvent> events = new ArrayList<>();
+            trackingService.close(TrackingService.liveStream(cameraId), events);
+            if (!events.isEmpty()) {
+                broadcaster.publishTrackEvents(cameraId, null, trackEventsMessage(cameraId, null, events));
+            }
+        }
+        log.info("Live publisher disconnected for camera {}", cameraId);
+    }
+
+    /**
+     * Accept a frame from a camera; replaces any frame still waiting for inference
+     */
+    public void submitFrame(String cameraId, byte[] jpeg) {
+        LiveCamera camera = camera(cameraId);
+        camera.received.incrementAndGet();
+        camera.ingestRate.mark();
+        camera.lastFrameAt = LocalDateTime.now();
+
+        if (camera.pending.getAndSet(new PendingFrame(jpeg, LocalDateTime.now())) != null) {
+            camera.skipped.incrementAndGet();
+        }
+        if (camera.draining.compareAndSet(false, true)) {
+            executor.execute(() -> drain(camera));
+        }
+    }
+
+    public List<LiveCameraStats> getStats() {
+        List<LiveCameraStats> stats = new ArrayList<>();
+        for (LiveCamera camera : cameras.values()) {
+            stats.add(camera.toStats());
+        }
+        stats.sort(Comparator.comparing(LiveCameraStats::getCameraId));
+        return stats;
+    }
+
+    public Optional<LiveCameraStats> getStats(String cameraId) {
+        return Optional.ofNullable(cameras.get(cameraId)).map(LiveCamera::toStats);
+    }
+
+    private LiveCamera camera(String cameraId) {
+        return cameras.computeIfAbsent(cameraId, LiveCamera::new);
+    }
+
+    /**
+     * Analyze the pending frame of a camera. A camera that keeps streaming is resubmitted after every frame
+     * instead of looping, so it goes to the back of the queue and cameras take turns on the inference threads.
+     */
+    private void drain(LiveCamera camera) {
+        PendingFrame frame = camera.pending.getAndSet(null);
+        if (frame != null) {
+            processFrame(camera, frame);
+        }
+        if (camera.pending.get() != null) {
+            executor.execute(() -> drain(camera));
+            return;
+        }
+        camera.draining.set(false);
+        // A frame may have arrived between the empty read and releasing the flag
+        if (camera.pending.get() != null && camera.draining.compareAndSet(false, true)) {
+            executor.execute(() -> drain(camera));
+        }
+    }
+
+    private void processFrame(LiveCamera camera, PendingFrame frame) {
+        long sequence = camera.sequence.incrementAndGet();
+        Path framePath = liveDir.resolve(camera.cameraId + ".jpg");
+        CancellationToken token = new CancellationToken(
+                maxFrameAgeMillis > 0 ? frame.receivedAt().plusNanos(maxFrameAgeMillis * 1_000_000) : null);
+        camera.current = token;
+        try (PipelineTrace.Scope trace = PipelineTrace.open(null, camera.cameraId, (int) sequence)) {
+            if (token.isExpired()) {
+                throw new CancellationException("Frame expired before inference");
+            }
+            Files.createDirectories(liveDir);
+            Files.write(framePath, frame.jpeg());
+
+            long startTime = System.currentTimeMillis();
+            String detections = yoloProcessingService.processFrameWithYolo(framePath.toString(), camera.cameraId, token);
+            long processingTime = System.currentTimeMillis() - startTime;
+
+            camera.processed.incrementAndGet();
+            camera.inferenceRate.mark();
+            camera.lastInferenceMs = processingTime;
+
+            Map<String, Object> message = new HashMap<>();
+            message.put("type", "FRAME_DETECTION");
+            message.put("live", true);
+            message.put("cameraId", camera.cameraId);
+            message.put("sequence", sequence);
+            message.put("detections", detections);
+            message.put("processingTime", processingTime);
+            message.put("mimeType", "image/jpeg");
+            message.put("timestamp", LocalDateTime.now());
+
+            if (trackingService.isEnabled()) {
+                TrackingUpdate update = trackingService.update(TrackingService.liveStream(camera.cameraId), "",
+                        (int) sequence, detections);
+                rollupService.record(camera.cameraId, frame.receivedAt(), detections, update.getEvents());
+                if (!update.isKeyframe()) {
+                    if (!update.getEvents().isEmpty()) {
+                        broadcaster.publishTrackEvents(camera.cameraId, null,
+                                trackEventsMessage(camera.cameraId, sequence, update.getEvents()));
+                    }
+                    return;
+                }
+                message.put("keyframe", true);
+                message.put("detections", trackingService.toDetectionsJson(update.getTracks()));
+                message.put("events", update.getEvents());
+            } else {
+                rollupService.record(camera.cameraId, frame.receivedAt(), detections, null);
+            }
+
+            broadcaster.publishFrame(camera.cameraId, null, message,
+                    yoloProcessingService.previewImage(framePath.toString()));
+        } catch (CancellationException e) {
+            camera.expired.incrementAndGet();
+            log.debug("Dropped live frame {} of camera {}: {}", sequence, camera.cameraId, e.getMessage());
+        } catch (Exception e) {
+            camera.failed.incrementAndGet();
+            log.warn("Live inference failed for camera {}: {}", camera.cameraId, e.getMessage());
+
+            Map<String, Object> message = new HashMap<>();
+            message.put("type", "FRAME_ERROR");
+            message.put("live", true);
+            message.put("cameraId", camera.cameraId);
+            message.put("sequence", sequence);
+            message.put("error", e.getMessage());
+            message.put("timestamp", LocalDateTime.now());
+            broadcaster.publishFrame(camera.cameraId, null, message, null);
+        }
+    }
+
+    private Map<String, Object> trackEventsMessage(String cameraId, Long sequence, List<TrackEvent> events) {
+        Map<String, Object> message = new HashMap<>();
+        message.put("type", "TRACK_EVENTS");
+        message.put("live", true);
+        message.put("cameraId", cameraId);
+        message.put("sequence", sequence);
+        message.put("events", events);
+        message.put("timestamp", LocalDateTime.now());
+        return message;
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private static final class LiveCamera {
+        final String cameraId;
+        final AtomicReference<PendingFrame> pending = new AtomicReference<>();
+        final AtomicBoolean draining = new AtomicBoolean();
+        final AtomicInteger publishers = new AtomicInteger();
+        final AtomicLong received = new AtomicLong();
+        final AtomicLong processed = new AtomicLong();
+        final AtomicLong skipped = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final AtomicLong expired = new AtomicLong();
+        final AtomicLong sequence = new AtomicLong();
+        final RateMeter ingestRate = new RateMeter();
+        final RateMeter inferenceRate = new RateMeter();
+        volatile long lastInferenceMs;
+        volatile LocalDateTime lastFrameAt;
+        volatile CancellationToken current = CancellationToken.NONE; // token of the frame being analyzed
+
+        LiveCamera(String cameraId) {
+            this.cameraId = cameraId;
+        }
+
+        LiveCameraStats toStats() {
+            LiveCameraStats stats = new LiveCameraStats();
+            stats.setCameraId(cameraId);
+            stats.setConnectedPublishers(publishers.get());
+            stats.setFramesReceived(received.get());
+            stats.setFramesProcessed(processed.get());
+            stats.setFramesSkipped(skipped.get());
+            stats.setFramesFailed(failed.get());
+            stats.setFramesExpired(expired.get());
+            stats.setIngestFps(ingestRate.perSecond());
+            stats.setInferenceFps(inferenceRate.perSecond());
+            stats.setLastInferenceMs(lastInferenceMs);
+            stats.setLastFrameAt(lastFrameAt);
+            return stats;
+        }
+    }
+
+    private record PendingFrame(byte[] jpeg, LocalDateTime receivedAt) {
+    }
+
+    /**
+     * Events per second over the last few seconds, from a ring of recent timestamps
+     */
+    private static final class RateMeter {
+        private static final int WINDOW = 32;
+        private static final long MAX_AGE_MS = 5000;
+
+        private final long[] timestamps = new long[WINDOW];
+        private int count;
+        private int next;
+
+        synchronized void mark() {
+            timestamps[next] = System.currentTimeMillis();
+            next = (next + 1) % WINDOW;
+            count = Math.min(count + 1, WINDOW);
+        }
+
+        synchronized double perSecond() {
+            long now = System.currentTimeMillis();
+            long oldest = now;
+            int recent = 0;
+            for (int i = 0; i < count; i++) {
+                long timestamp = timestamps[i];
+                if (now - timestamp <= MAX_AGE_MS) {
+                    recent++;
+                    oldest = Math.min(oldest, timestamp);
+                }
+            }
+            if (recent < 2) {
+                return 0;
+            }
+            return Math.round((recent - 1) * 10000.0 / Math.max(1, now - oldest)) / 10.0;
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package com.wavestone.stacamback.service;
+
+import com.wavestone.stacamback.model.DetectionResult;
+import com.wavestone.stacamback.model.StorageUsage;
+import com.wavestone.stacamback.repository.DetectionResultRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Owns the upload directory. Uploads are stored as {@code media/yyyy/MM/dd/<camera>/<xx>/<file>}, where
+ * {@code xx} is a hash prefix of the file name, temporary video frames as {@code frames/<xx>/<file>} and
+ * the JPEG previews served by the media endpoint as {@code previews/<xx>/<file>}, so no directory grows
+ * without bound. A background sweeper enforces retention by age and total size, deleting the oldest
+ * processed media and clearing the {@code filePath} of its detection result, removes leftover frames,
+ * expired previews and empty directories, and measures disk usage.
+ */
+@Service
+@Slf4j
+public class MediaStorageService {
+
+    public static final String MEDIA_URL_PREFIX = "/api/media/";
+
+    private static final List<String> FINISHED_STATUSES = List.of("COMPLETED", "FAILED", "CANCELLED");
+    private static final DateTimeFormatter DAY_LAYOUT = DateTimeFormatter.ofPattern("yyyy/MM/dd");
+    private static final int SWEEP_BATCH_SIZE = 100;
+
+    private final DetectionResultRepository repository;
+    private final Path mediaDir;
+    private final Path framesDir;
+    private final Path previewsDir;
+    private final int maxAgeDays;
+    private final long maxTotalBytes;
+    private final long frameMaxAgeMinutes;
+    private final long previewMaxAgeMinutes;
+
+    private final AtomicLong deletedFiles = new AtomicLong();
+    private final AtomicLong reclaimedBytes = new AtomicLong();
+    private volatile StorageUsage usage;
+
+    public MediaStorageService(DetectionResultRepository repository,
+                               @Value("${app.upload.dir:uploads}") String uploadDir,
+                               @Value("${app.storage.retention.max-age-days:30}") int maxAgeDays,
+                               @Value("${app.storage.retention.max-total-size:10GB}") DataSize maxTotalSize,
+                               @Value("${app.storage.frame-max-age-minutes:60}") long frameMaxAgeMinutes,
+                               @Value("${app.storage.preview-max-age-minutes:60}") long previewMaxAgeMinutes) {
+        this.repository = repository;
+        this.mediaDir = Paths.get(uploadDir, "media");
+        this.framesDir = Paths.get(uploadDir, "frames");
+        this.previewsDir = Paths.get(uploadDir, "previews");
+        this.maxAgeDays = maxAgeDays;
+        this.maxTotalBytes = maxTotalSize.toBytes();
+        this.frameMaxAgeMinutes = frameMaxAgeMinutes;
+        this.previewMaxAgeMinutes = previewMaxAgeMinutes;
+    }
+
+    /**
+     * URL of the original file of an upload
+     */
+    public static String mediaUrl(Long detectionResultId) {
+        return MEDIA_URL_PREFIX + detectionResultId;
+    }
+
+    /**
+     * URL of the preview of an image upload
+     */
+    public static String uploadPreviewUrl(Long detectionResultId) {
+        return MEDIA_URL_PREFIX + detectionResultId + "/preview";
+    }
+
+    /**
+     * URL of a stored preview
+     */
+    public static String previewUrl(String previewFileName) {
+        return MEDIA_URL_PREFIX + "previews/" + previewFileName;
+    }
+
+    /**
+     * Reserve a unique path for a new upload in today's shard of the camera
+     */
+    public Path newUploadPath(String cameraId, String originalFileName) throws IOException {
+        String fileName = System.currentTimeMillis() + "_" + sanitize(originalFileName);
+        Path directory = mediaDir.resolve(LocalDate.now().format(DAY_LAYOUT))
+                .resolve(sanitize(cameraId != null ? cameraId : "unknown"))
+                .resolve(hashPrefix(fileName));
+        Files.createDirectories(directory);
+        return directory.resolve(fileName);
+    }
+
+    /**
+     * Path for a temporary video frame
+     */
+    public Path newFramePath(String frameFileName) throws IOException {
+        Path directory = framesDir.resolve(hashPrefix(frameFileName));
+        Files.createDirectories(directory);
+        return directory.resolve(frameFileName);
+    }
+
+    /**
+     * Path for a preview served by the media endpoint
+     */
+    public Path newPreviewPath(String previewFileName) throws IOException {
+        Path directory = previewsDir.resolve(hashPrefix(previewFileName));
+        Files.createDirectories(directory);
+        return directory.resolve(previewFileName);
+    }
+
+    /**
+     * A stored preview, unless it has expired; names other than a single safe path segment are not found
+     */
+    public Optional<Path> findPreview(String previewFileName) {
+        if (!previewFileName.equals(sanitize(previewFileName))) {
+            return Optional.empty();
+        }
+        Path preview = previewsDir.resolve(hashPrefix(previewFileName)).resolve(previewFileName);
+        return Files.isRegularFile(preview) ? Optional.of(preview) : Optional.empty();
+    }
+
+    /**
+     * Usage measured by the last sweep; measured now if there was none yet
+     */
+    public StorageUsage getUsage() {
+        StorageUsage current = usage;
+        return current != null ? current : measure();
+    }
+
+    @Scheduled(fixedDelayString = "${app.storage.sweep-interval:600000}", initialDelay = 60000)
+    public synchronized void sweep() {
+        try {
+            long mediaBytes = measure().getMediaBytes();
+            LocalDateTime cutoff = maxAgeDays > 0 ? LocalDateTime.now().minusDays(maxAgeDays) : null;
+
+            // Oldest first: drop media past the age limit, then more until the size limit holds
+            while (true) {
+                List<DetectionResult> oldest = repository.findByFilePathIsNotNullAndStatusInOrderByProcessedAt(
+                        FINISHED_STATUSES, PageRequest.of(0, SWEEP_BATCH_SIZE));
+                boolean progress = false;
+                for (DetectionResult result : oldest) {
+                    boolean expired = cutoff != null && result.getProcessedAt().isBefore(cutoff);
+                    boolean overSize = maxTotalBytes > 0 && mediaBytes > maxTotalBytes;
+                    if (!expired && !overSize) {
+                        break;
+                    }
+                    long freed = deleteMedia(result);
+                    if (freed >= 0) {
+                        mediaBytes -= freed;
+                        progress = true;
+                    }
+                }
+                if (!progress || oldest.size() < SWEEP_BATCH_SIZE) {
+                    break;
+                }
+            }
+
+            deleteStaleFiles(framesDir, frameMaxAgeMinutes);
+            deleteStaleFiles(previewsDir, previewMaxAgeMinutes);
+            removeEmptyDirectories(mediaDir);
+            removeEmptyDirectories(framesDir);
+            removeEmptyDirectories(previewsDir);
+            measure();
+        } catch (Exception e) {
+            log.error("Storage sweep failed", e);
+        }
+    }
+
+    /**
+     * Remove the media file of a result and clear its path
+     *
+     * @return the number of bytes freed, or -1 if the file could not be deleted
+     */
+    private long deleteMedia(DetectionResult result) {
+        long size = 0;
+        try {
+            Path path = Paths.get(result.getFilePath());
+            if (Files.exists(path)) {
+                size = Files.size(path);
+                Files.delete(path);
+            }
+            deletedFiles.incrementAndGet();
+            reclaimedBytes.addAndGet(size);
+        } catch (IOException e) {
+            log.warn("Could not delete media {}: {}", result.getFilePath(), e.getMessage());
+            return -1;
+        }
+        result.setFilePath(null);
+        repository.save(result);
+        log.debug("Retention removed media of result {} ({} bytes)", result.getId(), size);
+        return size;
+    }
+
+    /**
+     * Frames are deleted after analysis, so old ones are left over from an interrupted run. Frame previews
+     * only serve clients catching up with recent events; upload previews are generated again on request.
+     */
+    private void deleteStaleFiles(Path root, long maxAgeMinutes) throws IOException {
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - maxAgeMinutes * 60_000;
+        try (Stream<Path> files = Files.walk(root)) {
+            files.filter(Files::isRegularFile).forEach(file -> {
+                try {
+                    if (Files.getLastModifiedTime(file).toMillis() < cutoff) {
+                        Files.deleteIfExists(file);
+                    }
+                } catch (IOException e) {
+                    log.debug("Could not delete stale file {}", file);
+                }
+            });
+        }
+    }
+
+    /**
+     * Compact the layout by removing shard directories left empty by deletions
+     */
+    private void removeEmptyDirectories(Path root) throws IOException {
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+                if (!dir.equals(root)) {
+                    try (Stream<Path> entries = Files.list(dir)) {
+                        if (entries.findAny().isEmpty()) {
+                            Files.deleteIfExists(dir);
+                        }
+                    } catch (IOException e) {
+                        // Directory in use or just received a file; try again next sweep
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private StorageUsage measure() {
+        StorageUsage measured = new StorageUsage();
+        Map<String, Long> perCamera = new TreeMap<>();
+        long[] media = walk(mediaDir, (relative, size) -> {
+            // yyyy/MM/dd/<camera>/<xx>/<file>
+            if (relative.getNameCount() > 3) {
+                perCamera.merge(relative.getName(3).toString(), size, Long::sum);
+            }
+        });
+        long[] frames = walk(framesDir, null);
+        measured.setMediaFiles(media[0]);
+        measured.setMediaBytes(media[1]);
+        measured.setMediaBytesPerCamera(perCamera);
+        measured.setFrameFiles(frames[0]);
+        measured.setFrameBytes(frames[1]);
+        try {
+            FileStore store = Files.getFileStore(Files.exists(mediaDir) ? mediaDir : Paths.get("").toAbsolutePath());
+            measured.setUsableSpaceBytes(store.getUsableSpace());
+            measured.setTotalSpaceBytes(store.getTotalSpace());
+        } catch (IOException e) {
+            log.debug("Could not read file store of {}", mediaDir);
+        }
+        measured.setMaxTotalBytes(Math.max(0, maxTotalBytes));
+        measured.setMaxAgeDays(Math.max(0, maxAgeDays));
+        measured.setDeletedFiles(deletedFiles.get());
+        measured.setReclaimedBytes(reclaimedBytes.get());
+        measured.setMeasuredAt(LocalDateTime.now());
+        usage = measured;
+        return measured;
+    }
+
+    private interface FileSizeConsumer {
+        void accept(Path relative, long size);
+    }
+
+    /**
+     * @return file count and total bytes below a directory
+     */
+    private static long[] walk(Path root, FileSizeConsumer consumer) {
+        long[] totals = new long[2];
+        if (!Files.isDirectory(root)) {
+            return totals;
+        }
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                    totals[0]++;
+                    totals[1] += attributes.size();
+                    if (consumer != null) {
+                        consumer.accept(root.relativize(file), attributes.size());
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    return FileVisitResult.CONTINUE; // deleted while walking
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return totals;
+    }
+
+    private static String hashPrefix(String fileName) {
+        return String.format("%02x", fileName.hashCode() & 0xff);
+    }
+
+    /**
+     * Keep names to a single safe path segment
+     */
+    private static String sanitize(String name) {
+        String fileName = name != null ? name.substring(name.replace('\\', '/').lastIndexOf('/') + 1) : "";
+        String safe = fileName.replaceAll("[^A-Za-z0-9._-]", "_");
+        return safe.isEmpty() || safe.chars().allMatch(c -> c == '.') ? "file" : safe;
+    }
+}
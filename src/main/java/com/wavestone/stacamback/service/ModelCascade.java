@@ -0,0 +1,227 @@
+package com.wavestone.stacamback.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.wavestone.stacamback.model.ModelCascadeStats;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Two-stage model routing. Every frame is analyzed by the fast model; a frame is analyzed again by the
+ * accurate model only if the fast model found something it is unsure about (confidence within
+ * [{@code min-confidence}, {@code max-confidence})) or an object of one of the configured classes. The
+ * accurate detections then replace the fast ones, except confident fast detections the accurate model
+ * has no overlapping detection of the same class for.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ModelCascade {
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.inference.models.fast:yolov8n.pt}")
+    private String fastModel;
+
+    @Value("${app.inference.models.accurate:yolov8m.pt}")
+    private String accurateModel;
+
+    @Value("${app.inference.cascade.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.inference.cascade.min-confidence:0.25}")
+    private double minConfidence;
+
+    @Value("${app.inference.cascade.max-confidence:0.6}")
+    private double maxConfidence;
+
+    @Value("${app.inference.cascade.classes:}")
+    private Set<String> escalateClasses;
+
+    @Value("${app.inference.cascade.merge-iou:0.5}")
+    private double mergeIou;
+
+    private final Map<String, ModelCounters> counters = new ConcurrentHashMap<>();
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong escalated = new AtomicLong();
+    private final AtomicLong escalationFailures = new AtomicLong();
+
+    /**
+     * Runs the model with the given weights on the current frame and returns its detections JSON
+     */
+    @FunctionalInterface
+    public interface ModelRunner {
+        String run(String model) throws Exception;
+    }
+
+    public String getFastModel() {
+        return fastModel;
+    }
+
+    /**
+     * Detections of a frame: the fast model's, refined by the accurate model if the frame needs it
+     */
+    public String detect(ModelRunner runner) throws Exception {
+        return escalate(runner.run(fastModel), runner);
+    }
+
+    /**
+     * Record one model run; the latency excludes the wait for an inference permit
+     */
+    public void record(String model, long millis, boolean failed) {
+        counters.computeIfAbsent(model, name -> new ModelCounters()).add(millis, failed);
+    }
+
+    /**
+     * Refine the fast model's detections of a frame with the accurate model if any of them is uncertain or
+     * of an escalated class. If the accurate run fails, the fast detections are kept.
+     */
+    public String escalate(String fastDetections, ModelRunner runner) throws Exception {
+        if (!enabled || fastDetections == null) {
+            return fastDetections;
+        }
+        JsonNode fast = readDetections(fastDetections);
+        if (fast == null) {
+            return fastDetections;
+        }
+        frames.incrementAndGet();
+        if (!needsEscalation(fast.get("detections"))) {
+            return fastDetections;
+        }
+        escalated.incrementAndGet();
+
+        JsonNode accurate;
+        try {
+            accurate = readDetections(runner.run(accurateModel));
+        } catch (CancellationException e) {
+            throw e;
+        } catch (Exception e) {
+            accurate = null;
+            log.warn("Accurate model {} failed, keeping the detections of {}: {}", accurateModel, fastModel,
+                    e.getMessage());
+        }
+        if (accurate == null) {
+            escalationFailures.incrementAndGet();
+            return fastDetections;
+        }
+        return objectMapper.writeValueAsString(merge((ObjectNode) fast, accurate));
+    }
+
+    public ModelCascadeStats getStats() {
+        ModelCascadeStats stats = new ModelCascadeStats();
+        long frameCount = frames.get();
+        long escalatedCount = escalated.get();
+        stats.setEnabled(enabled);
+        stats.setFastModel(fastModel);
+        stats.setAccurateModel(accurateModel);
+        stats.setMinConfidence(minConfidence);
+        stats.setMaxConfidence(maxConfidence);
+        stats.setEscalateClasses(escalateClasses);
+        stats.setFrames(frameCount);
+        stats.setEscalated(escalatedCount);
+        stats.setEscalationRate(frameCount == 0 ? 0 : (double) escalatedCount / frameCount);
+        stats.setEscalationFailures(escalationFailures.get());
+        counters.forEach((model, modelCounters) -> stats.getModels().add(modelCounters.toStats(model)));
+        return stats;
+    }
+
+    private boolean needsEscalation(JsonNode detections) {
+        for (JsonNode detection : detections) {
+            double confidence = detection.path("confidence").asDouble();
+            if ((confidence >= minConfidence && confidence < maxConfidence)
+                    || escalateClasses.contains(detection.path("className").asText())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The fast result with the accurate detections plus the confident fast detections the accurate model missed
+     */
+    private ObjectNode merge(ObjectNode fast, JsonNode accurate) {
+        ArrayNode accurateDetections = (ArrayNode) accurate.get("detections");
+        ArrayNode merged = accurateDetections.deepCopy();
+        for (JsonNode detection : fast.get("detections")) {
+            String className = detection.path("className").asText();
+            if (detection.path("confidence").asDouble() >= maxConfidence && !escalateClasses.contains(className)
+                    && !overlapsSameClass(detection, accurateDetections)) {
+                merged.add(detection);
+            }
+        }
+        ObjectNode result = fast.deepCopy();
+        result.set("detections", merged);
+        if (result.has("totalDetections")) {
+            result.put("totalDetections", merged.size());
+        }
+        result.putArray("models").add(fastModel).add(accurateModel);
+        return result;
+    }
+
+    private boolean overlapsSameClass(JsonNode detection, ArrayNode others) {
+        double[] box = toBox(detection);
+        for (JsonNode other : others) {
+            if (other.path("className").asText().equals(detection.path("className").asText())
+                    && ObjectTracker.iou(box, toBox(other)) >= mergeIou) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static double[] toBox(JsonNode detection) {
+        JsonNode box = detection.path("boundingBox");
+        return new double[]{box.path("x").asDouble(), box.path("y").asDouble(),
+                box.path("width").asDouble(), box.path("height").asDouble()};
+    }
+
+    /**
+     * A result object with a detection list, or null
+     */
+    private JsonNode readDetections(String detectionsJson) {
+        try {
+            JsonNode root = objectMapper.readTree(detectionsJson);
+            return root instanceof ObjectNode && root.get("detections") instanceof ArrayNode ? root : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static final class ModelCounters {
+        final AtomicLong calls = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        final AtomicLong totalMillis = new AtomicLong();
+        final AtomicLong maxMillis = new AtomicLong();
+
+        void add(long millis, boolean failed) {
+            calls.incrementAndGet();
+            if (failed) {
+                failures.incrementAndGet();
+            }
+            totalMillis.addAndGet(millis);
+            maxMillis.accumulateAndGet(millis, Math::max);
+        }
+
+        ModelCascadeStats.ModelCallStats toStats(String model) {
+            ModelCascadeStats.ModelCallStats stats = new ModelCascadeStats.ModelCallStats();
+            long callCount = calls.get();
+            stats.setModel(model);
+            stats.setCalls(callCount);
+            stats.setFailures(failures.get());
+            stats.setTotalMillis(totalMillis.get());
+            stats.setAverageMillis(callCount == 0 ? 0 : (double) totalMillis.get() / callCount);
+            stats.setMaxMillis(maxMillis.get());
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.wavestone.stacamback.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Runs the YOLO script on a whole video in {@code --stream} mode: the script decodes the video natively
+ * with OpenCV, keeps the model loaded between frames and writes one NDJSON line per analyzed frame. Each
+ * line is handed on as soon as it arrives, so frame results are broadcast while the rest of the video is
+ * still being decoded.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class NativeVideoWorker {
+
+    private static final String[] PYTHON_COMMANDS = {"python", "py", "python3", "python.exe"};
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.python.script.path:python_scripts/yolo_processor.py}")
+    private String pythonScriptPath;
+
+    public interface FrameHandler {
+        /**
+         * @param totalFrames frames the worker expects to analyze, -1 if the video does not tell its length
+         */
+        void onStart(int totalFrames);
+
+        void onFrame(StreamedFrame frame);
+    }
+
+    /**
+     * One analyzed frame
+     *
+     * @param sourceFrame    1-based number of the frame in the video
+     * @param index          1-based number of the frame among the analyzed frames
+     * @param detectionsJson YOLO result of the frame, in source frame coordinates
+     * @param framePath      the frame as reduced JPEG written by the worker, or null
+     */
+    public record StreamedFrame(int sourceFrame, int index, String detectionsJson, long inferenceMillis,
+                                String framePath, int frameWidth, int frameHeight, int sourceWidth, int sourceHeight) {
+    }
+
+    /**
+     * @param complete        whether the worker got through the video or stopped at the deadline; otherwise the
+     *                        video still has to be analyzed after {@code lastSourceFrame}
+     * @param analyzedFrames  frames handed on
+     * @param lastSourceFrame source frame number of the last frame handed on, 0 if none
+     */
+    public record Outcome(boolean complete, int analyzedFrames, int lastSourceFrame, String errorMessage) {
+    }
+
+    /**
+     * Analyze every {@code frameInterval}-th frame of a video, at most {@code maxFrames}
+     *
+     * @param framesDir directory the worker writes the analyzed frames to
+     * @param frameSize longer side of the written frames, 0 for the source size
+     * @throws CancellationException if the token is cancelled; the worker is killed
+     */
+    public Outcome stream(String videoPath, String model, int frameInterval, int maxFrames, Path framesDir,
+                          int frameSize, CancellationToken token, FrameHandler handler) throws InterruptedException {
+        Process process = start(videoPath, model, frameInterval, maxFrames, framesDir, frameSize);
+        if (process == null) {
+            return new Outcome(false, 0, 0, "No Python command available");
+        }
+        token.register(process);
+
+        int analyzedFrames = 0;
+        int lastSourceFrame = 0;
+        int sourceWidth = 0;
+        int sourceHeight = 0;
+        boolean done = false;
+        String errorMessage = null;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            while (true) {
+                String line;
+                // Waiting for a line is the worker decoding and analyzing the next frame
+                try (PipelineTrace.Stage stage = PipelineTrace.stage(PipelineTrace.INFERENCE, analyzedFrames + 1)) {
+                    line = reader.readLine();
+                }
+                if (line == null) {
+                    break;
+                }
+                token.throwIfCancelled();
+                JsonNode node = readLine(line);
+                if (node == null) {
+                    continue;
+                }
+                switch (node.path("type").asText()) {
+                    case "video" -> {
+                        sourceWidth = node.path("width").asInt();
+                        sourceHeight = node.path("height").asInt();
+                        handler.onStart(node.path("totalFrames").asInt(-1));
+                    }
+                    case "frame" -> {
+                        analyzedFrames = node.path("index").asInt(analyzedFrames + 1);
+                        lastSourceFrame = node.path("frame").asInt();
+                        handler.onFrame(new StreamedFrame(lastSourceFrame, analyzedFrames,
+                                objectMapper.writeValueAsString(node.path("result")),
+                                node.path("inferenceMs").asLong(),
+                                node.hasNonNull("framePath") ? node.path("framePath").asText() : null,
+                                node.path("frameWidth").asInt(), node.path("frameHeight").asInt(),
+                                sourceWidth, sourceHeight));
+                    }
+                    case "done" -> done = true;
+                    case "error" -> errorMessage = node.path("errorMessage").asText();
+                    default -> log.debug("Unknown video worker line: {}", line);
+                }
+                if (token.isExpired()) {
+                    log.info("Deadline of {} passed after {} frames, stopping the video worker", videoPath,
+                            analyzedFrames);
+                    return new Outcome(true, analyzedFrames, lastSourceFrame, null);
+                }
+            }
+            int exitCode = process.waitFor();
+            token.throwIfCancelled();
+            if (done && exitCode == 0) {
+                return new Outcome(true, analyzedFrames, lastSourceFrame, null);
+            }
+            return new Outcome(false, analyzedFrames, lastSourceFrame, errorMessage != null ? errorMessage
+                    : "Video worker exited with code " + exitCode);
+        } catch (IOException e) {
+            // Killing the worker on cancellation also breaks its output
+            token.throwIfCancelled();
+            return new Outcome(false, analyzedFrames, lastSourceFrame, e.getMessage());
+        } finally {
+            token.unregister(process);
+            process.destroyForcibly();
+        }
+    }
+
+    private Process start(String videoPath, String model, int frameInterval, int maxFrames, Path framesDir,
+                          int frameSize) {
+        for (String pythonCmd : PYTHON_COMMANDS) {
+            try {
+                ProcessBuilder processBuilder = new ProcessBuilder(
+                        pythonCmd, pythonScriptPath, videoPath, "--stream", "--model", model,
+                        "--frame-interval", String.valueOf(frameInterval), "--max-frames", String.valueOf(maxFrames),
+                        "--frames-dir", framesDir.toString(), "--frame-size", String.valueOf(frameSize)
+                );
+                // Model and library logs are mixed in and skipped; a separate stderr pipe could fill up and block
+                processBuilder.redirectErrorStream(true);
+                return processBuilder.start();
+            } catch (IOException e) {
+                log.debug("Python command '{}' not available: {}", pythonCmd, e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    private JsonNode readLine(String line) {
+        if (!line.startsWith("{")) {
+            log.debug("Video worker: {}", line);
+            return null;
+        }
+        try {
+            return objectMapper.readTree(line);
+        } catch (IOException e) {
+            log.debug("Unreadable video worker line: {}", line);
+            return null;
+        }
+    }
+}
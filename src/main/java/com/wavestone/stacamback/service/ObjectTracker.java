@@ -0,0 +1,241 @@
+package com.wavestone.stacamback.service;
+
+import com.wavestone.stacamback.model.TrackEvent;
+import com.wavestone.stacamback.model.TrackedObject;
+import com.wavestone.stacamback.model.TrackingUpdate;
+import com.wavestone.stacamback.model.YoloDetection;
+
+import java.util.*;
+
+/**
+ * IoU-based multi-object tracker in the style of SORT. Each track predicts its next box from a smoothed
+ * constant velocity; detections are assigned to tracks of the same class greedily by descending IoU with
+ * the prediction. Only changes are reported: a track appears once it has been matched {@code minHits}
+ * times, moves when it has drifted away from the box last reported, and disappears after
+ * {@code maxMissedFrames} frames without a match. Not thread-safe; one instance per frame stream.
+ */
+public class ObjectTracker {
+
+    public static final String TRACK_APPEARED = "TRACK_APPEARED";
+    public static final String TRACK_MOVED = "TRACK_MOVED";
+    public static final String TRACK_DISAPPEARED = "TRACK_DISAPPEARED";
+
+    private static final double VELOCITY_SMOOTHING = 0.5;
+    private static final int MAX_FINISHED_TRACKS = 10000;
+
+    private final String idPrefix;
+    private final double iouThreshold;
+    private final double moveIouThreshold;
+    private final int minHits;
+    private final int maxMissedFrames;
+    private final int keyframeInterval;
+
+    private final List<Track> tracks = new ArrayList<>();
+    private final List<TrackedObject> finishedTracks = new ArrayList<>();
+    private long nextTrackNumber = 1;
+    private Integer lastKeyframe;
+
+    /**
+     * @param idPrefix         prepended to track numbers so IDs stay unique across streams of one video
+     * @param iouThreshold     minimum IoU between prediction and detection to continue a track
+     * @param moveIouThreshold a track is reported as moved once its IoU with the last reported box drops below this
+     * @param keyframeInterval frames between two keyframes listing every active track
+     */
+    public ObjectTracker(String idPrefix, double iouThreshold, double moveIouThreshold,
+                         int minHits, int maxMissedFrames, int keyframeInterval) {
+        this.idPrefix = idPrefix;
+        this.iouThreshold = iouThreshold;
+        this.moveIouThreshold = moveIouThreshold;
+        this.minHits = Math.max(1, minHits);
+        this.maxMissedFrames = maxMissedFrames;
+        this.keyframeInterval = Math.max(1, keyframeInterval);
+    }
+
+    public TrackingUpdate update(int frameIndex, List<YoloDetection> detections) {
+        List<TrackEvent> events = new ArrayList<>();
+
+        // Candidate pairs of the same class, best overlap first
+        List<double[]> pairs = new ArrayList<>(); // {iou, trackIndex, detectionIndex}
+        for (int t = 0; t < tracks.size(); t++) {
+            Track track = tracks.get(t);
+            double[] predicted = track.predict();
+            for (int d = 0; d < detections.size(); d++) {
+                YoloDetection detection = detections.get(d);
+                if (!track.className.equals(detection.getClassName())) {
+                    continue;
+                }
+                double iou = iou(predicted, toBox(detection.getBoundingBox()));
+                if (iou >= iouThreshold) {
+                    pairs.add(new double[]{iou, t, d});
+                }
+            }
+        }
+        pairs.sort((a, b) -> Double.compare(b[0], a[0]));
+
+        boolean[] trackMatched = new boolean[tracks.size()];
+        boolean[] detectionMatched = new boolean[detections.size()];
+        for (double[] pair : pairs) {
+            int t = (int) pair[1];
+            int d = (int) pair[2];
+            if (trackMatched[t] || detectionMatched[d]) {
+                continue;
+            }
+            trackMatched[t] = true;
+            detectionMatched[d] = true;
+
+            Track track = tracks.get(t);
+            track.match(frameIndex, detections.get(d));
+            if (!track.confirmed && track.hits >= minHits) {
+                track.confirmed = true;
+                track.reportedBox = track.box.clone();
+                events.add(track.event(TRACK_APPEARED));
+            } else if (track.confirmed && iou(track.reportedBox, track.box) < moveIouThreshold) {
+                track.reportedBox = track.box.clone();
+                events.add(track.event(TRACK_MOVED));
+            }
+        }
+
+        // Unmatched tracks coast on their prediction until they are given up
+        Iterator<Track> iterator = tracks.iterator();
+        int index = 0;
+        while (iterator.hasNext()) {
+            Track track = iterator.next();
+            if (!trackMatched[index++]) {
+                track.missed++;
+                if (track.missed > maxMissedFrames) {
+                    iterator.remove();
+                    if (track.confirmed) {
+                        events.add(track.event(TRACK_DISAPPEARED));
+                        finish(track);
+                    }
+                }
+            }
+        }
+
+        for (int d = 0; d < detections.size(); d++) {
+            if (!detectionMatched[d]) {
+                Track track = new Track(idPrefix + nextTrackNumber++, frameIndex, detections.get(d));
+                tracks.add(track);
+                if (minHits <= 1) {
+                    track.confirmed = true;
+                    track.reportedBox = track.box.clone();
+                    events.add(track.event(TRACK_APPEARED));
+                }
+            }
+        }
+
+        boolean keyframe = lastKeyframe == null || frameIndex - lastKeyframe >= keyframeInterval;
+        if (keyframe) {
+            lastKeyframe = frameIndex;
+        }
+        return new TrackingUpdate(frameIndex, keyframe, events, keyframe ? getActiveTracks() : null);
+    }
+
+    /**
+     * End the stream: every remaining track disappears
+     */
+    public List<TrackEvent> close() {
+        List<TrackEvent> events = new ArrayList<>();
+        for (Track track : tracks) {
+            if (track.confirmed) {
+                events.add(track.event(TRACK_DISAPPEARED));
+                finish(track);
+            }
+        }
+        tracks.clear();
+        return events;
+    }
+
+    public List<TrackedObject> getActiveTracks() {
+        List<TrackedObject> active = new ArrayList<>();
+        for (Track track : tracks) {
+            if (track.confirmed && track.missed == 0) {
+                active.add(track.snapshot());
+            }
+        }
+        return active;
+    }
+
+    /**
+     * Every confirmed track that has ended, with its first and last frame
+     */
+    public List<TrackedObject> getFinishedTracks() {
+        return finishedTracks;
+    }
+
+    private void finish(Track track) {
+        if (finishedTracks.size() < MAX_FINISHED_TRACKS) {
+            finishedTracks.add(track.snapshot());
+        }
+    }
+
+    private static double[] toBox(YoloDetection.BoundingBox box) {
+        return new double[]{box.getX(), box.getY(), box.getWidth(), box.getHeight()};
+    }
+
+    static double iou(double[] a, double[] b) {
+        double left = Math.max(a[0], b[0]);
+        double top = Math.max(a[1], b[1]);
+        double right = Math.min(a[0] + a[2], b[0] + b[2]);
+        double bottom = Math.min(a[1] + a[3], b[1] + b[3]);
+        double intersection = Math.max(0, right - left) * Math.max(0, bottom - top);
+        double union = a[2] * a[3] + b[2] * b[3] - intersection;
+        return union > 0 ? intersection / union : 0;
+    }
+
+    private static final class Track {
+        final String id;
+        final String className;
+        final int firstFrame;
+        double[] box; // x, y, width, height
+        double[] reportedBox;
+        double velocityX;
+        double velocityY;
+        double confidence;
+        double maxConfidence;
+        int lastFrame;
+        int hits = 1;
+        int missed;
+        boolean confirmed;
+
+        Track(String id, int frameIndex, YoloDetection detection) {
+            this.id = id;
+            this.className = detection.getClassName();
+            this.firstFrame = frameIndex;
+            this.lastFrame = frameIndex;
+            this.box = toBox(detection.getBoundingBox());
+            this.confidence = detection.getConfidence();
+            this.maxConfidence = confidence;
+        }
+
+        double[] predict() {
+            int frames = missed + 1;
+            return new double[]{box[0] + velocityX * frames, box[1] + velocityY * frames, box[2], box[3]};
+        }
+
+        void match(int frameIndex, YoloDetection detection) {
+            double[] next = toBox(detection.getBoundingBox());
+            int frames = Math.max(1, frameIndex - lastFrame);
+            velocityX = VELOCITY_SMOOTHING * (next[0] - box[0]) / frames + (1 - VELOCITY_SMOOTHING) * velocityX;
+            velocityY = VELOCITY_SMOOTHING * (next[1] - box[1]) / frames + (1 - VELOCITY_SMOOTHING) * velocityY;
+            box = next;
+            confidence = detection.getConfidence();
+            maxConfidence = Math.max(maxConfidence, confidence);
+            lastFrame = frameIndex;
+            hits++;
+            missed = 0;
+        }
+
+        TrackEvent event(String type) {
+            return new TrackEvent(type, id, className, confidence, boundingBox());
+        }
+
+        TrackedObject snapshot() {
+            return new TrackedObject(id, className, confidence, boundingBox(), firstFrame, lastFrame, maxConfidence);
+        }
+
+        YoloDetection.BoundingBox boundingBox() {
+            return new YoloDetection.BoundingBox(box[0], box[1], box[2], box[3]);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.wavestone.stacamback.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder event of one stage of the detection pipeline, created through {@link PipelineTrace}.
+ * Stack traces are not recorded to keep the continuous recording cheap.
+ */
+@Name("com.wavestone.stacamback.PipelineStage")
+@Label("Pipeline Stage")
+@Category({"STA-cam", "Pipeline"})
+@Description("Duration of one stage of the detection pipeline for an upload, video frame or live frame")
+@StackTrace(false)
+public class PipelineStageEvent extends Event {
+
+    @Label("Stage")
+    @Description("decode, convert, encode, inference, parse, save or broadcast")
+    String stage;
+
+    @Label("Job ID")
+    @Description("Detection result ID of the upload, 0 for live frames")
+    long jobId;
+
+    @Label("Camera")
+    String cameraId;
+
+    @Label("Frame Index")
+    @Description("Source frame number while decoding, analyzed frame or live sequence number afterwards, -1 outside frames")
+    int frameIndex;
+}
@@ -0,0 +1,110 @@
+package com.wavestone.stacamback.service;
+
+import java.util.Objects;
+
+/**
+ * Records {@link PipelineStageEvent}s. The upload, camera and frame being processed are kept per thread,
+ * so code deep in the pipeline (model calls, output parsing) reports stages without passing them along:
+ * <pre>
+ * try (PipelineTrace.Scope scope = PipelineTrace.open(jobId, cameraId, frameIndex);
+ *      PipelineTrace.Stage stage = PipelineTrace.stage(PipelineTrace.INFERENCE)) {
+ *     ...
+ * }
+ * </pre>
+ */
+public final class PipelineTrace {
+
+    public static final String DECODE = "decode";
+    public static final String CONVERT = "convert";
+    public static final String ENCODE = "encode";
+    public static final String INFERENCE = "inference";
+    public static final String PARSE = "parse";
+    public static final String SAVE = "save";
+    public static final String BROADCAST = "broadcast";
+
+    private static final int NO_FRAME = -1;
+    private static final ThreadLocal<Context> CONTEXT = new ThreadLocal<>();
+
+    private PipelineTrace() {
+    }
+
+    /**
+     * Attribute the stages of this thread to an upload (null for live frames), camera and frame until closed
+     */
+    public static Scope open(Long jobId, String cameraId, int frameIndex) {
+        Context previous = CONTEXT.get();
+        CONTEXT.set(new Context(jobId != null ? jobId : 0, cameraId, frameIndex));
+        return () -> {
+            if (previous != null) {
+                CONTEXT.set(previous);
+            } else {
+                CONTEXT.remove();
+            }
+        };
+    }
+
+    /**
+     * Like {@link #open(Long, String, int)} outside of any frame
+     */
+    public static Scope open(Long jobId, String cameraId) {
+        return open(jobId, cameraId, NO_FRAME);
+    }
+
+    /**
+     * Start a stage of the current upload and frame; it is recorded when closed
+     */
+    public static Stage stage(String stage) {
+        Context context = CONTEXT.get();
+        return context != null
+                ? new Stage(stage, context.jobId, context.cameraId, context.frameIndex)
+                : new Stage(stage, 0, null, NO_FRAME);
+    }
+
+    /**
+     * Start a stage of the current upload for a given frame
+     */
+    public static Stage stage(String stage, int frameIndex) {
+        Context context = CONTEXT.get();
+        return context != null
+                ? new Stage(stage, context.jobId, context.cameraId, frameIndex)
+                : new Stage(stage, 0, null, frameIndex);
+    }
+
+    /**
+     * Start a stage of a given upload and camera, for the current frame if it belongs to them
+     */
+    public static Stage stage(String stage, Long jobId, String cameraId) {
+        Context context = CONTEXT.get();
+        long id = jobId != null ? jobId : 0;
+        int frameIndex = context != null && context.jobId == id && Objects.equals(context.cameraId, cameraId)
+                ? context.frameIndex : NO_FRAME;
+        return new Stage(stage, id, cameraId, frameIndex);
+    }
+
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    public static final class Stage implements AutoCloseable {
+        private final PipelineStageEvent event = new PipelineStageEvent();
+
+        private Stage(String stage, long jobId, String cameraId, int frameIndex) {
+            if (event.isEnabled()) {
+                event.stage = stage;
+                event.jobId = jobId;
+                event.cameraId = cameraId;
+                event.frameIndex = frameIndex;
+                event.begin();
+            }
+        }
+
+        @Override
+        public void close() {
+            event.commit();
+        }
+    }
+
+    private record Context(long jobId, String cameraId, int frameIndex) {
+    }
+}
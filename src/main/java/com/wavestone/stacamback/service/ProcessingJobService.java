@@ -0,0 +1,288 @@
+package com.wavestone.stacamback.service;
+
+import com.wavestone.stacamback.config.NodeIdentity;
+import com.wavestone.stacamback.config.PipelineExecutors;
+import com.wavestone.stacamback.model.DetectionResult;
+import com.wavestone.stacamback.model.FrameRangeResult;
+import com.wavestone.stacamback.model.ProcessingJob;
+import com.wavestone.stacamback.repository.DetectionResultRepository;
+import com.wavestone.stacamback.repository.ProcessingJobRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Entry point for starting inference on an upload. In {@code local} mode the upload is processed
+ * on the receiving node; in {@code cluster} mode it is written as a PENDING job to the shared
+ * database and claimed by whichever node has capacity (see {@link JobWorker}).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ProcessingJobService {
+
+    private static final List<String> FINISHED_STATUSES = List.of("COMPLETED", "FAILED", "CANCELLED");
+
+    private final ProcessingJobRepository jobRepository;
+    private final DetectionResultRepository detectionResultRepository;
+    private final YoloProcessingService yoloProcessingService;
+    private final NodeIdentity nodeIdentity;
+    private final CancellationRegistry cancellations;
+    private final PipelineExecutors pipelineExecutors;
+
+    @Value("${app.jobs.mode:local}")
+    private String mode;
+
+    @Value("${app.jobs.split-frames:750}")
+    private int splitFrames;
+
+    @Value("${app.jobs.lease-seconds:30}")
+    private int leaseSeconds;
+
+    @Value("${app.jobs.max-attempts:3}")
+    private int maxAttempts;
+
+    public boolean isClusterMode() {
+        return "cluster".equalsIgnoreCase(mode);
+    }
+
+    public void submit(DetectionResult detectionResult) {
+        if (isClusterMode()) {
+            enqueue(detectionResult);
+        } else {
+            yoloProcessingService.processWithYolo(detectionResult);
+        }
+    }
+
+    /**
+     * Start inference on the uploads of a bulk upload as one job. Locally, a few workers (no more than
+     * inference runs may run at once) take the uploads in order; in cluster mode all jobs are written in
+     * one transaction.
+     */
+    public void submitBatch(List<DetectionResult> detectionResults) {
+        if (isClusterMode()) {
+            enqueueAll(detectionResults);
+            return;
+        }
+        AtomicInteger next = new AtomicInteger();
+        int workers = Math.min(detectionResults.size(), pipelineExecutors.getMaxConcurrentInference());
+        for (int i = 0; i < workers; i++) {
+            CompletableFuture.runAsync(() -> {
+                int index;
+                while ((index = next.getAndIncrement()) < detectionResults.size()) {
+                    yoloProcessingService.process(detectionResults.get(index));
+                }
+            }, pipelineExecutors.getUploadExecutor());
+        }
+    }
+
+    @Transactional
+    public void enqueueAll(List<DetectionResult> detectionResults) {
+        detectionResults.forEach(this::enqueue);
+    }
+
+    /**
+     * Cancel an upload wherever it is processed. A run on this node is stopped right away; the upload's
+     * jobs are marked CANCELLED so no node claims them, and a node running one stops it at its next heartbeat.
+     *
+     * @return the cancelled upload, empty if there is none with this id
+     * @throws IllegalStateException if the upload has already finished
+     */
+    @Transactional
+    public Optional<DetectionResult> cancel(Long detectionResultId) {
+        DetectionResult detectionResult = detectionResultRepository.findById(detectionResultId).orElse(null);
+        if (detectionResult == null) {
+            return Optional.empty();
+        }
+        if (FINISHED_STATUSES.contains(detectionResult.getStatus())) {
+            throw new IllegalStateException("Upload " + detectionResultId + " is already "
+                    + detectionResult.getStatus().toLowerCase());
+        }
+        int jobs = jobRepository.cancelByDetectionResultId(detectionResultId);
+        DetectionResult cancelled = yoloProcessingService.markCancelled(detectionResult, "Cancelled by request");
+        boolean running = cancellations.cancel(detectionResultId, "Cancelled by request");
+        log.info("Cancelled upload {} ({} jobs, {})", detectionResultId, jobs,
+                running ? "stopped on this node" : "not running on this node");
+        return Optional.of(cancelled);
+    }
+
+    /**
+     * Uploads among the given jobs that were cancelled since they were claimed
+     */
+    public List<Long> findCancelledUploads(Collection<Long> jobIds) {
+        return jobIds.isEmpty() ? List.of() : jobRepository.findCancelledDetectionResultIds(jobIds);
+    }
+
+    /**
+     * Write the jobs for an upload. Videos longer than the split size become a SPLIT parent job
+     * with one PENDING child per frame range, so several nodes can analyze one video in parallel.
+     */
+    @Transactional
+    public ProcessingJob enqueue(DetectionResult detectionResult) {
+        int frameCount = "VIDEO".equals(detectionResult.getFileType())
+                ? yoloProcessingService.getVideoFrameCount(detectionResult.getFilePath()) : -1;
+        frameCount = Math.min(frameCount,
+                YoloProcessingService.MAX_EXTRACTED_FRAMES * YoloProcessingService.FRAME_SAMPLE_INTERVAL);
+
+        if (frameCount <= splitFrames) {
+            ProcessingJob job = new ProcessingJob();
+            job.setDetectionResultId(detectionResult.getId());
+            return jobRepository.save(job);
+        }
+
+        // Align ranges to the sampling interval so every sampled frame belongs to exactly one range
+        int interval = YoloProcessingService.FRAME_SAMPLE_INTERVAL;
+        int rangeSize = ((splitFrames + interval - 1) / interval) * interval;
+
+        ProcessingJob parent = new ProcessingJob();
+        parent.setDetectionResultId(detectionResult.getId());
+        parent.setStatus("SPLIT");
+        parent.setFrameStart(0);
+        parent.setFrameEnd(frameCount);
+        parent = jobRepository.save(parent);
+
+        List<ProcessingJob> children = new ArrayList<>();
+        for (int start = 0; start < frameCount; start += rangeSize) {
+            ProcessingJob child = new ProcessingJob();
+            child.setDetectionResultId(detectionResult.getId());
+            child.setParentJobId(parent.getId());
+            child.setFrameStart(start);
+            child.setFrameEnd(Math.min(start + rangeSize, frameCount));
+            children.add(child);
+        }
+        jobRepository.saveAll(children);
+        log.info("Split video {} into {} frame-range jobs", detectionResult.getFileName(), children.size());
+
+        yoloProcessingService.broadcastVideoProcessingStart(detectionResult, frameCount / interval);
+        return parent;
+    }
+
+    /**
+     * Claim up to {@code maxJobs} pending or lease-expired jobs for this node
+     */
+    @Transactional
+    public List<ProcessingJob> claim(int maxJobs) {
+        if (maxJobs <= 0) {
+            return List.of();
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<ProcessingJob> claimed = new ArrayList<>();
+        for (ProcessingJob job : jobRepository.findClaimable(now, PageRequest.of(0, maxJobs))) {
+            if (job.getAttempts() >= maxAttempts) {
+                log.warn("Job {} abandoned after {} attempts", job.getId(), job.getAttempts());
+                finish(job, null, "Lease expired after " + job.getAttempts() + " attempts");
+                continue;
+            }
+            job.setStatus("RUNNING");
+            job.setOwnerNode(nodeIdentity.getNodeId());
+            job.setAttempts(job.getAttempts() + 1);
+            job.setHeartbeatAt(now);
+            job.setLeaseExpiresAt(now.plusSeconds(leaseSeconds));
+            claimed.add(job);
+        }
+        return claimed;
+    }
+
+    /**
+     * Extend the leases of jobs this node is still working on
+     */
+    @Transactional
+    public int heartbeat(Collection<Long> jobIds) {
+        if (jobIds.isEmpty()) {
+            return 0;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        return jobRepository.extendLeases(jobIds, nodeIdentity.getNodeId(), now, now.plusSeconds(leaseSeconds));
+    }
+
+    /**
+     * Record the outcome of a job claimed by this node. The last finishing frame-range job completes the upload.
+     */
+    @Transactional
+    public void complete(Long jobId, FrameRangeResult rangeResult, String errorMessage) {
+        ProcessingJob job = jobRepository.findById(jobId).orElse(null);
+        if (job == null) {
+            return;
+        }
+        // Lock the parent first so sibling completions on different nodes are serialized
+        if (job.getParentJobId() != null) {
+            jobRepository.findByIdForUpdate(job.getParentJobId());
+        }
+        job = jobRepository.findByIdForUpdate(jobId).orElse(job);
+        if ("CANCELLED".equals(job.getStatus())) {
+            log.debug("Job {} ended after it was cancelled", jobId);
+            return;
+        }
+        if (!"RUNNING".equals(job.getStatus()) || !nodeIdentity.getNodeId().equals(job.getOwnerNode())) {
+            log.warn("Ignoring result of job {}: lease was lost to {}", jobId, job.getOwnerNode());
+            return;
+        }
+        finish(job, rangeResult, errorMessage);
+    }
+
+    private void finish(ProcessingJob job, FrameRangeResult rangeResult, String errorMessage) {
+        job.setStatus(errorMessage == null ? "COMPLETED" : "FAILED");
+        job.setErrorMessage(errorMessage);
+        job.setLeaseExpiresAt(null);
+        if (rangeResult != null) {
+            job.setTotalFrames(rangeResult.getTotalFrames());
+            job.setSuccessfulFrames(rangeResult.getSuccessfulFrames());
+        }
+        jobRepository.save(job);
+
+        if (job.getParentJobId() != null) {
+            completeParentIfDone(job.getParentJobId());
+        } else if (errorMessage != null && job.getFrameStart() == null) {
+            // Whole-file jobs finalize their upload themselves unless they never ran to completion
+            detectionResultRepository.findById(job.getDetectionResultId())
+                    .filter(result -> !"COMPLETED".equals(result.getStatus()) && !"FAILED".equals(result.getStatus()))
+                    .ifPresent(result -> yoloProcessingService.markFailed(result, errorMessage));
+        }
+    }
+
+    private void completeParentIfDone(Long parentJobId) {
+        ProcessingJob parent = jobRepository.findById(parentJobId).orElse(null);
+        if (parent == null || !"SPLIT".equals(parent.getStatus())) {
+            return;
+        }
+        List<ProcessingJob> children = jobRepository.findByParentJobId(parentJobId);
+        int totalFrames = 0;
+        int successfulFrames = 0;
+        boolean anyCompleted = false;
+        for (ProcessingJob child : children) {
+            if (!"COMPLETED".equals(child.getStatus()) && !"FAILED".equals(child.getStatus())) {
+                return; // still in progress
+            }
+            anyCompleted |= "COMPLETED".equals(child.getStatus());
+            totalFrames += child.getTotalFrames() != null ? child.getTotalFrames() : 0;
+            successfulFrames += child.getSuccessfulFrames() != null ? child.getSuccessfulFrames() : 0;
+        }
+
+        parent.setStatus(anyCompleted ? "COMPLETED" : "FAILED");
+        parent.setTotalFrames(totalFrames);
+        parent.setSuccessfulFrames(successfulFrames);
+        jobRepository.save(parent);
+
+        DetectionResult detectionResult = detectionResultRepository.findById(parent.getDetectionResultId()).orElse(null);
+        if (detectionResult == null) {
+            return;
+        }
+        if (anyCompleted) {
+            yoloProcessingService.completeVideo(detectionResult, totalFrames, successfulFrames);
+        } else {
+            yoloProcessingService.failVideo(detectionResult, "All frame-range jobs failed");
+        }
+        log.info("All {} frame-range jobs of video {} finished", children.size(), detectionResult.getFileName());
+    }
+}
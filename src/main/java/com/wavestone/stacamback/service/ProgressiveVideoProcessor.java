@@ -0,0 +1,324 @@
+package com.wavestone.stacamback.service;
+
+import com.wavestone.stacamback.config.PipelineExecutors;
+import com.wavestone.stacamback.model.ChunkedUpload;
+import com.wavestone.stacamback.model.DetectionResult;
+import com.wavestone.stacamback.model.TrackedObject;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Analyzes fragmented MP4 uploads while their chunks are still arriving. Every complete movie fragment
+ * is decoded and its sampled frames run through YOLO right away, so most of the video has been analyzed
+ * by the time the last chunk lands. Uploads that are not fragmented MP4 are left to whole-file processing.
+ */
+@Service
+@Slf4j
+public class ProgressiveVideoProcessor implements DisposableBean {
+
+    private final YoloProcessingService yoloProcessingService;
+    private final CancellationRegistry cancellations;
+    private final boolean enabled;
+    private final Duration ownershipTimeout;
+    private final ExecutorService executor;
+
+    private final Map<String, ProgressiveVideo> videos = new ConcurrentHashMap<>();
+
+    public ProgressiveVideoProcessor(YoloProcessingService yoloProcessingService,
+                                     CancellationRegistry cancellations,
+                                     PipelineExecutors pipelineExecutors,
+                                     @Value("${app.upload.progressive.enabled:true}") boolean enabled,
+                                     @Value("${app.upload.progressive.threads:2}") int threads,
+                                     @Value("${app.upload.progressive.ownership-timeout:30s}") Duration ownershipTimeout) {
+        this.yoloProcessingService = yoloProcessingService;
+        this.cancellations = cancellations;
+        this.enabled = enabled;
+        this.ownershipTimeout = ownershipTimeout;
+        this.executor = pipelineExecutors.newExecutor("progressive-video", threads);
+    }
+
+    public boolean supports(String originalFileName) {
+        String name = originalFileName.toLowerCase();
+        return enabled && (name.endsWith(".mp4") || name.endsWith(".m4v") || name.endsWith(".mov"));
+    }
+
+    /**
+     * Called after every appended chunk with the number of bytes now stored
+     */
+    public void dataAvailable(ChunkedUpload upload, long available) {
+        if (!supports(upload.getOriginalFileName())) {
+            return;
+        }
+        ProgressiveVideo video = videos.computeIfAbsent(upload.getId(), id -> new ProgressiveVideo(upload));
+        if (!video.finished) {
+            video.available = available;
+            schedule(video);
+        }
+    }
+
+    /**
+     * Called when the upload is finalized. Returns the detection record if this processor is analyzing
+     * the upload (it completes the video once the remaining fragments are done), or null if the upload
+     * should be processed as a whole. If the upload's first fragment has not been analyzed yet, this
+     * blocks the finalizing request until it has, which can take up to
+     * {@code app.upload.progressive.ownership-timeout} when all progressive threads are busy. After the
+     * timeout, progressive processing is abandoned and the upload is processed as a whole.
+     */
+    public DetectionResult complete(ChunkedUpload upload, long size) {
+        ProgressiveVideo video = videos.get(upload.getId());
+        if (video == null) {
+            return null;
+        }
+        video.available = size;
+        video.complete = true;
+        if (video.finished) {
+            videos.remove(upload.getId(), video);
+        } else {
+            schedule(video);
+        }
+        try {
+            return video.ownership.get(ownershipTimeout.toMillis(), TimeUnit.MILLISECONDS) ? video.detectionResult : null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return giveUpOwnership(video);
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("Progressive processing of upload {} did not start, falling back", upload.getId());
+            return giveUpOwnership(video);
+        }
+    }
+
+    /**
+     * Hand the upload to whole-file processing unless the drain claimed it in the meantime; the drain still
+     * queued for the upload then stops without creating a detection record
+     */
+    private DetectionResult giveUpOwnership(ProgressiveVideo video) {
+        synchronized (video) {
+            if (!video.ownership.complete(false)) {
+                return video.ownership.join() ? video.detectionResult : null;
+            }
+            video.abandoned = true;
+        }
+        schedule(video);
+        return null;
+    }
+
+    /**
+     * Stop analyzing an upload that will never be finalized
+     */
+    public void abandon(String uploadId) {
+        ProgressiveVideo video = videos.get(uploadId);
+        if (video == null) {
+            return;
+        }
+        video.abandoned = true;
+        if (video.finished) {
+            videos.remove(uploadId, video);
+        } else {
+            schedule(video);
+        }
+    }
+
+    public Map<String, Object> getProgress(String uploadId) {
+        ProgressiveVideo video = videos.get(uploadId);
+        if (video == null || video.detectionResult == null) {
+            return null;
+        }
+        Map<String, Object> progress = new HashMap<>();
+        progress.put("detectionId", video.detectionResult.getId());
+        progress.put("decodedFrames", video.reader.getFrameCount());
+        progress.put("analyzedFrames", video.analyzedFrames);
+        return progress;
+    }
+
+    private void schedule(ProgressiveVideo video) {
+        if (video.draining.compareAndSet(false, true)) {
+            executor.execute(() -> drain(video));
+        }
+    }
+
+    private void drain(ProgressiveVideo video) {
+        while (true) {
+            long available = video.available;
+            boolean complete = video.complete;
+            if (!process(video, available, complete)) {
+                return;
+            }
+            video.draining.set(false);
+            // More data may have arrived between the last read and releasing the flag
+            if ((video.available == available && video.complete == complete && !video.abandoned)
+                    || !video.draining.compareAndSet(false, true)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return false once the video is finished and must not be scheduled again
+     */
+    private boolean process(ProgressiveVideo video, long available, boolean complete) {
+        if (video.abandoned) {
+            finish(video, false);
+            return false;
+        }
+        try {
+            if (video.reader == null) {
+                video.reader = new FragmentedMp4Reader(video.path);
+            }
+            video.reader.readAvailable(available, complete, (frameNumber, picture) -> {
+                if (video.detectionResult == null && !start(video)) {
+                    throw new CancellationException("Upload is processed as a whole");
+                }
+                if (frameNumber % YoloProcessingService.FRAME_SAMPLE_INTERVAL != 0
+                        || video.analyzedFrames >= YoloProcessingService.MAX_EXTRACTED_FRAMES) {
+                    return;
+                }
+                String framePath = yoloProcessingService.saveVideoFrame(picture, frameNumber);
+                try {
+                    video.analyzedFrames++;
+                    if (yoloProcessingService.processVideoFrame(video.detectionResult, video.analyzedFrames, framePath,
+                            TrackingService.videoStream(video.detectionResult.getId()), "")) {
+                        video.successfulFrames++;
+                    }
+                } finally {
+                    Files.deleteIfExists(Paths.get(framePath));
+                }
+            });
+
+            if (video.detectionResult == null) {
+                if (video.reader.getState() == FragmentedMp4Reader.State.FRAGMENTED) {
+                    if (!start(video)) {
+                        finish(video, false);
+                        return false;
+                    }
+                } else if (video.reader.getState() == FragmentedMp4Reader.State.UNSUPPORTED || complete) {
+                    log.info("Upload {} will be processed after finalize: {}", video.uploadId,
+                            video.reader.getUnsupportedReason() != null ? video.reader.getUnsupportedReason()
+                                    : "no movie box found");
+                    finish(video, false);
+                    return false;
+                } else {
+                    return true;
+                }
+            }
+
+            if (complete) {
+                log.info("Progressively analyzed {} frames of {} ({} decoded)", video.analyzedFrames,
+                        video.detectionResult.getFileName(), video.reader.getFrameCount());
+                List<TrackedObject> tracks = yoloProcessingService.closeTracking(video.detectionResult,
+                        TrackingService.videoStream(video.detectionResult.getId()));
+                yoloProcessingService.completeVideo(video.detectionResult, video.analyzedFrames, video.successfulFrames,
+                        tracks);
+                finish(video, true);
+                return false;
+            }
+            return true;
+        } catch (CancellationException e) {
+            if (video.detectionResult == null) {
+                finish(video, false);
+                return false;
+            }
+            // Later chunks are ignored and finalize reports the cancelled record
+            yoloProcessingService.closeTracking(video.detectionResult,
+                    TrackingService.videoStream(video.detectionResult.getId()));
+            yoloProcessingService.markCancelled(video.detectionResult, e.getMessage());
+            finish(video, true);
+            return false;
+        } catch (Exception e) {
+            log.error("Progressive processing failed for upload {}", video.uploadId, e);
+            if (video.detectionResult != null) {
+                yoloProcessingService.closeTracking(video.detectionResult,
+                        TrackingService.videoStream(video.detectionResult.getId()));
+                yoloProcessingService.failVideo(video.detectionResult, e.getMessage());
+                finish(video, true);
+            } else {
+                finish(video, false);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Create the detection record and take ownership of the upload
+     *
+     * @return false if finalize already handed the upload to whole-file processing
+     */
+    private boolean start(ProgressiveVideo video) {
+        synchronized (video) {
+            if (video.ownership.isDone()) {
+                return false;
+            }
+            DetectionResult detectionResult = yoloProcessingService.createDetectionResult(video.path,
+                    video.originalFileName, video.cameraId, video.reader.getWidth(), video.reader.getHeight());
+            video.detectionResult = yoloProcessingService.markProcessing(detectionResult);
+            video.ownership.complete(true);
+        }
+        cancellations.open(video.detectionResult);
+        // The number of frames is unknown until the upload completes
+        yoloProcessingService.broadcastVideoProcessingStart(video.detectionResult, -1);
+        log.info("Started progressive processing of {} ({}x{})", video.detectionResult.getFileName(),
+                video.reader.getWidth(), video.reader.getHeight());
+        return true;
+    }
+
+    private void finish(ProgressiveVideo video, boolean owned) {
+        video.ownership.complete(owned);
+        video.finished = true;
+        if (video.detectionResult != null) {
+            cancellations.close(video.detectionResult.getId());
+        }
+        // Keep the entry until finalize so later chunks of an unsupported upload are ignored
+        if (video.complete || video.abandoned) {
+            videos.remove(video.uploadId, video);
+        }
+        try {
+            if (video.reader != null) {
+                video.reader.close();
+            }
+        } catch (Exception e) {
+            log.debug("Could not close reader of upload {}", video.uploadId);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private static final class ProgressiveVideo {
+        final String uploadId;
+        final Path path;
+        final String originalFileName;
+        final String cameraId;
+        final AtomicBoolean draining = new AtomicBoolean();
+        final CompletableFuture<Boolean> ownership = new CompletableFuture<>();
+        volatile long available;
+        volatile boolean complete;
+        volatile boolean abandoned;
+        volatile boolean finished;
+
+        // Only touched by the draining thread
+        FragmentedMp4Reader reader;
+        volatile DetectionResult detectionResult;
+        volatile int analyzedFrames;
+        int successfulFrames;
+
+        ProgressiveVideo(ChunkedUpload upload) {
+            this.uploadId = upload.getId();
+            this.path = Paths.get(upload.getFilePath());
+            this.originalFileName = upload.getOriginalFileName();
+            this.cameraId = upload.getCameraId();
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.wavestone.stacamback.service;
+
+import com.wavestone.stacamback.model.DetectionResult;
+import com.wavestone.stacamback.model.DetectionResultSaved;
+import com.wavestone.stacamback.repository.DetectionResultRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The most recent detection results of every camera, kept in memory so the initial WebSocket snapshot
+ * and {@code /results} do not query the database. Each camera has a fixed-size ring of slots updated
+ * with compare-and-set only: a save replaces the slot holding the same result, else the free or oldest
+ * slot. Every committed insert or update of a {@link DetectionResult} reaches the cache through
+ * {@link DetectionResultSaved} and is then announced to the {@link ResultChangeFeed}. In cluster mode
+ * other nodes save results too, so results that differ in the database are also picked up periodically.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RecentResultsCache {
+
+    private static final Comparator<DetectionResult> NEWEST_FIRST = Comparator
+            .comparing(DetectionResult::getProcessedAt, Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(DetectionResult::getId, Comparator.nullsLast(Comparator.reverseOrder()));
+
+    private final DetectionResultRepository repository;
+    private final ResultChangeFeed changeFeed;
+
+    @Value("${app.results.recent-per-camera:10}")
+    private int perCamera;
+
+    @Value("${app.results.recent-total:10}")
+    private int total;
+
+    @Value("${app.jobs.mode:local}")
+    private String jobsMode;
+
+    private final Map<String, Ring> rings = new ConcurrentHashMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        reload();
+        log.info("Recent results cache loaded for {} cameras", rings.size());
+    }
+
+    @Scheduled(fixedDelayString = "${app.results.cluster-refresh-interval:5000}", initialDelay = 5000)
+    public void refresh() {
+        if ("cluster".equalsIgnoreCase(jobsMode)) {
+            reload();
+        }
+    }
+
+    @EventListener
+    public void onSaved(DetectionResultSaved event) {
+        DetectionResult result = event.result();
+        if (result.getId() == null || result.getCameraId() == null) {
+            return;
+        }
+        store(result);
+    }
+
+    /**
+     * The most recent results over all cameras, newest first
+     */
+    public List<DetectionResult> getRecent() {
+        List<DetectionResult> results = new ArrayList<>();
+        for (Ring ring : rings.values()) {
+            ring.collect(results);
+        }
+        return newestFirst(results, total);
+    }
+
+    /**
+     * The most recent results of one camera, newest first
+     */
+    public List<DetectionResult> getRecent(String cameraId) {
+        Ring ring = rings.get(cameraId);
+        if (ring == null) {
+            return List.of();
+        }
+        List<DetectionResult> results = new ArrayList<>();
+        ring.collect(results);
+        return newestFirst(results, perCamera);
+    }
+
+    public Optional<DetectionResult> find(Long id) {
+        for (Ring ring : rings.values()) {
+            DetectionResult result = ring.find(id);
+            if (result != null) {
+                return Optional.of(result);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Bring the rings up to date with the database, as if every result that differs had just been saved
+     */
+    private void reload() {
+        for (String cameraId : repository.findCameraIds()) {
+            Ring ring = rings.get(cameraId);
+            for (DetectionResult result : repository.findByCameraIdOrderByProcessedAtDesc(cameraId,
+                    PageRequest.of(0, perCamera))) {
+                if (ring == null || !result.equals(ring.find(result.getId()))) {
+                    store(result);
+                }
+            }
+        }
+    }
+
+    private void store(DetectionResult result) {
+        rings.computeIfAbsent(result.getCameraId(), camera -> new Ring(perCamera)).put(copyOf(result));
+        changeFeed.changed(result.getCameraId());
+    }
+
+    private static List<DetectionResult> newestFirst(List<DetectionResult> results, int limit) {
+        // A result updated concurrently can briefly sit in two slots; keep the first copy found
+        Map<Long, DetectionResult> unique = new LinkedHashMap<>();
+        for (DetectionResult result : results) {
+            unique.putIfAbsent(result.getId(), result);
+        }
+        return unique.values().stream().sorted(NEWEST_FIRST).limit(limit).toList();
+    }
+
+    /**
+     * Entities are mutated after being saved, so the cache only ever hands out its own copies
+     */
+    private static DetectionResult copyOf(DetectionResult result) {
+        return new DetectionResult(result.getId(), result.getFileName(), result.getFileType(), result.getFilePath(),
+                result.getDetections(), result.getProcessedAt(), result.getStatus(), result.getErrorMessage(),
+                result.getWidth(), result.getHeight(), result.getCameraId(), result.getDeadline(),
+                result.getBatchId(), result.getCapturedAt());
+    }
+
+    /**
+     * Fixed-size set of the newest results of one camera, updated with compare-and-set on single slots
+     */
+    private static final class Ring {
+        private final AtomicReferenceArray<DetectionResult> slots;
+
+        Ring(int size) {
+            this.slots = new AtomicReferenceArray<>(Math.max(1, size));
+        }
+
+        void put(DetectionResult result) {
+            while (true) {
+                int freeSlot = -1;
+                int oldestSlot = -1;
+                DetectionResult oldest = null;
+                boolean retry = false;
+                for (int i = 0; i < slots.length(); i++) {
+                    DetectionResult current = slots.get(i);
+                    if (current == null) {
+                        if (freeSlot < 0) {
+                            freeSlot = i;
+                        }
+                    } else if (current.getId().equals(result.getId())) {
+                        if (slots.compareAndSet(i, current, result)) {
+                            return;
+                        }
+                        retry = true;
+                        break;
+                    } else if (oldest == null || NEWEST_FIRST.compare(current, oldest) > 0) {
+                        oldest = current;
+                        oldestSlot = i;
+                    }
+                }
+                if (retry) {
+                    continue;
+                }
+                if (freeSlot >= 0) {
+                    if (slots.compareAndSet(freeSlot, null, result)) {
+                        return;
+                    }
+                } else if (NEWEST_FIRST.compare(result, oldest) > 0) {
+                    return; // older than everything kept, e.g. a late update of an evicted result
+                } else if (slots.compareAndSet(oldestSlot, oldest, result)) {
+                    return;
+                }
+            }
+        }
+
+        void collect(List<DetectionResult> into) {
+            for (int i = 0; i < slots.length(); i++) {
+                DetectionResult result = slots.get(i);
+                if (result != null) {
+                    into.add(result);
+                }
+            }
+        }
+
+        DetectionResult find(Long id) {
+            for (int i = 0; i < slots.length(); i++) {
+                DetectionResult result = slots.get(i);
+                if (result != null && result.getId().equals(id)) {
+                    return result;
+                }
+            }
+            return null;
+        }
+    }
+}
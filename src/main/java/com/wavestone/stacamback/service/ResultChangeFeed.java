@@ -0,0 +1,109 @@
+package com.wavestone.stacamback.service;
+
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Monotonically increasing change sequence of the detection results. Every saved result takes the next
+ * sequence number, which also becomes the version of its camera, so conditional and long-poll requests
+ * can tell whether anything changed without touching the database. Sequences restart with the process,
+ * so versions are qualified with the start time of this instance.
+ */
+@Service
+public class ResultChangeFeed {
+
+    private static final String ANY_CAMERA = "*";
+
+    private final long epoch = System.currentTimeMillis();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<String, Long> cameraVersions = new ConcurrentHashMap<>();
+    private final Map<String, Set<CompletableFuture<Long>>> waiters = new ConcurrentHashMap<>();
+
+    /**
+     * Record a change of a camera's results and wake up the requests waiting for it
+     */
+    public void changed(String cameraId) {
+        long version = sequence.incrementAndGet();
+        cameraVersions.merge(cameraId, version, Math::max);
+        complete(cameraId, version);
+        complete(ANY_CAMERA, version);
+    }
+
+    public long getSequence() {
+        return sequence.get();
+    }
+
+    /**
+     * Sequence number of the last change of a camera, or of any camera when {@code cameraId} is null
+     */
+    public long getVersion(String cameraId) {
+        return cameraId == null ? sequence.get() : cameraVersions.getOrDefault(cameraId, 0L);
+    }
+
+    /**
+     * Entity tag of a version, unique across restarts of this instance
+     */
+    public String etag(long version) {
+        return "\"" + Long.toString(epoch, 36) + "-" + version + "\"";
+    }
+
+    /**
+     * Entity tag of a version of a response that also depends on {@code window}, such as a time range
+     */
+    public String etag(long version, long window) {
+        return "\"" + Long.toString(epoch, 36) + "-" + version + "-" + window + "\"";
+    }
+
+    /**
+     * Completes with the camera's version once it is past {@code after}, immediately if it already is or
+     * if {@code after} is beyond the sequence, i.e. was handed out before a restart. Callers that give up
+     * waiting hand the future back to {@link #cancel}.
+     */
+    public CompletableFuture<Long> nextChange(String cameraId, long after) {
+        CompletableFuture<Long> change = new CompletableFuture<>();
+        // Added inside compute so that a concurrent cancel cannot drop the set this waiter joins
+        waiters.compute(key(cameraId), (key, cameraWaiters) -> {
+            Set<CompletableFuture<Long>> joined = cameraWaiters != null ? cameraWaiters : ConcurrentHashMap.newKeySet();
+            joined.add(change);
+            return joined;
+        });
+        // Checked after registering so a change in between is not missed
+        long version = getVersion(cameraId);
+        if (version > after || after > sequence.get()) {
+            cancel(cameraId, change);
+            change.complete(version);
+        }
+        return change;
+    }
+
+    /**
+     * Stop waiting; the camera's waiter set is dropped once empty so unused keys do not accumulate
+     */
+    public void cancel(String cameraId, CompletableFuture<Long> change) {
+        waiters.computeIfPresent(key(cameraId), (key, cameraWaiters) -> {
+            cameraWaiters.remove(change);
+            return cameraWaiters.isEmpty() ? null : cameraWaiters;
+        });
+    }
+
+    private void complete(String key, long version) {
+        Set<CompletableFuture<Long>> cameraWaiters = waiters.get(key);
+        if (cameraWaiters == null || cameraWaiters.isEmpty()) {
+            return;
+        }
+        for (CompletableFuture<Long> change : cameraWaiters) {
+            if (cameraWaiters.remove(change)) {
+                change.complete(version);
+            }
+        }
+    }
+
+    private static String key(String cameraId) {
+        return cameraId == null ? ANY_CAMERA : cameraId;
+    }
+}
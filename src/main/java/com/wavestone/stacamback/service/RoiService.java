@@ -0,0 +1,204 @@
+package com.wavestone.stacamback.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.wavestone.stacamback.model.RoiPoint;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-camera region-of-interest polygons. Frames of a camera with a region are cropped to the region's
+ * bounding box before inference; the resulting boxes are mapped back to full-frame coordinates and
+ * detections whose center lies outside the polygon are dropped.
+ */
+@Service
+@Slf4j
+public class RoiService {
+
+    private final ObjectMapper objectMapper;
+    private final Map<String, List<RoiPoint>> regions = new ConcurrentHashMap<>();
+
+    public RoiService(ObjectMapper objectMapper, Environment environment) {
+        this.objectMapper = objectMapper;
+        // app.roi.<cameraId>=x1,y1 x2,y2 x3,y3 ...
+        Map<String, String> configured = Binder.get(environment)
+                .bind("app.roi", Bindable.mapOf(String.class, String.class))
+                .orElse(Map.of());
+        configured.forEach((cameraId, polygon) -> {
+            if (!polygon.isBlank()) {
+                setRegion(cameraId, parsePolygon(polygon));
+            }
+        });
+    }
+
+    public Map<String, List<RoiPoint>> getRegions() {
+        return new TreeMap<>(regions);
+    }
+
+    public Optional<List<RoiPoint>> getRegion(String cameraId) {
+        return Optional.ofNullable(regions.get(cameraId));
+    }
+
+    public void setRegion(String cameraId, List<RoiPoint> polygon) {
+        if (polygon == null || polygon.size() < 3) {
+            throw new IllegalArgumentException("A region needs at least 3 points");
+        }
+        for (RoiPoint point : polygon) {
+            if (point.getX() < 0 || point.getX() > 1 || point.getY() < 0 || point.getY() > 1) {
+                throw new IllegalArgumentException("Region points must be relative to the frame size (0 to 1)");
+            }
+        }
+        regions.put(cameraId, List.copyOf(polygon));
+        log.info("Region of interest for {} set to {} points", cameraId, polygon.size());
+    }
+
+    public boolean removeRegion(String cameraId) {
+        return regions.remove(cameraId) != null;
+    }
+
+    /**
+     * Whether the camera's frames are cropped and filtered; a region covering the whole frame changes nothing
+     */
+    public boolean isRestricted(String cameraId) {
+        List<RoiPoint> polygon = cameraId != null ? regions.get(cameraId) : null;
+        return polygon != null && !isFullFrame(polygon);
+    }
+
+    /**
+     * The polygon spans both axes and its area (shoelace formula) is the whole frame
+     */
+    private static boolean isFullFrame(List<RoiPoint> polygon) {
+        double area = 0;
+        for (int i = 0; i < polygon.size(); i++) {
+            RoiPoint point = polygon.get(i);
+            RoiPoint next = polygon.get((i + 1) % polygon.size());
+            area += point.getX() * next.getY() - next.getX() * point.getY();
+        }
+        return Math.abs(Math.abs(area) / 2 - 1) < 1e-9;
+    }
+
+    /**
+     * Write the part of an image covered by the camera's region to a temporary JPEG
+     *
+     * @return the crop to run inference on, or null if the camera has no region, its region is the whole
+     * frame or the image cannot be read
+     */
+    public Crop crop(String cameraId, String imagePath) throws IOException {
+        if (!isRestricted(cameraId)) {
+            return null;
+        }
+        List<RoiPoint> polygon = regions.get(cameraId);
+        BufferedImage image = ImageIO.read(new File(imagePath));
+        if (image == null) {
+            return null;
+        }
+
+        Path2D.Double mask = new Path2D.Double();
+        for (int i = 0; i < polygon.size(); i++) {
+            double x = polygon.get(i).getX() * image.getWidth();
+            double y = polygon.get(i).getY() * image.getHeight();
+            if (i == 0) {
+                mask.moveTo(x, y);
+            } else {
+                mask.lineTo(x, y);
+            }
+        }
+        mask.closePath();
+
+        Rectangle bounds = mask.getBounds().intersection(new Rectangle(image.getWidth(), image.getHeight()));
+        if (bounds.isEmpty()) {
+            bounds = new Rectangle(image.getWidth(), image.getHeight());
+        }
+
+        // Copy into an RGB image: JPEG cannot hold alpha and a sub-image would keep the full raster
+        BufferedImage cropped = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = cropped.createGraphics();
+        graphics.drawImage(image, -bounds.x, -bounds.y, null);
+        graphics.dispose();
+
+        String fileName = Paths.get(imagePath).getFileName().toString();
+        int dot = fileName.lastIndexOf('.');
+        Path cropPath = Paths.get(imagePath).resolveSibling(
+                (dot > 0 ? fileName.substring(0, dot) : fileName) + "_roi.jpg");
+        ImageIO.write(cropped, "jpg", cropPath.toFile());
+        return new Crop(cropPath, fileName, bounds.x, bounds.y, mask);
+    }
+
+    /**
+     * Map the YOLO output of a crop back to full-frame coordinates and drop detections outside the region
+     */
+    public String applyMask(Crop crop, String detectionsJson) {
+        try {
+            ObjectNode root = (ObjectNode) objectMapper.readTree(detectionsJson);
+            ArrayNode kept = objectMapper.createArrayNode();
+            for (JsonNode detection : root.path("detections")) {
+                JsonNode box = detection.path("boundingBox");
+                if (!(box instanceof ObjectNode boundingBox)) {
+                    continue;
+                }
+                double x = box.path("x").asDouble() + crop.offsetX();
+                double y = box.path("y").asDouble() + crop.offsetY();
+                boundingBox.put("x", x);
+                boundingBox.put("y", y);
+                if (crop.mask().contains(x + box.path("width").asDouble() / 2, y + box.path("height").asDouble() / 2)) {
+                    kept.add(detection);
+                }
+            }
+            root.set("detections", kept);
+            root.put("totalDetections", kept.size());
+            root.put("fileName", crop.originalFileName());
+            root.put("roiApplied", true);
+            return objectMapper.writeValueAsString(root);
+        } catch (Exception e) {
+            log.warn("Could not apply region of interest: {}", e.getMessage());
+            return detectionsJson;
+        }
+    }
+
+    public void deleteCrop(Crop crop) {
+        if (crop == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(crop.path());
+        } catch (IOException e) {
+            log.warn("Could not delete region crop {}", crop.path());
+        }
+    }
+
+    private static List<RoiPoint> parsePolygon(String polygon) {
+        List<RoiPoint> points = new ArrayList<>();
+        for (String point : polygon.trim().split("\\s+")) {
+            String[] coordinates = point.split(",");
+            if (coordinates.length != 2) {
+                throw new IllegalArgumentException("Invalid region point '" + point + "', expected x,y");
+            }
+            points.add(new RoiPoint(Double.parseDouble(coordinates[0]), Double.parseDouble(coordinates[1])));
+        }
+        return points;
+    }
+
+    /**
+     * Cropped image of a frame and where it lies within the frame
+     */
+    public record Crop(Path path, String originalFileName, int offsetX, int offsetY, Path2D mask) {
+    }
+}
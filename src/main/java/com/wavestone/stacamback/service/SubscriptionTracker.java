@@ -0,0 +1,142 @@
+package com.wavestone.stacamback.service;
+
+import com.wavestone.stacamback.model.SubscriptionOptions;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.util.AntPathMatcher;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps track of which broker destinations currently have subscribers, so that
+ * payload variants nobody listens to are never built or serialized. In broker-relay mode
+ * the destinations subscribed on other nodes are merged in from periodic announcements.
+ */
+@Service
+@Slf4j
+public class SubscriptionTracker {
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    // sessionId -> (subscriptionId -> destination)
+    private final Map<String, Map<String, String>> sessions = new ConcurrentHashMap<>();
+
+    // destination -> number of subscriptions
+    private final Map<String, AtomicInteger> destinationCounts = new ConcurrentHashMap<>();
+
+    // nodeId -> destinations subscribed on that node
+    private final Map<String, RemoteNode> remoteNodes = new ConcurrentHashMap<>();
+
+    public void subscribed(String sessionId, String subscriptionId, String destination) {
+        if (sessionId == null || subscriptionId == null || destination == null) {
+            return;
+        }
+        String previous = sessions.computeIfAbsent(sessionId, id -> new ConcurrentHashMap<>())
+                .put(subscriptionId, destination);
+        if (previous != null) {
+            decrement(previous);
+        }
+        destinationCounts.computeIfAbsent(destination, d -> new AtomicInteger()).incrementAndGet();
+        log.debug("Session {} subscribed to {}", sessionId, destination);
+    }
+
+    public void unsubscribed(String sessionId, String subscriptionId) {
+        Map<String, String> subscriptions = sessionId != null ? sessions.get(sessionId) : null;
+        if (subscriptions == null || subscriptionId == null) {
+            return;
+        }
+        String destination = subscriptions.remove(subscriptionId);
+        if (destination != null) {
+            decrement(destination);
+        }
+    }
+
+    public void disconnected(String sessionId) {
+        Map<String, String> subscriptions = sessionId != null ? sessions.remove(sessionId) : null;
+        if (subscriptions != null) {
+            subscriptions.values().forEach(this::decrement);
+        }
+    }
+
+    public boolean hasSubscribers(String destination) {
+        AtomicInteger count = destinationCounts.get(destination);
+        if (count != null && count.get() > 0) {
+            return true;
+        }
+        if (matchesPattern(destinationCounts.keySet(), destination)) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        for (RemoteNode node : remoteNodes.values()) {
+            if (node.expiresAt > now
+                    && (node.destinations.contains(destination) || matchesPattern(node.destinations, destination))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * All option combinations that currently have at least one subscriber for the base destination
+     */
+    public Set<SubscriptionOptions> activeOptions(String baseDestination) {
+        Set<SubscriptionOptions> active = new HashSet<>();
+        if (hasSubscribers(baseDestination)) {
+            active.add(SubscriptionOptions.DEFAULT);
+        }
+        String variantPrefix = baseDestination + ";";
+        destinationCounts.forEach((destination, count) -> {
+            if (count.get() > 0 && destination.startsWith(variantPrefix)) {
+                active.add(SubscriptionOptions.fromDestination(destination));
+            }
+        });
+        long now = System.currentTimeMillis();
+        for (RemoteNode node : remoteNodes.values()) {
+            if (node.expiresAt > now) {
+                for (String destination : node.destinations) {
+                    if (destination.startsWith(variantPrefix)) {
+                        active.add(SubscriptionOptions.fromDestination(destination));
+                    }
+                }
+            }
+        }
+        return active;
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Destinations with at least one subscriber on this node
+     */
+    public Set<String> getLocalDestinations() {
+        return new TreeSet<>(destinationCounts.keySet());
+    }
+
+    /**
+     * Replace the destinations announced by another node; they are forgotten after the time-to-live
+     */
+    public void updateRemoteNode(String nodeId, Collection<String> destinations, long timeToLiveMillis) {
+        remoteNodes.put(nodeId, new RemoteNode(Set.copyOf(destinations), System.currentTimeMillis() + timeToLiveMillis));
+        remoteNodes.values().removeIf(node -> node.expiresAt <= System.currentTimeMillis());
+    }
+
+    private boolean matchesPattern(Collection<String> subscribed, String destination) {
+        for (String candidate : subscribed) {
+            if (pathMatcher.isPattern(candidate) && pathMatcher.match(candidate, destination)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void decrement(String destination) {
+        destinationCounts.computeIfPresent(destination, (d, count) -> count.decrementAndGet() <= 0 ? null : count);
+    }
+
+    private record RemoteNode(Set<String> destinations, long expiresAt) {
+    }
+}
@@ -0,0 +1,131 @@
+package com.wavestone.stacamback.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wavestone.stacamback.model.TrackEvent;
+import com.wavestone.stacamback.model.TrackedObject;
+import com.wavestone.stacamback.model.TrackingUpdate;
+import com.wavestone.stacamback.model.YoloDetection;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps one {@link ObjectTracker} per frame stream (a video, a frame range of a video, or a live camera)
+ * and turns per-frame YOLO output into track events.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TrackingService {
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.tracking.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.tracking.iou-threshold:0.3}")
+    private double iouThreshold;
+
+    @Value("${app.tracking.move-iou-threshold:0.6}")
+    private double moveIouThreshold;
+
+    @Value("${app.tracking.min-hits:2}")
+    private int minHits;
+
+    @Value("${app.tracking.max-missed-frames:3}")
+    private int maxMissedFrames;
+
+    @Value("${app.tracking.keyframe-interval:10}")
+    private int keyframeInterval;
+
+    private final Map<String, ObjectTracker> trackers = new ConcurrentHashMap<>();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public static String videoStream(Long detectionResultId) {
+        return "video:" + detectionResultId;
+    }
+
+    public static String videoRangeStream(Long detectionResultId, int startFrame) {
+        return "video:" + detectionResultId + ":" + startFrame;
+    }
+
+    public static String liveStream(String cameraId) {
+        return "live:" + cameraId;
+    }
+
+    /**
+     * Feed the YOLO output of one frame to the stream's tracker
+     *
+     * @param trackIdPrefix prefix of new track IDs, so IDs from separately tracked ranges do not collide
+     */
+    public TrackingUpdate update(String stream, String trackIdPrefix, int frameIndex, String detectionsJson) {
+        ObjectTracker tracker = trackers.computeIfAbsent(stream, key -> new ObjectTracker(trackIdPrefix,
+                iouThreshold, moveIouThreshold, minHits, maxMissedFrames, keyframeInterval));
+        synchronized (tracker) {
+            return tracker.update(frameIndex, parseDetections(detectionsJson));
+        }
+    }
+
+    /**
+     * End a stream: adds the disappearance of every remaining track to {@code closingEvents} and
+     * returns all tracks the stream contained, as a compact summary of the video
+     */
+    public List<TrackedObject> close(String stream, List<TrackEvent> closingEvents) {
+        ObjectTracker tracker = trackers.remove(stream);
+        if (tracker == null) {
+            return List.of();
+        }
+        synchronized (tracker) {
+            closingEvents.addAll(tracker.close());
+            return tracker.getFinishedTracks();
+        }
+    }
+
+    /**
+     * Detections JSON in the YOLO output format, with the track ID of every active track
+     */
+    public String toDetectionsJson(List<TrackedObject> tracks) {
+        try {
+            List<Map<String, Object>> detections = new ArrayList<>();
+            for (TrackedObject track : tracks) {
+                Map<String, Object> detection = new LinkedHashMap<>();
+                detection.put("className", track.getClassName());
+                detection.put("confidence", track.getConfidence());
+                detection.put("boundingBox", track.getBoundingBox());
+                detection.put("trackId", track.getTrackId());
+                detections.add(detection);
+            }
+            Map<String, Object> root = new LinkedHashMap<>();
+            root.put("detections", detections);
+            root.put("totalDetections", detections.size());
+            return objectMapper.writeValueAsString(root);
+        } catch (Exception e) {
+            log.warn("Could not serialize tracked detections: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private List<YoloDetection> parseDetections(String detectionsJson) {
+        List<YoloDetection> detections = new ArrayList<>();
+        if (detectionsJson == null) {
+            return detections;
+        }
+        try {
+            JsonNode list = objectMapper.readTree(detectionsJson).path("detections");
+            for (JsonNode node : list) {
+                detections.add(objectMapper.treeToValue(node, YoloDetection.class));
+            }
+        } catch (Exception e) {
+            log.debug("Could not parse detections for tracking: {}", e.getMessage());
+        }
+        return detections;
+    }
+}
@@ -1,7 +1,15 @@
 package com.wavestone.stacamback.service;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wavestone.stacamback.config.PipelineExecutors;
+import com.wavestone.stacamback.model.CompactDetections;
 import com.wavestone.stacamback.model.DetectionResult;
+import com.wavestone.stacamback.model.FrameRangeResult;
+import com.wavestone.stacamback.model.TrackEvent;
+import com.wavestone.stacamback.model.TrackedObject;
+import com.wavestone.stacamback.model.TrackingUpdate;
 import com.wavestone.stacamback.model.WebSocketDetectionResponse;
 import com.wavestone.stacamback.repository.DetectionResultRepository;
 import lombok.RequiredArgsConstructor;
@@ -11,8 +19,9 @@ import org.jcodec.common.io.NIOUtils;
 import org.jcodec.common.model.Picture;
 import org.jcodec.scale.AWTUtil;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
 import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.imageio.ImageIO;
@@ -23,12 +32,19 @@ import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.Base64;
 
 @Service
@@ -37,15 +53,37 @@ import java.util.Base64;
 public class YoloProcessingService {
 
     private final DetectionResultRepository repository;
-    private final SimpMessagingTemplate messagingTemplate;
+    private final DetectionBroadcaster broadcaster;
     private final ObjectMapper objectMapper;
-
-    @Value("${app.upload.dir:uploads}")
-    private String uploadDir;
+    private final TrackingService trackingService;
+    private final DetectionRollupService rollupService;
+    private final RoiService roiService;
+    private final FramePreprocessor framePreprocessor;
+    private final PipelineExecutors pipelineExecutors;
+    private final MediaStorageService mediaStorageService;
+    private final RecentResultsCache recentResultsCache;
+    private final InferenceCache inferenceCache;
+    private final ModelCascade modelCascade;
+    private final CancellationRegistry cancellations;
+    private final MappingJackson2CborHttpMessageConverter cborConverter;
+    private final NativeVideoWorker nativeVideoWorker;
+
+    // Source frames between two analyzed frames at the assumed 25 fps source rate
+    public static final int FRAME_SAMPLE_INTERVAL = (int) Math.round(25.0 / 2.0);
+    public static final int MAX_EXTRACTED_FRAMES = 1500;
+
+    // Precedes the big-endian length and CBOR bytes of the result written with --format cbor
+    private static final byte[] CBOR_OUTPUT_MARKER = "\0YOLO-CBOR\0".getBytes(StandardCharsets.US_ASCII);
 
     @Value("${app.python.script.path:python_scripts/yolo_processor.py}")
     private String pythonScriptPath;
 
+    @Value("${app.inference.output-format:cbor}")
+    private String modelOutputFormat;
+
+    @Value("${app.inference.video-mode:stream}")
+    private String videoMode;
+
     @Value("${app.websocket.image.max-width:800}")
     private int maxImageWidth;
 
@@ -58,24 +96,79 @@ public class YoloProcessingService {
     @Value("${app.websocket.image.enabled:true}")
     private boolean imageWebSocketEnabled;
 
+    @Value("${app.websocket.image.delivery:url}")
+    private String imageDelivery;
+
+    @Value("${app.inference.jpeg-quality:0.9}")
+    private float frameQuality;
+
     public DetectionResult saveUploadedFile(MultipartFile file, String cameraId) throws IOException {
-        // Create upload directory if it doesn't exist
-        Path uploadPath = Paths.get(uploadDir);
-        if (!Files.exists(uploadPath)) {
-            Files.createDirectories(uploadPath);
-        }
+        return saveUploadedFile(file, cameraId, null);
+    }
 
+    /**
+     * @param deadline frames not analyzed by then are dropped, null for no deadline
+     */
+    public DetectionResult saveUploadedFile(MultipartFile file, String cameraId, LocalDateTime deadline) throws IOException {
         // Save file
-        String fileName = System.currentTimeMillis() + "_" + file.getOriginalFilename();
-        Path filePath = uploadPath.resolve(fileName);
+        Path filePath = mediaStorageService.newUploadPath(cameraId, file.getOriginalFilename());
         Files.copy(file.getInputStream(), filePath);
 
+        DetectionResult result = createDetectionResult(filePath, file.getOriginalFilename(), cameraId, null, null);
+        if (deadline != null) {
+            result.setDeadline(deadline);
+            result = save(result);
+        }
+        return result;
+    }
+
+    /**
+     * Create the PENDING detection record of a stored upload. Dimensions are read from the file unless given.
+     */
+    public DetectionResult createDetectionResult(Path filePath, String originalFileName, String cameraId,
+                                                 Integer width, Integer height) {
+        return save(newDetectionResult(filePath, originalFileName, cameraId, width, height));
+    }
+
+    /**
+     * Create the PENDING detection records of several stored uploads, inserted in one batched transaction
+     *
+     * @param files stored path and original file name of every upload
+     * @param captureTimes when the camera took the uploads whose capture time is known
+     * @param deadline frames not analyzed by then are dropped, null for no deadline
+     * @param batchId bulk upload the records belong to
+     */
+    public List<DetectionResult> createDetectionResults(Map<Path, String> files,
+                                                        Map<Path, LocalDateTime> captureTimes, String cameraId,
+                                                        LocalDateTime deadline, String batchId) {
+        List<DetectionResult> results = new ArrayList<>(files.size());
+        files.forEach((filePath, originalFileName) -> {
+            DetectionResult result = newDetectionResult(filePath, originalFileName, cameraId, null, null);
+            result.setDeadline(deadline);
+            result.setBatchId(batchId);
+            result.setCapturedAt(captureTimes.get(filePath));
+            results.add(result);
+        });
+        try (PipelineTrace.Stage stage = PipelineTrace.stage(PipelineTrace.SAVE)) {
+            return repository.saveAll(results);
+        }
+    }
+
+    /**
+     * Whether a file name has an image or video extension the model can process
+     */
+    public boolean isSupportedFile(String fileName) {
+        return fileName.contains(".") && !"UNKNOWN".equals(getFileType(fileName));
+    }
+
+    private DetectionResult newDetectionResult(Path filePath, String originalFileName, String cameraId,
+                                               Integer width, Integer height) {
+        String fileName = filePath.getFileName().toString();
+
         // Determine file type
-        String fileType = getFileType(file.getOriginalFilename());
+        String fileType = getFileType(originalFileName);
 
-        Integer width = null;
-        Integer height = null;
-        if (fileType.equals("IMAGE")) {
+        if (width == null && fileType.equals("IMAGE")) {
             try {
                 BufferedImage image = ImageIO.read(filePath.toFile());
                 if (image != null) {
@@ -85,7 +178,7 @@ public class YoloProcessingService {
             } catch (Exception e) {
                 log.warn("Could not read image dimensions for file: {}", fileName);
             }
-        } else if (fileType.equals("VIDEO")) {
+        } else if (width == null && fileType.equals("VIDEO")) {
             try {
                 // Extract video dimensions using JCodec
                 String[] dimensions = getVideoDimensionsWithJCodec(filePath.toString());
@@ -107,53 +200,202 @@ public class YoloProcessingService {
         result.setWidth(width);
         result.setHeight(height);
         result.setCameraId(cameraId);
-
-        return repository.save(result);
+        return result;
     }
 
     public CompletableFuture<DetectionResult> processWithYolo(DetectionResult detectionResult) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                // Update status to processing
-                detectionResult.setStatus("PROCESSING");
-                repository.save(detectionResult);
-
-                // Broadcast status update
-                broadcastDetectionUpdate(detectionResult);
+        return CompletableFuture.supplyAsync(() -> process(detectionResult), pipelineExecutors.getUploadExecutor());
+    }
 
-                // Check if it's a video file for frame-by-frame processing
-                if ("VIDEO".equals(detectionResult.getFileType())) {
-                    return processVideoFrameByFrame(detectionResult);
-                } else {
-                    return processSingleFile(detectionResult);
-                }
+    /**
+     * Process a whole upload on the calling thread
+     */
+    public DetectionResult process(DetectionResult detectionResult) {
+        CancellationToken token = cancellations.open(detectionResult);
+        try (PipelineTrace.Scope trace = PipelineTrace.open(detectionResult.getId(), detectionResult.getCameraId())) {
+            // Cancelled while waiting to be processed
+            DetectionResult stored = repository.findById(detectionResult.getId()).orElse(detectionResult);
+            if ("CANCELLED".equals(stored.getStatus())) {
+                return stored;
+            }
+            if (token.isExpired()) {
+                return markCancelled(detectionResult, "Deadline expired before processing started");
+            }
 
-            } catch (Exception e) {
-                detectionResult.setStatus("FAILED");
-                detectionResult.setErrorMessage(e.getMessage());
-                log.error("Error processing file with YOLO: {}", detectionResult.getFileName(), e);
+            // Update status to processing
+            markProcessing(detectionResult);
 
-                // Save final result
-                DetectionResult finalResult = repository.save(detectionResult);
-                // Broadcast final update
-                broadcastDetectionUpdate(finalResult);
-                return finalResult;
+            // Check if it's a video file for frame-by-frame processing
+            if ("VIDEO".equals(detectionResult.getFileType())) {
+                return processVideoFrameByFrame(detectionResult);
+            } else {
+                return processSingleFile(detectionResult);
             }
-        });
+
+        } catch (CancellationException e) {
+            return markCancelled(detectionResult, e.getMessage());
+        } catch (Exception e) {
+            detectionResult.setStatus("FAILED");
+            detectionResult.setErrorMessage(e.getMessage());
+            log.error("Error processing file with YOLO: {}", detectionResult.getFileName(), e);
+
+            // Save final result
+            DetectionResult finalResult = save(detectionResult);
+            // Broadcast final update
+            broadcastDetectionUpdate(finalResult);
+            return finalResult;
+        } finally {
+            cancellations.close(detectionResult.getId());
+        }
+    }
+
+    /**
+     * Move an upload to PROCESSING and broadcast the status change
+     */
+    public DetectionResult markProcessing(DetectionResult detectionResult) {
+        detectionResult.setStatus("PROCESSING");
+        DetectionResult saved = save(detectionResult);
+        broadcastDetectionUpdate(saved);
+        return saved;
+    }
+
+    /**
+     * Analyze the frames of a video within a range of source frames, broadcasting each frame as it
+     * completes. Used by frame-range sub-jobs; the caller completes the upload once all ranges are done.
+     */
+    public FrameRangeResult processVideoRange(DetectionResult detectionResult, int startFrame, int endFrame) throws Exception {
+        log.info("Processing frames {}-{} of video: {}", startFrame, endFrame, detectionResult.getFileName());
+        CancellationToken token = cancellations.open(detectionResult);
+        List<String> frameFiles = List.of();
+        // Ranges may run on different nodes, so each one is tracked on its own
+        String trackingStream = TrackingService.videoRangeStream(detectionResult.getId(), startFrame);
+        try (PipelineTrace.Scope trace = PipelineTrace.open(detectionResult.getId(), detectionResult.getCameraId())) {
+            frameFiles = extractFramesFromVideo(detectionResult.getFilePath(), startFrame, endFrame,
+                    MAX_EXTRACTED_FRAMES, token);
+            int successfulFrames = processFrames(detectionResult, frameFiles, startFrame / FRAME_SAMPLE_INTERVAL,
+                    trackingStream, startFrame + "-");
+            return new FrameRangeResult(frameFiles.size(), successfulFrames);
+        } finally {
+            cleanupFrameFiles(frameFiles);
+            closeTracking(detectionResult, trackingStream);
+            cancellations.close(detectionResult.getId());
+        }
+    }
+
+    /**
+     * Mark a video processed through frame-range sub-jobs as completed and broadcast the completion
+     */
+    public DetectionResult completeVideo(DetectionResult detectionResult, int totalFrames, int successfulFrames) {
+        return completeVideo(detectionResult, totalFrames, successfulFrames, null);
+    }
+
+    /**
+     * Mark a video as completed, storing the objects tracked through it instead of per-frame detections
+     *
+     * @param tracks tracks returned by {@link #closeTracking}, or null if the video was not tracked as a whole
+     */
+    public DetectionResult completeVideo(DetectionResult detectionResult, int totalFrames, int successfulFrames,
+                                         List<TrackedObject> tracks) {
+        detectionResult.setStatus("COMPLETED");
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("message", "Video processed frame by frame");
+        summary.put("totalFrames", totalFrames);
+        summary.put("successfulFrames", successfulFrames);
+        if (successfulFrames < totalFrames && detectionResult.getDeadline() != null
+                && LocalDateTime.now().isAfter(detectionResult.getDeadline())) {
+            summary.put("deadlineExpired", true);
+        }
+        if (tracks != null) {
+            summary.put("totalTracks", tracks.size());
+            summary.put("tracks", tracks);
+        }
+        try {
+            detectionResult.setDetections(objectMapper.writeValueAsString(summary));
+        } catch (Exception e) {
+            log.warn("Could not serialize video summary for {}: {}", detectionResult.getFileName(), e.getMessage());
+        }
+        broadcastVideoProcessingComplete(detectionResult, totalFrames, successfulFrames);
+        return save(detectionResult);
+    }
+
+    /**
+     * End the tracking of a frame stream, broadcasting the disappearance of every object still in view
+     *
+     * @return every track of the stream, or null if tracking is disabled
+     */
+    public List<TrackedObject> closeTracking(DetectionResult detectionResult, String trackingStream) {
+        if (!trackingService.isEnabled()) {
+            return null;
+        }
+        List<TrackEvent> events = new ArrayList<>();
+        List<TrackedObject> tracks = trackingService.close(trackingStream, events);
+        if (!events.isEmpty()) {
+            broadcastTrackEvents(detectionResult, null, events);
+        }
+        return tracks;
+    }
+
+    /**
+     * Mark an upload as failed outside of normal processing (e.g. its job was abandoned) and broadcast it
+     */
+    public DetectionResult markFailed(DetectionResult detectionResult, String errorMessage) {
+        detectionResult.setStatus("FAILED");
+        detectionResult.setErrorMessage(errorMessage);
+        DetectionResult saved = save(detectionResult);
+        broadcastDetectionUpdate(saved);
+        return saved;
+    }
+
+    /**
+     * Mark an upload as cancelled (on request or because its deadline passed) and broadcast it
+     */
+    public DetectionResult markCancelled(DetectionResult detectionResult, String reason) {
+        detectionResult.setStatus("CANCELLED");
+        detectionResult.setErrorMessage(reason);
+        DetectionResult saved = save(detectionResult);
+        broadcastDetectionUpdate(saved);
+        log.info("Processing of {} cancelled: {}", detectionResult.getFileName(), reason);
+        return saved;
+    }
+
+    public DetectionResult failVideo(DetectionResult detectionResult, String errorMessage) {
+        detectionResult.setStatus("FAILED");
+        detectionResult.setErrorMessage("Error in frame-by-frame processing: " + errorMessage);
+        broadcastVideoProcessingFailed(detectionResult, errorMessage);
+        return save(detectionResult);
+    }
+
+    /**
+     * Number of source frames in a video, or -1 if it cannot be determined
+     */
+    public int getVideoFrameCount(String filePath) {
+        try {
+            FrameGrab grab = FrameGrab.createFrameGrab(NIOUtils.readableChannel(new File(filePath)));
+            return grab.getVideoTrack().getMeta().getTotalFrames();
+        } catch (Exception e) {
+            log.warn("Could not read frame count for video: {}", filePath);
+            return -1;
+        }
     }
 
     /**
      * Process a single image file (original logic)
      */
     private DetectionResult processSingleFile(DetectionResult detectionResult) {
+        CancellationToken token = cancellations.get(detectionResult.getId());
+        RoiService.Crop crop = null;
         try {
             // Update status to processing
             detectionResult.setStatus("PROCESSING");
-            repository.save(detectionResult);
+            save(detectionResult);
 
             // Broadcast status update
             broadcastDetectionUpdate(detectionResult);
 
+            // Only the camera's region of interest is analyzed
+            crop = roiService.crop(detectionResult.getCameraId(), detectionResult.getFilePath());
+            String inferencePath = crop != null ? crop.path().toString() : detectionResult.getFilePath();
+
             // Call Python YOLO script - try multiple Python commands
             ProcessBuilder processBuilder = null;
             String[] pythonCommands = {"python", "py", "python3", "python.exe"};
@@ -161,7 +403,8 @@ public class YoloProcessingService {
             for (String pythonCmd : pythonCommands) {
                 try {
                     processBuilder = new ProcessBuilder(
-                            pythonCmd, pythonScriptPath, detectionResult.getFilePath()
+                            pythonCmd, pythonScriptPath, inferencePath, "--format", modelOutputFormat,
+                            "--model", modelCascade.getFastModel()
                     );
                     processBuilder.redirectErrorStream(true);
 
@@ -184,41 +427,59 @@ public class YoloProcessingService {
                 throw new RuntimeException("Python is not installed or not accessible. Please install Python and ensure it's in your PATH.");
             }
 
-            Process process = processBuilder.start();
-
-            // Read Python script output
-            StringBuilder output = new StringBuilder();
+            // Read Python script output, which may end with a binary result
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
             StringBuilder errorOutput = new StringBuilder();
+            int exitCode;
 
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(process.getInputStream()));
-                 BufferedReader errorReader = new BufferedReader(
-                         new InputStreamReader(process.getErrorStream()))) {
-
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    output.append(line).append("\n");
-                }
+            // Concurrent model runs are capped by permits, not by the size of the calling pool
+            ProcessBuilder command = processBuilder;
+            exitCode = pipelineExecutors.runInference(token, () -> {
+                long startTime = System.currentTimeMillis();
+                Process process = command.start();
+                token.register(process);
+                try (PipelineTrace.Stage stage = PipelineTrace.stage(PipelineTrace.INFERENCE)) {
+                    try (InputStream stdout = process.getInputStream();
+                         BufferedReader errorReader = new BufferedReader(
+                                 new InputStreamReader(process.getErrorStream()))) {
+
+                        stdout.transferTo(output);
+
+                        String errorLine;
+                        while ((errorLine = errorReader.readLine()) != null) {
+                            errorOutput.append(errorLine).append("\n");
+                        }
+                    }
 
-                String errorLine;
-                while ((errorLine = errorReader.readLine()) != null) {
-                    errorOutput.append(errorLine).append("\n");
+                    int processExitCode = process.waitFor();
+                    modelCascade.record(modelCascade.getFastModel(), System.currentTimeMillis() - startTime,
+                            processExitCode != 0);
+                    return processExitCode;
+                } finally {
+                    token.unregister(process);
                 }
-            }
-
-            int exitCode = process.waitFor();
+            });
+            // A cancelled run was killed; that is not a failure of the script
+            token.throwIfCancelled();
 
             if (exitCode == 0) {
                 // Parse YOLO results from Python output
-                String rawOutput = output.toString().trim();
+                String rawOutput = output.toString(StandardCharsets.UTF_8).trim();
 
-                // Extract JSON from output (YOLO may still output some info)
-                String jsonOutput = extractJsonFromOutput(rawOutput);
+                // Extract the result from output (YOLO may still output some info)
+                String jsonOutput = readModelOutput(output.toByteArray());
 
                 // Validate that we got valid JSON
                 if (jsonOutput != null && jsonOutput.startsWith("{") && jsonOutput.endsWith("}")) {
+                    // Uncertain detections are checked by the accurate model
+                    jsonOutput = modelCascade.escalate(jsonOutput, model -> runModel(inferencePath, model, token));
+                    if (crop != null) {
+                        jsonOutput = roiService.applyMask(crop, jsonOutput);
+                    }
                     detectionResult.setDetections(jsonOutput);
                     detectionResult.setStatus("COMPLETED");
+                    rollupService.record(detectionResult.getCameraId(), detectionResult.getCapturedAt(), jsonOutput,
+                            null);
                     log.info("YOLO processing completed for file: {}", detectionResult.getFileName());
                 } else {
                     detectionResult.setStatus("FAILED");
@@ -228,20 +489,29 @@ public class YoloProcessingService {
             } else {
                 detectionResult.setStatus("FAILED");
                 String errorMessage = "Python script failed with exit code: " + exitCode +
-                        "\nStdout: " + output.toString() +
+                        "\nStdout: " + output.toString(StandardCharsets.UTF_8) +
                         "\nStderr: " + errorOutput.toString();
                 detectionResult.setErrorMessage(errorMessage);
                 log.error("YOLO processing failed for file: {} - {}", detectionResult.getFileName(), errorMessage);
             }
 
         } catch (Exception e) {
-            detectionResult.setStatus("FAILED");
-            detectionResult.setErrorMessage(e.getMessage());
-            log.error("Error processing file with YOLO: {}", detectionResult.getFileName(), e);
+            if (e instanceof CancellationException || token.isCancelled()) {
+                // Killing the model process also breaks its output streams
+                detectionResult.setStatus("CANCELLED");
+                detectionResult.setErrorMessage(token.isCancelled() ? token.getReason() : e.getMessage());
+                log.info("Processing of {} cancelled: {}", detectionResult.getFileName(), detectionResult.getErrorMessage());
+            } else {
+                detectionResult.setStatus("FAILED");
+                detectionResult.setErrorMessage(e.getMessage());
+                log.error("Error processing file with YOLO: {}", detectionResult.getFileName(), e);
+            }
+        } finally {
+            roiService.deleteCrop(crop);
         }
 
         // Save final result
-        DetectionResult finalResult = repository.save(detectionResult);
+        DetectionResult finalResult = save(detectionResult);
 
         // Broadcast final update
         broadcastDetectionUpdate(finalResult);
@@ -249,24 +519,33 @@ public class YoloProcessingService {
         return finalResult;
     }
 
+    private DetectionResult save(DetectionResult detectionResult) {
+        try (PipelineTrace.Stage stage = PipelineTrace.stage(PipelineTrace.SAVE)) {
+            return repository.save(detectionResult);
+        }
+    }
+
     private void broadcastDetectionUpdate(DetectionResult result) {
         try {
             WebSocketDetectionResponse response = new WebSocketDetectionResponse(result);
-            
+            Callable<String> image = null;
+            if (result.getFilePath() != null) {
+                response.setMediaUrl(MediaStorageService.mediaUrl(result.getId()));
+            }
+
             // Add image data if it's an image file and processing is completed
             if ("IMAGE".equals(result.getFileType()) && "COMPLETED".equals(result.getStatus())) {
-                try {
-                    String imageBase64 = convertImageToBase64(result.getFilePath());
-                    String mimeType = getMimeTypeFromFileName(result.getFileName());
-                    
-                    response.setImageBase64(imageBase64);
-                    response.setMimeType(mimeType);
-                } catch (Exception e) {
-                    log.warn("Could not convert image to Base64 for file: {}", result.getFileName(), e);
+                response.setMimeType(getMimeTypeFromFileName(result.getFileName()));
+                if (!isUrlDelivery()) {
+                    image = () -> convertImageToBase64(result.getFilePath());
+                } else if (imageWebSocketEnabled) {
+                    // The preview is only rendered once a client requests it
+                    image = () -> MediaStorageService.uploadPreviewUrl(result.getId());
                 }
             }
-            
-            messagingTemplate.convertAndSend("/topic/detections", response);
+
+            Map<String, Object> message = objectMapper.convertValue(response, new TypeReference<LinkedHashMap<String, Object>>() {});
+            broadcaster.publishStatus(result.getCameraId(), result.getId(), message, image);
         } catch (Exception e) {
             log.error("Failed to broadcast detection update", e);
         }
@@ -275,39 +554,136 @@ public class YoloProcessingService {
     /**
      * Convert image file to compressed Base64 string with resizing and quality control
      */
-    private String convertImageToBase64(String filePath) throws IOException {
+    public String convertImageToBase64(String filePath) throws IOException {
         if (!imageWebSocketEnabled) {
             return null; // Skip image processing if disabled
         }
+        return Base64.getEncoder().encodeToString(createPreview(filePath));
+    }
+
+    /**
+     * Image reference for a broadcast of a live frame or other image that is not kept: a preview URL or,
+     * with {@code app.websocket.image.delivery=base64}, the Base64 preview itself
+     */
+    public Callable<String> previewImage(String filePath) {
+        if (isUrlDelivery()) {
+            return () -> imageWebSocketEnabled ? storePreview(filePath, false) : null;
+        }
+        return () -> convertImageToBase64(filePath);
+    }
 
+    /**
+     * Preview of an image upload, rendered on first request and kept until the storage sweeper expires it
+     */
+    public Optional<Path> getUploadPreview(DetectionResult result) throws IOException {
+        if (!"IMAGE".equals(result.getFileType()) || result.getFilePath() == null
+                || !Files.isRegularFile(Paths.get(result.getFilePath()))) {
+            return Optional.empty();
+        }
+        String previewName = "upload_" + result.getId() + ".jpg";
+        Optional<Path> stored = mediaStorageService.findPreview(previewName);
+        if (stored.isPresent()) {
+            return stored;
+        }
+        Path preview = mediaStorageService.newPreviewPath(previewName);
+        // Written aside and moved into place, so concurrent requests never serve a partial file
+        Path temporary = Files.createTempFile(preview.getParent(), previewName, ".tmp");
+        try {
+            Files.write(temporary, createPreview(result.getFilePath()));
+            Files.move(temporary, preview, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        return Optional.of(preview);
+    }
+
+    private boolean isUrlDelivery() {
+        return "url".equalsIgnoreCase(imageDelivery);
+    }
+
+    /**
+     * Store the preview of a frame for the media endpoint; reduced frames are linked as written
+     *
+     * @return the URL of the preview
+     */
+    private String storePreview(String framePath, boolean reduced) throws IOException {
+        String previewName = UUID.randomUUID() + ".jpg";
+        Path preview = mediaStorageService.newPreviewPath(previewName);
+        if (reduced) {
+            try {
+                // The frame file is deleted after analysis, the link keeps its bytes without a copy
+                Files.createLink(preview, Paths.get(framePath));
+            } catch (IOException | UnsupportedOperationException e) {
+                Files.copy(Paths.get(framePath), preview);
+            }
+        } else {
+            Files.write(preview, createPreview(framePath));
+        }
+        return MediaStorageService.previewUrl(previewName);
+    }
+
+    /**
+     * Decode an image, scale it down to the preview size and encode it as JPEG
+     */
+    private byte[] createPreview(String filePath) throws IOException {
         try {
             // Read the original image
-            BufferedImage originalImage = ImageIO.read(new File(filePath));
+            BufferedImage originalImage;
+            try (PipelineTrace.Stage stage = PipelineTrace.stage(PipelineTrace.DECODE)) {
+                originalImage = ImageIO.read(new File(filePath));
+            }
             if (originalImage == null) {
                 throw new IOException("Could not read image file: " + filePath);
             }
 
             // Resize image if it's too large
-            BufferedImage resizedImage = resizeImageIfNeeded(originalImage);
+            BufferedImage resizedImage;
+            try (PipelineTrace.Stage stage = PipelineTrace.stage(PipelineTrace.CONVERT)) {
+                resizedImage = resizeImageIfNeeded(originalImage);
+            }
 
             // Compress the image to reduce size
-            byte[] compressedImageBytes = compressImage(resizedImage);
-
-            // Convert to Base64
-            String base64 = Base64.getEncoder().encodeToString(compressedImageBytes);
+            byte[] compressedImageBytes;
+            try (PipelineTrace.Stage stage = PipelineTrace.stage(PipelineTrace.ENCODE)) {
+                compressedImageBytes = compressImage(resizedImage, imageQuality);
+            }
 
             log.debug("Image conversion: Original size ~{}KB, Compressed size ~{}KB, Compression ratio: {:.2f}%",
                     Files.size(Paths.get(filePath)) / 1024,
                     compressedImageBytes.length / 1024,
                     (double) compressedImageBytes.length / Files.size(Paths.get(filePath)) * 100);
 
-            return base64;
+            return compressedImageBytes;
         } catch (Exception e) {
             log.error("Failed to convert and compress image: {}", filePath, e);
             throw new IOException("Image conversion failed: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Image reference for a broadcast of an extracted video frame, see {@link #previewImage}
+     */
+    private Callable<String> framePreviewImage(String framePath) {
+        if (isUrlDelivery()) {
+            return () -> imageWebSocketEnabled ? storePreview(framePath, framePreprocessor.isEnabled()) : null;
+        }
+        return () -> convertFrameToBase64(framePath);
+    }
+
+    /**
+     * Base64 preview of an extracted video frame. Reduced frames are already small JPEGs and are sent as
+     * written instead of being decoded, resized and encoded again.
+     */
+    private String convertFrameToBase64(String framePath) throws IOException {
+        if (!imageWebSocketEnabled) {
+            return null;
+        }
+        if (!framePreprocessor.isEnabled()) {
+            return convertImageToBase64(framePath);
+        }
+        return Base64.getEncoder().encodeToString(Files.readAllBytes(Paths.get(framePath)));
+    }
+
     /**
      * Resize image if it exceeds maximum dimensions
      */
@@ -349,7 +725,7 @@ public class YoloProcessingService {
     /**
      * Compress image with specified quality
      */
-    private byte[] compressImage(BufferedImage image) throws IOException {
+    private byte[] compressImage(BufferedImage image, float quality) throws IOException {
         ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
 
         // Get JPEG writer
@@ -363,7 +739,7 @@ public class YoloProcessingService {
 
         // Set compression quality
         param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-        param.setCompressionQuality(imageQuality);
+        param.setCompressionQuality(quality);
 
         // Write compressed image
         try (ImageOutputStream imageOutputStream = ImageIO.createImageOutputStream(outputStream)) {
@@ -417,13 +793,62 @@ public class YoloProcessingService {
     }
 
     public List<DetectionResult> getRecentDetections() {
-        return repository.findTop10ByOrderByProcessedAtDesc();
+        return recentResultsCache.getRecent();
+    }
+
+    public List<DetectionResult> getRecentDetections(String cameraId) {
+        return recentResultsCache.getRecent(cameraId);
+    }
+
+    public Optional<DetectionResult> getDetection(Long id) {
+        return recentResultsCache.find(id).or(() -> repository.findById(id));
     }
 
     public List<DetectionResult> getDetectionsSince(LocalDateTime since) {
         return repository.findRecentDetections(since);
     }
 
+    /**
+     * Result JSON from the model output: the CBOR result the script writes after {@link #CBOR_OUTPUT_MARKER}
+     * in the compact layout, or JSON text for scripts writing JSON
+     */
+    private String readModelOutput(byte[] output) {
+        try (PipelineTrace.Stage stage = PipelineTrace.stage(PipelineTrace.PARSE)) {
+            return decodeModelOutput(output);
+        }
+    }
+
+    private String decodeModelOutput(byte[] output) {
+        int marker = lastIndexOf(output, CBOR_OUTPUT_MARKER);
+        if (marker < 0) {
+            return extractJsonFromOutput(new String(output, StandardCharsets.UTF_8).trim());
+        }
+        int start = marker + CBOR_OUTPUT_MARKER.length + 4;
+        if (start > output.length) {
+            return null;
+        }
+        int length = ByteBuffer.wrap(output, marker + CBOR_OUTPUT_MARKER.length, 4).getInt();
+        if (length < 0 || start + length > output.length) {
+            return null;
+        }
+        try {
+            JsonNode compact = cborConverter.getObjectMapper().readTree(output, start, length);
+            return objectMapper.writeValueAsString(CompactDetections.expand(compact));
+        } catch (IOException e) {
+            log.warn("Could not decode CBOR model output: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static int lastIndexOf(byte[] data, byte[] pattern) {
+        for (int i = data.length - pattern.length; i >= 0; i--) {
+            if (Arrays.equals(data, i, i + pattern.length, pattern, 0, pattern.length)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     /**
      * Extract JSON from Python script output that may contain YOLO debug information
      */
@@ -477,30 +902,37 @@ public class YoloProcessingService {
     }
 
     /**
-     * Extract frames from video at 1-second intervals using JCodec with improved efficiency
+     * Extract at most maxFrames sampled frames whose source frame index lies in [startFrame, endFrame).
+     * Decoding stops when the token is cancelled (frames written so far are deleted) or its deadline passes.
      */
-    private List<String> extractFramesFromVideo(String videoPath) throws Exception {
+    private List<String> extractFramesFromVideo(String videoPath, int startFrame, int endFrame, int maxFrames,
+                                                CancellationToken token) throws Exception {
         List<String> frameFiles = new ArrayList<>();
 
         try {
             File videoFile = new File(videoPath);
             FrameGrab grab = FrameGrab.createFrameGrab(NIOUtils.readableChannel(videoFile));
-
-            // Create frames directory
-            Path framesDir = Paths.get(uploadDir, "frames");
-            if (!Files.exists(framesDir)) {
-                Files.createDirectories(framesDir);
+            if (startFrame > 0) {
+                grab.seekToFramePrecise(startFrame);
             }
 
             // Get video metadata for more accurate frame extraction
             double fps = 25.0; // Default fallback, try to get actual FPS if possible
-            int frameNumber = 0;
-            int targetFrameInterval = (int) Math.round(fps / 2.0); // Extract every N frames for 5 fps (0.2 second intervals)
+            int frameNumber = startFrame;
+            int targetFrameInterval = FRAME_SAMPLE_INTERVAL; // Extract every N frames for 5 fps (0.2 second intervals)
 
             log.info("Starting frame extraction from video: {} (estimated fps: {}, extracting at 5 fps)", videoPath, fps);
 
-            Picture picture;
-            while ((picture = grab.getNativeFrame()) != null && frameFiles.size() < 1500) { // Limit to 5 minutes max at 5 fps
+            while (frameNumber < endFrame && !token.isExpired()
+                    && frameFiles.size() < maxFrames) {
+                Picture picture;
+                try (PipelineTrace.Stage stage = PipelineTrace.stage(PipelineTrace.DECODE, frameNumber + 1)) {
+                    picture = grab.getNativeFrame();
+                }
+                if (picture == null) {
+                    break;
+                }
+                token.throwIfCancelled();
                 frameNumber++;
 
                 // Extract frame at 0.2-second intervals (5 fps)
@@ -508,20 +940,11 @@ public class YoloProcessingService {
                     double secondsExtracted = frameNumber / fps;
 
                     try {
-                        // Convert Picture to BufferedImage more efficiently
-                        BufferedImage bufferedImage = AWTUtil.toBufferedImage(picture);
-
-                        // Create unique frame filename
-                        String frameFileName = String.format("frame_%d_%.1fs_%d.jpg",
-                                System.currentTimeMillis(), secondsExtracted, frameNumber);
-                        Path framePath = framesDir.resolve(frameFileName);
-
-                        // Write frame with good quality
-                        ImageIO.write(bufferedImage, "jpg", framePath.toFile());
-                        frameFiles.add(framePath.toString());
+                        String framePath = saveVideoFrame(picture, frameNumber);
+                        frameFiles.add(framePath);
 
                         log.debug("Extracted frame at {:.1f}s (frame #{}): {}",
-                                secondsExtracted, frameNumber, frameFileName);
+                                secondsExtracted, frameNumber, framePath);
 
                     } catch (Exception e) {
                         log.warn("Failed to extract frame at {:.1f}s: {}", frameNumber / fps, e.getMessage());
@@ -532,6 +955,9 @@ public class YoloProcessingService {
 
             log.info("Successfully extracted {} frames from video: {}", frameFiles.size(), videoPath);
 
+        } catch (CancellationException e) {
+            cleanupFrameFiles(frameFiles);
+            throw e;
         } catch (Exception e) {
             log.error("Error extracting frames from video: {}", videoPath, e);
             throw new Exception("Frame extraction failed: " + e.getMessage(), e);
@@ -540,20 +966,71 @@ public class YoloProcessingService {
         return frameFiles;
     }
 
+    /**
+     * Write a decoded video frame as JPEG into the frames directory, reduced to the model input size
+     *
+     * @return path of the written frame file
+     */
+    public String saveVideoFrame(Picture picture, int frameNumber) throws IOException {
+        // Create unique frame filename
+        String frameFileName = String.format("frame_%d_%.1fs_%d.jpg",
+                System.currentTimeMillis(), frameNumber / 25.0, frameNumber);
+        Path framePath = mediaStorageService.newFramePath(frameFileName);
+
+        // Downsample once; the reduced frame feeds both inference and the WebSocket preview
+        BufferedImage frame;
+        try (PipelineTrace.Stage stage = PipelineTrace.stage(PipelineTrace.CONVERT, frameNumber)) {
+            frame = framePreprocessor.resize(AWTUtil.toBufferedImage(picture), framePath.toString());
+        }
+        try (PipelineTrace.Stage stage = PipelineTrace.stage(PipelineTrace.ENCODE, frameNumber)) {
+            if (framePreprocessor.isEnabled()) {
+                Files.write(framePath, compressImage(frame, frameQuality));
+            } else {
+                // Write frame with good quality
+                ImageIO.write(frame, "jpg", framePath.toFile());
+            }
+        }
+        return framePath.toString();
+    }
+
     /**
      * Enhanced frame processing with better error handling and streaming
      */
     private DetectionResult processVideoFrameByFrame(DetectionResult detectionResult) {
+        CancellationToken token = cancellations.get(detectionResult.getId());
+        List<String> frameFiles = List.of();
         try {
             log.info("Starting frame-by-frame processing for video: {}", detectionResult.getFileName());
+            String trackingStream = TrackingService.videoStream(detectionResult.getId());
+
+            int streamedFrames = 0;
+            int successfulFrames = 0;
+            int resumeFrame = 0;
+            boolean started = false;
+            if (useNativeVideoWorker(detectionResult)) {
+                StreamedVideo streamed = streamVideo(detectionResult, token, trackingStream);
+                NativeVideoWorker.Outcome outcome = streamed.outcome();
+                if (outcome.complete()) {
+                    List<TrackedObject> tracks = closeTracking(detectionResult, trackingStream);
+                    return completeVideo(detectionResult, outcome.analyzedFrames(), streamed.successfulFrames(),
+                            tracks);
+                }
+                log.warn("Native video worker stopped after {} frames of {} ({}), continuing with JCodec",
+                        outcome.analyzedFrames(), detectionResult.getFileName(), outcome.errorMessage());
+                streamedFrames = outcome.analyzedFrames();
+                successfulFrames = streamed.successfulFrames();
+                resumeFrame = outcome.lastSourceFrame();
+                started = streamed.started();
+            }
 
-            // Extract frames at 1-second intervals
-            List<String> frameFiles = extractFramesFromVideo(detectionResult.getFilePath());
+            // Extract the rest of the frame budget, after the frames the native worker already analyzed
+            frameFiles = extractFramesFromVideo(detectionResult.getFilePath(), resumeFrame, Integer.MAX_VALUE,
+                    MAX_EXTRACTED_FRAMES - streamedFrames, token);
 
-            if (frameFiles.isEmpty()) {
+            if (frameFiles.isEmpty() && streamedFrames == 0) {
                 detectionResult.setStatus("FAILED");
                 detectionResult.setErrorMessage("Could not extract any frames from video");
-                repository.save(detectionResult);
+                save(detectionResult);
                 broadcastDetectionUpdate(detectionResult);
                 return detectionResult;
             }
@@ -562,109 +1039,310 @@ public class YoloProcessingService {
                     frameFiles.size(), detectionResult.getFileName());
 
             // Broadcast processing start
-            broadcastVideoProcessingStart(detectionResult, frameFiles.size());
+            if (!started) {
+                broadcastVideoProcessingStart(detectionResult, frameFiles.size());
+            }
 
             // Process each frame and send real-time updates
-            int successfulFrames = 0;
-            for (int i = 0; i < frameFiles.size(); i++) {
-                String frameFile = frameFiles.get(i);
-                int frameSecond = i + 1;
+            successfulFrames += processFrames(detectionResult, frameFiles, streamedFrames, trackingStream, "");
+            List<TrackedObject> tracks = closeTracking(detectionResult, trackingStream);
 
-                try {
-                    // Process this frame with YOLO
-                    long startTime = System.currentTimeMillis();
-                    String frameDetections = processFrameWithYolo(frameFile);
-                    long processingTime = System.currentTimeMillis() - startTime;
+            // Mark video processing as completed, broadcast and save
+            return completeVideo(detectionResult, streamedFrames + frameFiles.size(), successfulFrames, tracks);
 
-                    // Broadcast frame result immediately with image data
-                    broadcastFrameUpdate(detectionResult, frameSecond, frameDetections, processingTime, frameFile);
+        } catch (CancellationException e) {
+            closeTracking(detectionResult, TrackingService.videoStream(detectionResult.getId()));
+            return markCancelled(detectionResult, e.getMessage());
+        } catch (Exception e) {
+            log.error("Error in frame-by-frame processing for video: {}", detectionResult.getFileName(), e);
+            closeTracking(detectionResult, TrackingService.videoStream(detectionResult.getId()));
 
-                    successfulFrames++;
-                    log.info("Processed frame at {}s for video: {} ({}ms)",
-                            frameSecond, detectionResult.getFileName(), processingTime);
+            // Broadcast failure and save
+            return failVideo(detectionResult, e.getMessage());
+        } finally {
+            // Clean up temporary frame files
+            cleanupFrameFiles(frameFiles);
+        }
+    }
 
-                } catch (Exception e) {
-                    log.error("Error processing frame at {}s for video: {}",
-                            frameSecond, detectionResult.getFileName(), e);
+    /**
+     * Frames of cameras with a region of interest are cropped before inference, which the worker does not do
+     */
+    private boolean useNativeVideoWorker(DetectionResult detectionResult) {
+        return "stream".equalsIgnoreCase(videoMode) && !roiService.isRestricted(detectionResult.getCameraId());
+    }
+
+    /**
+     * Let the native worker decode and analyze the video, broadcasting every frame result as its line arrives
+     */
+    private StreamedVideo streamVideo(DetectionResult detectionResult, CancellationToken token,
+                                      String trackingStream) throws Exception {
+        Path framesDir = mediaStorageService.newFramePath("video_" + detectionResult.getId() + "_" + System.nanoTime());
+        Files.createDirectories(framesDir);
+        AtomicBoolean started = new AtomicBoolean();
+        AtomicInteger successfulFrames = new AtomicInteger();
+        NativeVideoWorker.FrameHandler handler = new NativeVideoWorker.FrameHandler() {
+            @Override
+            public void onStart(int totalFrames) {
+                started.set(true);
+                broadcastVideoProcessingStart(detectionResult, totalFrames);
+            }
 
-                    // Broadcast error for this frame
-                    broadcastFrameError(detectionResult, frameSecond, e.getMessage());
+            @Override
+            public void onFrame(NativeVideoWorker.StreamedFrame frame) {
+                if (processStreamedFrame(detectionResult, frame, token, trackingStream)) {
+                    successfulFrames.incrementAndGet();
                 }
+            }
+        };
+        try {
+            // The worker keeps one model loaded for the whole video, so it holds one inference permit throughout
+            NativeVideoWorker.Outcome outcome = pipelineExecutors.runInference(token, () -> nativeVideoWorker.stream(
+                    detectionResult.getFilePath(), modelCascade.getFastModel(), FRAME_SAMPLE_INTERVAL,
+                    MAX_EXTRACTED_FRAMES, framesDir, framePreprocessor.getInputSize(), token, handler));
+            return new StreamedVideo(outcome, successfulFrames.get(), started.get());
+        } catch (CancellationException e) {
+            if (token.isCancelled()) {
+                throw e;
+            }
+            // Deadline passed while the video waited for a permit: nothing is analyzed
+            log.info("Deadline of {} passed before its frames were analyzed", detectionResult.getFileName());
+            return new StreamedVideo(new NativeVideoWorker.Outcome(true, 0, 0, null), 0, started.get());
+        } finally {
+            FileSystemUtils.deleteRecursively(framesDir);
+        }
+    }
 
-                // Small delay to prevent overwhelming the system and WebSocket clients
-                Thread.sleep(100);
+    /**
+     * Escalate and broadcast one frame result of the native worker
+     *
+     * @return whether the frame was processed successfully
+     */
+    private boolean processStreamedFrame(DetectionResult detectionResult, NativeVideoWorker.StreamedFrame frame,
+                                         CancellationToken token, String trackingStream) {
+        String framePath = frame.framePath();
+        try (PipelineTrace.Scope trace = PipelineTrace.open(detectionResult.getId(), detectionResult.getCameraId(),
+                frame.index())) {
+            long startTime = System.currentTimeMillis();
+            modelCascade.record(modelCascade.getFastModel(), frame.inferenceMillis(), false);
+            String frameDetections = frame.detectionsJson();
+            if (framePath != null) {
+                // The stream already holds an inference permit, so the accurate run must not wait for another
+                frameDetections = modelCascade.escalate(frameDetections, model -> {
+                    String accurate = runYolo(framePath, model, token);
+                    framePreprocessor.remember(framePath, frame.sourceWidth(), frame.sourceHeight(),
+                            frame.frameWidth(), frame.frameHeight());
+                    return framePreprocessor.mapToSource(framePath, accurate);
+                });
+            }
+            long processingTime = frame.inferenceMillis() + System.currentTimeMillis() - startTime;
+            token.throwIfCancelled();
+            publishFrameResult(detectionResult, frame.index(), frameDetections, processingTime, framePath,
+                    trackingStream, "");
+            return true;
+        } catch (CancellationException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Error processing frame at {}s for video: {}", frame.index(), detectionResult.getFileName(), e);
+            broadcastFrameError(detectionResult, frame.index(), e.getMessage());
+            return false;
+        } finally {
+            if (framePath != null) {
+                try {
+                    Files.deleteIfExists(Paths.get(framePath));
+                } catch (IOException e) {
+                    log.warn("Could not delete temporary frame file: {}", framePath);
+                }
             }
+        }
+    }
 
-            // Clean up temporary frame files
-            cleanupFrameFiles(frameFiles);
+    /**
+     * @param successfulFrames streamed frames processed successfully
+     * @param started          whether the processing start was broadcast
+     */
+    private record StreamedVideo(NativeVideoWorker.Outcome outcome, int successfulFrames, boolean started) {
+    }
+
+    /**
+     * Run YOLO on each extracted frame and broadcast every result as soon as it is available
+     *
+     * @param frameIndexOffset number of sampled frames preceding the first one in the list
+     * @return number of frames processed successfully
+     */
+    private int processFrames(DetectionResult detectionResult, List<String> frameFiles, int frameIndexOffset,
+                              String trackingStream, String trackIdPrefix) throws InterruptedException {
+        CancellationToken token = cancellations.get(detectionResult.getId());
+        int successfulFrames = 0;
+        for (int i = 0; i < frameFiles.size(); i++) {
+            token.throwIfCancelled();
+            if (token.isExpired()) {
+                log.info("Deadline of {} passed, dropping its last {} frames", detectionResult.getFileName(),
+                        frameFiles.size() - i);
+                break;
+            }
+            String frameFile = frameFiles.get(i);
+            int frameSecond = frameIndexOffset + i + 1;
 
-            // Mark video processing as completed
-            detectionResult.setStatus("COMPLETED");
-            detectionResult.setDetections(String.format(
-                    "{\"message\":\"Video processed frame by frame\",\"totalFrames\":%d,\"successfulFrames\":%d}",
-                    frameFiles.size(), successfulFrames));
+            if (processVideoFrame(detectionResult, frameSecond, frameFile, trackingStream, trackIdPrefix)) {
+                successfulFrames++;
+            }
 
-            // Broadcast completion
-            broadcastVideoProcessingComplete(detectionResult, frameFiles.size(), successfulFrames);
+            // Small delay to prevent overwhelming the system and WebSocket clients
+            Thread.sleep(100);
+        }
+        return successfulFrames;
+    }
 
+    /**
+     * Run YOLO on one extracted video frame and broadcast the result or the error. With tracking enabled,
+     * only keyframes and track changes are broadcast.
+     *
+     * @param trackingStream tracker the frame belongs to, see {@link TrackingService}
+     * @param trackIdPrefix  prefix of track IDs created for this stream
+     * @return whether the frame was processed successfully
+     */
+    public boolean processVideoFrame(DetectionResult detectionResult, int frameSecond, String frameFile,
+                                     String trackingStream, String trackIdPrefix) {
+        CancellationToken token = cancellations.get(detectionResult.getId());
+        try (PipelineTrace.Scope trace = PipelineTrace.open(detectionResult.getId(), detectionResult.getCameraId(),
+                frameSecond)) {
+            // Process this frame with YOLO
+            long startTime = System.currentTimeMillis();
+            String frameDetections = framePreprocessor.mapToSource(frameFile,
+                    processFrameWithYolo(frameFile, detectionResult.getCameraId(), token));
+            long processingTime = System.currentTimeMillis() - startTime;
+            // Nothing more is broadcast for a cancelled upload
+            token.throwIfCancelled();
+            publishFrameResult(detectionResult, frameSecond, frameDetections, processingTime, frameFile,
+                    trackingStream, trackIdPrefix);
+            return true;
+
+        } catch (CancellationException e) {
+            framePreprocessor.forget(frameFile);
+            if (token.isCancelled()) {
+                throw e;
+            }
+            // Deadline passed while the frame waited for inference: dropped without an error event
+            log.debug("Dropped frame at {}s of {}: {}", frameSecond, detectionResult.getFileName(), e.getMessage());
+            return false;
         } catch (Exception e) {
-            detectionResult.setStatus("FAILED");
-            detectionResult.setErrorMessage("Error in frame-by-frame processing: " + e.getMessage());
-            log.error("Error in frame-by-frame processing for video: {}", detectionResult.getFileName(), e);
+            log.error("Error processing frame at {}s for video: {}",
+                    frameSecond, detectionResult.getFileName(), e);
+            framePreprocessor.forget(frameFile);
 
-            // Broadcast failure
-            broadcastVideoProcessingFailed(detectionResult, e.getMessage());
+            // Broadcast error for this frame
+            broadcastFrameError(detectionResult, frameSecond, e.getMessage());
+            return false;
         }
+    }
 
-        // Save final result
-        DetectionResult finalResult = repository.save(detectionResult);
-        return finalResult;
+    private void publishFrameResult(DetectionResult detectionResult, int frameSecond, String frameDetections,
+                                    long processingTime, String frameFile, String trackingStream,
+                                    String trackIdPrefix) {
+        LocalDateTime capturedAt = detectionResult.getCapturedAt() == null ? null : detectionResult.getCapturedAt()
+                .plusNanos((long) (frameSecond - 1) * FRAME_SAMPLE_INTERVAL * 1_000_000_000L / 25);
+        if (trackingService.isEnabled()) {
+            TrackingUpdate update = trackingService.update(trackingStream, trackIdPrefix, frameSecond, frameDetections);
+            rollupService.record(detectionResult.getCameraId(), capturedAt, frameDetections, update.getEvents());
+            broadcastTrackingUpdate(detectionResult, update, processingTime, frameFile);
+        } else {
+            rollupService.record(detectionResult.getCameraId(), capturedAt, frameDetections, null);
+            // Broadcast frame result immediately with image data
+            broadcastFrameUpdate(detectionResult, frameSecond, frameDetections, processingTime, frameFile);
+        }
+
+        log.info("Processed frame at {}s for video: {} ({}ms)",
+                frameSecond, detectionResult.getFileName(), processingTime);
+    }
+
+    /**
+     * Run YOLO on a frame of a camera, restricted to the camera's region of interest if it has one.
+     * Near-duplicates of a recently analyzed frame of the camera reuse its detections.
+     */
+    public String processFrameWithYolo(String framePath, String cameraId) throws Exception {
+        return processFrameWithYolo(framePath, cameraId, CancellationToken.NONE);
+    }
+
+    /**
+     * @param token cancels the run (killing the model process) or drops it once its deadline has passed
+     */
+    public String processFrameWithYolo(String framePath, String cameraId, CancellationToken token) throws Exception {
+        RoiService.Crop crop = roiService.crop(cameraId, framePath);
+        try {
+            if (crop == null) {
+                return inferenceCache.detect(cameraId, framePath, () -> runInference(framePath, token));
+            }
+            String cropPath = crop.path().toString();
+            return roiService.applyMask(crop,
+                    inferenceCache.detect(cameraId, cropPath, () -> runInference(cropPath, token)));
+        } finally {
+            roiService.deleteCrop(crop);
+        }
     }
 
     /**
      * Enhanced frame processing with YOLO - returns structured result
      */
-    private String processFrameWithYolo(String framePath) throws Exception {
+    public String processFrameWithYolo(String framePath) throws Exception {
+        return runInference(framePath, CancellationToken.NONE);
+    }
+
+    private String runInference(String framePath, CancellationToken token) throws Exception {
+        return modelCascade.detect(model -> runModel(framePath, model, token));
+    }
+
+    private String runModel(String framePath, String model, CancellationToken token) throws Exception {
+        return pipelineExecutors.runInference(token, () -> runYolo(framePath, model, token));
+    }
+
+    private String runYolo(String framePath, String model, CancellationToken token) throws Exception {
         String[] pythonCommands = {"python", "py", "python3", "python.exe"};
 
         for (String pythonCmd : pythonCommands) {
             try {
                 ProcessBuilder processBuilder = new ProcessBuilder(
-                        pythonCmd, pythonScriptPath, framePath
+                        pythonCmd, pythonScriptPath, framePath, "--format", modelOutputFormat, "--model", model
                 );
                 processBuilder.redirectErrorStream(true);
 
                 long startTime = System.currentTimeMillis();
                 Process process = processBuilder.start();
+                token.register(process);
 
-                StringBuilder output = new StringBuilder();
-                try (BufferedReader reader = new BufferedReader(
-                        new InputStreamReader(process.getInputStream()))) {
-
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        output.append(line).append("\n");
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                int exitCode;
+                try (PipelineTrace.Stage stage = PipelineTrace.stage(PipelineTrace.INFERENCE)) {
+                    try (InputStream stdout = process.getInputStream()) {
+                        stdout.transferTo(output);
                     }
-                }
 
-                int exitCode = process.waitFor();
+                    exitCode = process.waitFor();
+                } finally {
+                    token.unregister(process);
+                }
                 long processingTime = System.currentTimeMillis() - startTime;
+                modelCascade.record(model, processingTime, exitCode != 0);
 
                 if (exitCode == 0) {
-                    String rawOutput = output.toString().trim();
-                    String jsonOutput = extractJsonFromOutput(rawOutput);
+                    String rawOutput = output.toString(StandardCharsets.UTF_8).trim();
+                    String jsonOutput = readModelOutput(output.toByteArray());
 
                     if (jsonOutput != null && jsonOutput.startsWith("{") && jsonOutput.endsWith("}")) {
-                        log.debug("YOLO processing completed for frame {} in {}ms", framePath, processingTime);
+                        log.debug("YOLO processing completed for frame {} with {} in {}ms", framePath, model,
+                                processingTime);
                         return jsonOutput;
                     } else {
                         throw new Exception("Invalid JSON output from YOLO: " + rawOutput);
                     }
                 } else {
-                    throw new Exception("YOLO processing failed with exit code " + exitCode + ": " + output.toString());
+                    throw new Exception("YOLO processing failed with exit code " + exitCode + ": "
+                            + output.toString(StandardCharsets.UTF_8));
                 }
 
             } catch (Exception e) {
+                // A killed run is not retried with the next command
+                token.throwIfCancelled();
                 log.debug("Python command '{}' failed: {}", pythonCmd, e.getMessage());
                 continue;
             }
@@ -678,7 +1356,7 @@ public class YoloProcessingService {
     /**
      * Broadcast video processing start
      */
-    private void broadcastVideoProcessingStart(DetectionResult detectionResult, int totalFrames) {
+    public void broadcastVideoProcessingStart(DetectionResult detectionResult, int totalFrames) {
         try {
             Map<String, Object> message = new HashMap<>();
             message.put("type", "VIDEO_PROCESSING_START");
@@ -690,7 +1368,7 @@ public class YoloProcessingService {
             message.put("height", detectionResult.getHeight());
             message.put("timestamp", LocalDateTime.now());
 
-            messagingTemplate.convertAndSend("/topic/detections", message);
+            broadcaster.publishStatus(detectionResult.getCameraId(), detectionResult.getId(), message, null);
             log.debug("Broadcasted video processing start for: {}", detectionResult.getFileName());
         } catch (Exception e) {
             log.error("Failed to broadcast video processing start", e);
@@ -714,7 +1392,7 @@ public class YoloProcessingService {
             message.put("height", detectionResult.getHeight());
             message.put("timestamp", LocalDateTime.now());
 
-            messagingTemplate.convertAndSend("/topic/detections", message);
+            broadcaster.publishFrame(detectionResult.getCameraId(), detectionResult.getId(), message, null);
             log.debug("Broadcasted frame detection for video {} at {}s", detectionResult.getFileName(), frameSecond);
         } catch (Exception e) {
             log.error("Failed to broadcast frame detection", e);
@@ -738,19 +1416,66 @@ public class YoloProcessingService {
             message.put("height", detectionResult.getHeight());
             message.put("timestamp", LocalDateTime.now());
 
-            // Add frame image data
+            // Add frame image data (encoded only if a subscriber wants images)
+            message.put("mimeType", "image/jpeg");
+
+            broadcaster.publishFrame(detectionResult.getCameraId(), detectionResult.getId(), message,
+                    framePreviewImage(framePath));
+            log.debug("Broadcasted frame detection with image for video {} at {}s", detectionResult.getFileName(), frameSecond);
+        } catch (Exception e) {
+            log.error("Failed to broadcast frame detection", e);
+        }
+    }
+
+    /**
+     * Broadcast the outcome of tracking one frame: a full frame detection listing every active track on
+     * keyframes, the track changes alone otherwise, and nothing at all when no track changed
+     */
+    private void broadcastTrackingUpdate(DetectionResult detectionResult, TrackingUpdate update, long processingTime,
+                                         String framePath) {
+        if (update.isKeyframe()) {
             try {
-                String frameBase64 = convertImageToBase64(framePath);
-                message.put("imageBase64", frameBase64);
+                Map<String, Object> message = new HashMap<>();
+                message.put("type", "FRAME_DETECTION");
+                message.put("keyframe", true);
+                message.put("videoId", detectionResult.getId());
+                message.put("fileName", detectionResult.getFileName());
+                message.put("cameraId", detectionResult.getCameraId());
+                message.put("frameSecond", update.getFrameIndex());
+                message.put("detections", trackingService.toDetectionsJson(update.getTracks()));
+                message.put("events", update.getEvents());
+                message.put("processingTime", processingTime);
+                message.put("width", detectionResult.getWidth());
+                message.put("height", detectionResult.getHeight());
+                message.put("timestamp", LocalDateTime.now());
                 message.put("mimeType", "image/jpeg");
+
+                broadcaster.publishFrame(detectionResult.getCameraId(), detectionResult.getId(), message,
+                        framePreviewImage(framePath));
             } catch (Exception e) {
-                log.warn("Could not convert frame to Base64: {}", framePath, e);
+                log.error("Failed to broadcast keyframe", e);
             }
+        } else if (!update.getEvents().isEmpty()) {
+            broadcastTrackEvents(detectionResult, update.getFrameIndex(), update.getEvents());
+        }
+    }
 
-            messagingTemplate.convertAndSend("/topic/detections", message);
-            log.debug("Broadcasted frame detection with image for video {} at {}s", detectionResult.getFileName(), frameSecond);
+    /**
+     * Broadcast track changes without frame image
+     */
+    private void broadcastTrackEvents(DetectionResult detectionResult, Integer frameIndex, List<TrackEvent> events) {
+        try {
+            Map<String, Object> message = new HashMap<>();
+            message.put("type", "TRACK_EVENTS");
+            message.put("videoId", detectionResult.getId());
+            message.put("cameraId", detectionResult.getCameraId());
+            message.put("frameSecond", frameIndex);
+            message.put("events", events);
+            message.put("timestamp", LocalDateTime.now());
+
+            broadcaster.publishTrackEvents(detectionResult.getCameraId(), detectionResult.getId(), message);
         } catch (Exception e) {
-            log.error("Failed to broadcast frame detection", e);
+            log.error("Failed to broadcast track events", e);
         }
     }
 
@@ -770,7 +1495,7 @@ public class YoloProcessingService {
             message.put("height", detectionResult.getHeight());
             message.put("timestamp", LocalDateTime.now());
 
-            messagingTemplate.convertAndSend("/topic/detections", message);
+            broadcaster.publishFrame(detectionResult.getCameraId(), detectionResult.getId(), message, null);
             log.debug("Broadcasted frame error for video {} at {}s", detectionResult.getFileName(), frameSecond);
         } catch (Exception e) {
             log.error("Failed to broadcast frame error", e);
@@ -793,7 +1518,7 @@ public class YoloProcessingService {
             message.put("height", detectionResult.getHeight());
             message.put("timestamp", LocalDateTime.now());
 
-            messagingTemplate.convertAndSend("/topic/detections", message);
+            broadcaster.publishStatus(detectionResult.getCameraId(), detectionResult.getId(), message, null);
             log.info("Broadcasted video processing completion for: {}", detectionResult.getFileName());
         } catch (Exception e) {
             log.error("Failed to broadcast video processing completion", e);
@@ -815,7 +1540,7 @@ public class YoloProcessingService {
             message.put("height", detectionResult.getHeight());
             message.put("timestamp", LocalDateTime.now());
 
-            messagingTemplate.convertAndSend("/topic/detections", message);
+            broadcaster.publishStatus(detectionResult.getCameraId(), detectionResult.getId(), message, null);
             log.error("Broadcasted video processing failure for: {}", detectionResult.getFileName());
         } catch (Exception e) {
             log.error("Failed to broadcast video processing failure", e);
@@ -831,6 +1556,8 @@ public class YoloProcessingService {
                 Files.deleteIfExists(Paths.get(frameFile));
             } catch (Exception e) {
                 log.warn("Could not delete temporary frame file: {}", frameFile);
+            } finally {
+                framePreprocessor.forget(frameFile);
             }
         }
         log.info("Cleaned up {} temporary frame files", frameFiles.size());
@@ -0,0 +1,121 @@
+package com.wavestone.stacamback;
+
+import com.wavestone.stacamback.service.DetectionBroadcaster;
+import com.wavestone.stacamback.service.SubscriptionTracker;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+
+import java.lang.reflect.Type;
+import java.net.ServerSocket;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs two backend nodes relaying to an embedded Artemis broker hosted by the first node, and checks that
+ * an event published on one node reaches a client connected to the other one.
+ */
+class BrokerRelayIntegrationTest {
+
+    private static ConfigurableApplicationContext nodeA;
+    private static ConfigurableApplicationContext nodeB;
+
+    @BeforeAll
+    static void startNodes() throws Exception {
+        int brokerPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            brokerPort = socket.getLocalPort();
+        }
+        nodeA = startNode("node-a", brokerPort, true);
+        nodeB = startNode("node-b", brokerPort, false);
+    }
+
+    @AfterAll
+    static void stopNodes() {
+        if (nodeB != null) {
+            nodeB.close();
+        }
+        if (nodeA != null) {
+            nodeA.close();
+        }
+    }
+
+    @Test
+    void eventPublishedOnOneNodeReachesClientOfAnotherNode() throws Exception {
+        WebSocketStompClient client = new WebSocketStompClient(
+                new SockJsClient(List.of(new WebSocketTransport(new StandardWebSocketClient()))));
+        client.setMessageConverter(new MappingJackson2MessageConverter());
+
+        int portB = ((WebServerApplicationContext) nodeB).getWebServer().getPort();
+        StompSession session = client.connectAsync("ws://localhost:" + portB + "/ws",
+                new StompSessionHandlerAdapter() {}).get(10, TimeUnit.SECONDS);
+
+        BlockingQueue<Map<?, ?>> received = new LinkedBlockingQueue<>();
+        StompHeaders headers = new StompHeaders();
+        headers.setDestination("/topic/cameras/camera_one");
+        headers.add("images", "false");
+        session.subscribe(headers, new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return Map.class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                received.add((Map<?, ?>) payload);
+            }
+        });
+
+        // Node A learns about the subscription on node B through the relay
+        String variant = "/topic/cameras/camera_one;images=false";
+        SubscriptionTracker trackerA = nodeA.getBean(SubscriptionTracker.class);
+        long deadline = System.currentTimeMillis() + 20000;
+        while (!trackerA.hasSubscribers(variant) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        assertTrue(trackerA.hasSubscribers(variant), "node A never learned about the subscription on node B");
+
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("type", "FRAME_DETECTION");
+        message.put("cameraId", "camera_one");
+        nodeA.getBean(DetectionBroadcaster.class).publishFrame("camera_one", 1L, message, () -> "not-sent");
+
+        Map<?, ?> payload = received.poll(10, TimeUnit.SECONDS);
+        assertNotNull(payload, "client on node B did not receive the event published on node A");
+        assertEquals("FRAME_DETECTION", payload.get("type"));
+        assertFalse(payload.containsKey("imageBase64"));
+
+        session.disconnect();
+    }
+
+    private static ConfigurableApplicationContext startNode(String nodeId, int brokerPort, boolean embeddedBroker) {
+        return new SpringApplicationBuilder(StaCamBackApplication.class).run(
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:" + nodeId,
+                "--spring.h2.console.enabled=false",
+                "--app.cluster.node-id=" + nodeId,
+                "--app.cluster.subscription-sync-interval=200",
+                "--app.websocket.broker.mode=relay",
+                "--app.websocket.broker.relay.port=" + brokerPort,
+                "--app.websocket.broker.embedded.enabled=" + embeddedBroker,
+                "--app.websocket.broker.embedded.port=" + brokerPort);
+    }
+}
@@ -0,0 +1,132 @@
+package com.wavestone.stacamback;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares time-to-ready and resident memory of the plain JAR with the AOT-processed build, with and
+ * without its class data sharing archive. Every mode starts a fresh JVM on a random port and counts from
+ * process start until Spring Boot reports the application as started.
+ * <p>
+ * Build the {@code aot} profile first, then run:
+ * {@code mvn -Paot package -DskipTests && mvn test -Dtest=StartupBenchmarkTest -Dbenchmark=true}
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class StartupBenchmarkTest {
+
+    private static final int RUNS = 3;
+    private static final long START_TIMEOUT_SECONDS = 120;
+    private static final Path TARGET = Path.of("target").toAbsolutePath();
+    private static final Path CDS_DIRECTORY = TARGET.resolve("app-cds");
+
+    @Test
+    void compareStartupModes() throws Exception {
+        Path jar = findJar(TARGET);
+        Path extractedJar = CDS_DIRECTORY.resolve(jar.getFileName());
+        Path archive = CDS_DIRECTORY.resolve("application.jsa");
+        assertTrue(Files.exists(extractedJar) && Files.exists(archive),
+                "Build with 'mvn -Paot package -DskipTests' first");
+
+        System.out.printf("%-12s %16s %14s%n", "mode", "ready ms (med)", "RSS MB (med)");
+        measure("plain", List.of("-jar", jar.toString()));
+        measure("aot", List.of("-Dspring.aot.enabled=true", "-jar", extractedJar.toString()));
+        measure("aot + cds", List.of("-XX:SharedArchiveFile=" + archive, "-Xlog:cds=off",
+                "-Dspring.aot.enabled=true", "-jar", extractedJar.toString()));
+    }
+
+    private void measure(String mode, List<String> javaArguments) throws Exception {
+        long[] readyMillis = new long[RUNS];
+        long[] rssKb = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            long[] sample = start(javaArguments);
+            readyMillis[i] = sample[0];
+            rssKb[i] = sample[1];
+        }
+        long rss = median(rssKb);
+        System.out.printf("%-12s %16d %14s%n", mode, median(readyMillis), rss < 0 ? "n/a" : rss / 1024);
+    }
+
+    /**
+     * Start one instance and stop it once ready: {time to ready in ms, RSS in kB or -1 if unknown}
+     */
+    private long[] start(List<String> javaArguments) throws Exception {
+        Path workDirectory = Files.createTempDirectory("startup-benchmark");
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(javaArguments);
+        command.add("--server.port=0");
+
+        long startTime = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+                .directory(workDirectory.toFile())
+                .redirectErrorStream(true)
+                .start();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            Long readyMillis = null;
+            while (readyMillis == null && (line = reader.readLine()) != null) {
+                if (line.contains("Started StaCamBackApplication")) {
+                    readyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+                }
+            }
+            assertNotNull(readyMillis, "Application did not start: " + String.join(" ", command));
+            return new long[]{readyMillis, residentSetKb(process.pid())};
+        } finally {
+            process.destroy();
+            if (!process.waitFor(START_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+            deleteRecursively(workDirectory);
+        }
+    }
+
+    /**
+     * VmRSS of a process from /proc, so only available on Linux
+     */
+    private static long residentSetKb(long pid) {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc", Long.toString(pid), "status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", ""));
+                }
+            }
+        } catch (Exception e) {
+            // Not on Linux
+        }
+        return -1;
+    }
+
+    private static Path findJar(Path directory) throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".jar"))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalStateException("No JAR in " + directory + ", run 'mvn -Paot package' first"));
+        }
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static void deleteRecursively(Path directory) throws Exception {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted((a, b) -> b.compareTo(a)).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}
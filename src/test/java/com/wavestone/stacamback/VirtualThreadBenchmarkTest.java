@@ -0,0 +1,83 @@
+package com.wavestone.stacamback;
+
+import com.wavestone.stacamback.config.PipelineExecutors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares platform thread pools with virtual threads on a pipeline-shaped workload: every job blocks on
+ * I/O (standing in for subprocess reads, JDBC saves and WebSocket sends) and runs a short inference step
+ * under the shared inference semaphore.
+ * <p>
+ * Run with {@code mvn -Pjava21 test -Dtest=VirtualThreadBenchmarkTest -Dbenchmark=true} on Java 21;
+ * on older JVMs only the platform modes run.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class VirtualThreadBenchmarkTest {
+
+    private static final int JOBS = 2000;
+    private static final long BLOCKING_IO_MS = 100;
+    private static final long INFERENCE_MS = 1;
+    private static final int INFERENCE_PERMITS = 8;
+
+    @Test
+    void compareExecutionModes() throws Exception {
+        // Warm-up so the first measured mode does not pay for class loading and JIT compilation
+        run("warm-up", new PipelineExecutors(false, INFERENCE_PERMITS), 64);
+
+        System.out.printf("%-22s %10s %14s %16s%n", "mode", "wall ms", "peak threads", "peak in flight");
+        run("platform, 16 threads", new PipelineExecutors(false, INFERENCE_PERMITS), 16);
+        run("platform, " + JOBS + " threads", new PipelineExecutors(false, INFERENCE_PERMITS), JOBS);
+        PipelineExecutors virtual = new PipelineExecutors(true, INFERENCE_PERMITS);
+        if (virtual.isVirtualThreads()) {
+            run("virtual", virtual, 0);
+        } else {
+            System.out.println("virtual                (needs Java 21)");
+        }
+    }
+
+    private void run(String mode, PipelineExecutors executors, int platformThreads) throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        ExecutorService executor = executors.newExecutor("benchmark", platformThreads);
+        CountDownLatch done = new CountDownLatch(JOBS);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peakInFlight = new AtomicInteger();
+
+        threads.resetPeakThreadCount();
+        long start = System.nanoTime();
+        for (int i = 0; i < JOBS; i++) {
+            executor.execute(() -> {
+                peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(BLOCKING_IO_MS);
+                    executors.runInference(() -> {
+                        Thread.sleep(INFERENCE_MS);
+                        return null;
+                    });
+                } catch (Exception e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    inFlight.decrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(5, TimeUnit.MINUTES));
+        long wallMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        int peakThreads = threads.getPeakThreadCount();
+        executor.shutdownNow();
+        // Let pool threads exit so they do not count towards the next mode's peak
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        System.out.printf("%-22s %10d %14d %16d%n", mode, wallMs, peakThreads, peakInFlight.get());
+    }
+}
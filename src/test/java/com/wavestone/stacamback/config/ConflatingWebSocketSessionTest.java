@@ -0,0 +1,154 @@
+package com.wavestone.stacamback.config;
+
+import jakarta.websocket.CloseReason;
+import jakarta.websocket.RemoteEndpoint;
+import jakarta.websocket.SendHandler;
+import jakarta.websocket.SendResult;
+import jakarta.websocket.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.standard.StandardWebSocketSession;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class ConflatingWebSocketSessionTest {
+
+    private static final long SEND_TIME_LIMIT = 50;
+
+    // A single flush thread, so a session holding it would stall every other session
+    private final ExecutorService flushExecutor = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    void tearDown() {
+        flushExecutor.shutdownNow();
+    }
+
+    /**
+     * Container session whose asynchronous sends are recorded and only complete when the test says so
+     */
+    private static final class NativeSession {
+        final Session session = mock(Session.class);
+        final RemoteEndpoint.Async async = mock(RemoteEndpoint.Async.class);
+        final List<String> sent = new CopyOnWriteArrayList<>();
+        final List<SendHandler> handlers = new CopyOnWriteArrayList<>();
+
+        NativeSession() {
+            when(session.getUserProperties()).thenReturn(new HashMap<>());
+            when(session.getAsyncRemote()).thenReturn(async);
+            when(session.isOpen()).thenReturn(true);
+            doAnswer(invocation -> {
+                sent.add(invocation.getArgument(0));
+                handlers.add(invocation.getArgument(1));
+                return null;
+            }).when(async).sendText(anyString(), any(SendHandler.class));
+        }
+
+        WebSocketSession webSocketSession() {
+            StandardWebSocketSession webSocketSession = new StandardWebSocketSession(new HttpHeaders(),
+                    new HashMap<>(), null, null);
+            webSocketSession.initializeNativeSession(session);
+            return webSocketSession;
+        }
+    }
+
+    private ConflatingWebSocketSession decorate(WebSocketSession delegate) {
+        return new ConflatingWebSocketSession(delegate, flushExecutor, false, 16, 1 << 20, SEND_TIME_LIMIT);
+    }
+
+    private static void awaitSize(List<?> list, int size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (list.size() < size && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(size, list.size());
+    }
+
+    @Test
+    void nativeSessionsSendAsynchronouslyOneMessageAtATime() throws Exception {
+        NativeSession peer = new NativeSession();
+        ConflatingWebSocketSession session = decorate(peer.webSocketSession());
+
+        session.sendMessage(new TextMessage("first"));
+        session.sendMessage(new TextMessage("second"));
+        awaitSize(peer.sent, 1);
+        Thread.sleep(20);
+        assertEquals(List.of("first"), peer.sent);
+        verify(peer.async).setSendTimeout(SEND_TIME_LIMIT);
+
+        peer.handlers.get(0).onResult(new SendResult());
+        awaitSize(peer.sent, 2);
+        assertEquals(List.of("first", "second"), peer.sent);
+        peer.handlers.get(1).onResult(new SendResult());
+        assertEquals(2, session.getStats().getDeliveredMessages());
+    }
+
+    @Test
+    void stalledPeerDoesNotHoldTheFlushThread() throws Exception {
+        NativeSession stalled = new NativeSession();
+        NativeSession healthy = new NativeSession();
+        ConflatingWebSocketSession stalledSession = decorate(stalled.webSocketSession());
+        ConflatingWebSocketSession healthySession = decorate(healthy.webSocketSession());
+
+        stalledSession.sendMessage(new TextMessage("never completes"));
+        awaitSize(stalled.sent, 1);
+        healthySession.sendMessage(new TextMessage("hello"));
+
+        awaitSize(healthy.sent, 1);
+    }
+
+    @Test
+    void failedAsyncSendClosesTheSession() throws Exception {
+        NativeSession peer = new NativeSession();
+        ConflatingWebSocketSession session = decorate(peer.webSocketSession());
+        session.sendMessage(new TextMessage("first"));
+        awaitSize(peer.sent, 1);
+
+        peer.handlers.get(0).onResult(new SendResult(new IOException("timeout")));
+
+        verify(peer.session).close(argThat((CloseReason reason) ->
+                reason.getCloseCode().getCode() == CloseStatus.SESSION_NOT_RELIABLE.getCode()));
+        session.sendMessage(new TextMessage("dropped"));
+        Thread.sleep(20);
+        assertEquals(1, peer.sent.size());
+    }
+
+    @Test
+    void watchdogClosesSessionsWithAStuckBlockingSend() throws Exception {
+        WebSocketSession delegate = mock(WebSocketSession.class);
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(delegate.isOpen()).thenReturn(true);
+        doAnswer(invocation -> {
+            sending.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(delegate).sendMessage(any());
+        ConflatingWebSocketSession session = decorate(delegate);
+
+        session.sendMessage(new TextMessage("stuck"));
+        assertTrue(sending.await(2, TimeUnit.SECONDS));
+        session.checkSendTimeLimit();
+        verify(delegate, never()).close(any());
+
+        Thread.sleep(SEND_TIME_LIMIT * 2);
+        session.checkSendTimeLimit();
+        verify(delegate).close(CloseStatus.SESSION_NOT_RELIABLE);
+        release.countDown();
+    }
+}
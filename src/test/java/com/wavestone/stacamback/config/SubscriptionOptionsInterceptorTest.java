@@ -0,0 +1,56 @@
+package com.wavestone.stacamback.config;
+
+import com.wavestone.stacamback.service.SubscriptionTracker;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.HashMap;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SubscriptionOptionsInterceptorTest {
+
+    private final SubscriptionTracker tracker = new SubscriptionTracker();
+    private final SubscriptionOptionsInterceptor interceptor = new SubscriptionOptionsInterceptor(tracker);
+
+    private static Message<byte[]> frame(StompCommand command, String destination) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(command);
+        accessor.setSessionId("s1");
+        accessor.setSubscriptionId("sub-1");
+        accessor.setDestination(destination);
+        accessor.setSessionAttributes(new HashMap<>());
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    @Test
+    void clientsCannotSendOrSubscribeToTheClusterChannel() {
+        for (StompCommand command : new StompCommand[]{StompCommand.SEND, StompCommand.SUBSCRIBE}) {
+            assertThrows(MessageDeliveryException.class, () -> interceptor.preSend(
+                    frame(command, ClusterSubscriptionExchange.ANNOUNCE_DESTINATION), null));
+        }
+        assertTrue(tracker.getLocalDestinations().isEmpty());
+    }
+
+    @Test
+    void wildcardsMatchingTheClusterChannelAreReserved() {
+        assertTrue(SubscriptionOptionsInterceptor.isClusterChannel("/topic/#"));
+        assertTrue(SubscriptionOptionsInterceptor.isClusterChannel("/topic/cluster.*"));
+        assertTrue(SubscriptionOptionsInterceptor.isClusterChannel("/topic/**"));
+        assertFalse(SubscriptionOptionsInterceptor.isClusterChannel("/topic/detections.*"));
+        assertFalse(SubscriptionOptionsInterceptor.isClusterChannel("/topic/detections"));
+        assertFalse(SubscriptionOptionsInterceptor.isClusterChannel(null));
+    }
+
+    @Test
+    void otherSubscriptionsAreTracked() {
+        interceptor.preSend(frame(StompCommand.SUBSCRIBE, "/topic/detections"), null);
+
+        assertEquals(Set.of("/topic/detections"), tracker.getLocalDestinations());
+    }
+}
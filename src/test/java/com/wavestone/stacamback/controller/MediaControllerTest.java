@@ -0,0 +1,196 @@
+package com.wavestone.stacamback.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MediaControllerTest {
+
+    private static final String CONTENT = "0123456789";
+    private static final Instant MODIFIED = Instant.parse("2026-01-01T12:00:00Z");
+
+    @TempDir
+    Path dir;
+
+    private MediaController controller;
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        controller = new MediaController(null, null, new ObjectMapper());
+        ReflectionTestUtils.setField(controller, "cacheMaxAge", Duration.ofDays(365));
+        file = dir.resolve("clip.mp4");
+        Files.writeString(file, CONTENT);
+        Files.setLastModifiedTime(file, FileTime.from(MODIFIED));
+    }
+
+    private MockHttpServletResponse serve(MockHttpServletRequest request, boolean immutable) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        controller.serve(file, MediaType.parseMediaType("video/mp4"), immutable, request, response);
+        return response;
+    }
+
+    private MockHttpServletResponse serve(MockHttpServletRequest request) throws Exception {
+        return serve(request, true);
+    }
+
+    private static MockHttpServletRequest get(String range) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/media/1");
+        if (range != null) {
+            request.addHeader(HttpHeaders.RANGE, range);
+        }
+        return request;
+    }
+
+    private static String httpDate(Instant instant) {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(instant.atOffset(ZoneOffset.UTC));
+    }
+
+    private String etag() throws Exception {
+        return serve(get(null)).getHeader(HttpHeaders.ETAG);
+    }
+
+    @Test
+    void wholeFileWithCacheHeaders() throws Exception {
+        MockHttpServletResponse response = serve(get(null));
+
+        assertEquals(200, response.getStatus());
+        assertEquals(CONTENT, response.getContentAsString(StandardCharsets.UTF_8));
+        assertEquals(CONTENT.length(), response.getContentLengthLong());
+        assertEquals("video/mp4", response.getContentType());
+        assertEquals("bytes", response.getHeader(HttpHeaders.ACCEPT_RANGES));
+        assertNotNull(response.getHeader(HttpHeaders.ETAG));
+        assertEquals("max-age=31536000, public, immutable", response.getHeader(HttpHeaders.CACHE_CONTROL));
+    }
+
+    @Test
+    void unfinishedFileIsNotStored() throws Exception {
+        assertEquals("no-store", serve(get(null), false).getHeader(HttpHeaders.CACHE_CONTROL));
+    }
+
+    @Test
+    void matchingEtagIsNotModified() throws Exception {
+        MockHttpServletRequest request = get(null);
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, etag());
+
+        MockHttpServletResponse response = serve(request);
+
+        assertEquals(304, response.getStatus());
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    void singleRangeIsPartialContent() throws Exception {
+        MockHttpServletResponse response = serve(get("bytes=2-5"));
+
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 2-5/10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals(4, response.getContentLengthLong());
+        assertEquals("2345", response.getContentAsString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void openAndSuffixRanges() throws Exception {
+        MockHttpServletResponse open = serve(get("bytes=7-"));
+        assertEquals(206, open.getStatus());
+        assertEquals("bytes 7-9/10", open.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals("789", open.getContentAsString(StandardCharsets.UTF_8));
+
+        MockHttpServletResponse suffix = serve(get("bytes=-3"));
+        assertEquals(206, suffix.getStatus());
+        assertEquals("789", suffix.getContentAsString(StandardCharsets.UTF_8));
+
+        // A range end past the file is cut to the file
+        MockHttpServletResponse clipped = serve(get("bytes=8-100"));
+        assertEquals("bytes 8-9/10", clipped.getHeader(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void rangeBeyondTheFileIsNotSatisfiable() throws Exception {
+        MockHttpServletResponse response = serve(get("bytes=10-20"));
+
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    void malformedRangeIsNotSatisfiable() throws Exception {
+        MockHttpServletResponse response = serve(get("bytes=5-2"));
+
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void severalRangesGetTheWholeFile() throws Exception {
+        MockHttpServletResponse response = serve(get("bytes=0-1,4-5"));
+
+        assertEquals(200, response.getStatus());
+        assertNull(response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals(CONTENT, response.getContentAsString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void ifRangeWithCurrentEtagAppliesTheRange() throws Exception {
+        MockHttpServletRequest request = get("bytes=0-1");
+        request.addHeader(HttpHeaders.IF_RANGE, etag());
+
+        MockHttpServletResponse response = serve(request);
+
+        assertEquals(206, response.getStatus());
+        assertEquals("01", response.getContentAsString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void ifRangeWithOtherEtagGetsTheWholeFile() throws Exception {
+        MockHttpServletRequest request = get("bytes=0-1");
+        request.addHeader(HttpHeaders.IF_RANGE, "\"other\"");
+
+        MockHttpServletResponse response = serve(request);
+
+        assertEquals(200, response.getStatus());
+        assertEquals(CONTENT, response.getContentAsString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void ifRangeWithDate() throws Exception {
+        MockHttpServletRequest current = get("bytes=0-1");
+        current.addHeader(HttpHeaders.IF_RANGE, httpDate(MODIFIED));
+        assertEquals(206, serve(current).getStatus());
+
+        MockHttpServletRequest outdated = get("bytes=0-1");
+        outdated.addHeader(HttpHeaders.IF_RANGE, httpDate(MODIFIED.minusSeconds(60)));
+        MockHttpServletResponse response = serve(outdated);
+        assertEquals(200, response.getStatus());
+        assertEquals(CONTENT, response.getContentAsString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void headRequestHasNoBody() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("HEAD", "/api/media/1");
+
+        MockHttpServletResponse response = serve(request);
+
+        assertEquals(200, response.getStatus());
+        assertEquals(CONTENT.length(), response.getContentLengthLong());
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+}
@@ -0,0 +1,59 @@
+package com.wavestone.stacamback.repository;
+
+import com.wavestone.stacamback.model.DetectionResult;
+import com.wavestone.stacamback.model.DetectionResultSaved;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DetectionResultListenerTest {
+
+    private final List<Object> published = new ArrayList<>();
+    private final DetectionResultListener listener = new DetectionResultListener(published::add);
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void savesOutsideATransactionArePublishedImmediately() {
+        DetectionResult result = new DetectionResult();
+
+        listener.saved(result);
+
+        assertEquals(1, published.size());
+        assertSame(result, ((DetectionResultSaved) published.get(0)).result());
+    }
+
+    @Test
+    void savesInATransactionArePublishedAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        DetectionResult result = new DetectionResult();
+
+        listener.saved(result);
+        assertTrue(published.isEmpty());
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertEquals(1, published.size());
+    }
+
+    @Test
+    void savesOfARolledBackTransactionAreNotPublished() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        listener.saved(new DetectionResult());
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+        assertTrue(published.isEmpty());
+    }
+}
@@ -0,0 +1,174 @@
+package com.wavestone.stacamback.service;
+
+import com.wavestone.stacamback.model.DetectionResult;
+import com.wavestone.stacamback.model.DetectionResultSaved;
+import com.wavestone.stacamback.repository.DetectionResultRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class BatchUploadServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private final YoloProcessingService yoloProcessingService = mock(YoloProcessingService.class);
+    private final MediaStorageService mediaStorageService = mock(MediaStorageService.class);
+    private final DetectionResultRepository repository = mock(DetectionResultRepository.class);
+    private final DetectionBroadcaster broadcaster = mock(DetectionBroadcaster.class);
+    private final Map<Path, LocalDateTime> captureTimes = new HashMap<>();
+    private BatchUploadService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        service = new BatchUploadService(yoloProcessingService, mock(ProcessingJobService.class), mediaStorageService,
+                repository, broadcaster);
+        ReflectionTestUtils.setField(service, "maxFiles", 3);
+        ReflectionTestUtils.setField(service, "maxArchiveSize", DataSize.ofBytes(100));
+        when(yoloProcessingService.isSupportedFile(anyString())).thenAnswer(invocation ->
+                invocation.<String>getArgument(0).endsWith(".jpg"));
+        AtomicInteger files = new AtomicInteger();
+        when(mediaStorageService.newUploadPath(anyString(), anyString())).thenAnswer(invocation ->
+                dir.resolve(files.incrementAndGet() + "_" + invocation.getArgument(1)));
+    }
+
+    private static byte[] zip(Map<String, Integer> entrySizes) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            for (Map.Entry<String, Integer> entry : entrySizes.entrySet()) {
+                zip.putNextEntry(new ZipEntry(entry.getKey()));
+                zip.write(new byte[entry.getValue()]);
+                zip.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Map<String, Integer> entries(Object... nameAndSize) {
+        Map<String, Integer> entries = new LinkedHashMap<>();
+        for (int i = 0; i < nameAndSize.length; i += 2) {
+            entries.put((String) nameAndSize[i], (Integer) nameAndSize[i + 1]);
+        }
+        return entries;
+    }
+
+    private Map<Path, String> storeEntries(byte[] archive, List<String> rejected) throws IOException {
+        Map<Path, String> stored = new LinkedHashMap<>();
+        try (ZipInputStream input = new ZipInputStream(new ByteArrayInputStream(archive))) {
+            service.storeEntries(input, "camera_one", stored, captureTimes, rejected);
+        }
+        return stored;
+    }
+
+    private long storedFiles() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    void entriesAreStoredAndUnsupportedOnesRejected() throws Exception {
+        List<String> rejected = new ArrayList<>();
+
+        Map<Path, String> stored = storeEntries(zip(entries("a/one.jpg", 10, "b/one.jpg", 20, "notes.txt", 5,
+                "__MACOSX/a/._one.jpg", 5, ".hidden.jpg", 5)), rejected);
+
+        assertEquals(List.of("a_one.jpg", "b_one.jpg"), List.copyOf(stored.values()));
+        assertEquals(List.of("notes.txt"), rejected);
+        assertEquals(List.of(10L, 20L), stored.keySet().stream().map(path -> path.toFile().length()).toList());
+    }
+
+    @Test
+    void entryModificationTimeIsTheCaptureTime() throws Exception {
+        LocalDateTime taken = LocalDateTime.of(2026, 3, 1, 6, 30, 10);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            ZipEntry entry = new ZipEntry("snapshot.jpg");
+            entry.setTimeLocal(taken);
+            zip.putNextEntry(entry);
+            zip.write(new byte[10]);
+            zip.closeEntry();
+        }
+
+        Map<Path, String> stored = storeEntries(bytes.toByteArray(), new ArrayList<>());
+
+        assertEquals(Map.of(stored.keySet().iterator().next(), taken), captureTimes);
+    }
+
+    @Test
+    void archiveExpandingBeyondTheSizeLimitIsRejected() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () ->
+                storeEntries(zip(entries("one.jpg", 60, "two.jpg", 60)), new ArrayList<>()));
+
+        assertTrue(e.getMessage().contains("expands to more than"));
+    }
+
+    @Test
+    void archiveWithTooManyFilesIsRejected() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> storeEntries(
+                zip(entries("1.jpg", 1, "2.jpg", 1, "3.jpg", 1, "4.jpg", 1)), new ArrayList<>()));
+
+        assertTrue(e.getMessage().contains("at most 3 files"));
+    }
+
+    @Test
+    void filesOfARejectedUploadAreDeleted() throws Exception {
+        MockMultipartFile archive = new MockMultipartFile("files", "snapshots.zip", "application/zip",
+                zip(entries("one.jpg", 60, "two.jpg", 60)));
+
+        assertThrows(IllegalArgumentException.class, () -> service.upload(List.of(archive), "camera_one", null));
+
+        assertEquals(0, storedFiles());
+        verify(yoloProcessingService, never()).createDetectionResults(any(), any(), any(), any(), any());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void progressIsCountedFromTheDatabaseOnTheProcessingNode() {
+        DetectionResult result = new DetectionResult();
+        result.setId(7L);
+        result.setCameraId("camera_one");
+        result.setBatchId("batch-1");
+        result.setStatus("COMPLETED");
+        ArgumentCaptor<Map<String, Object>> messages = ArgumentCaptor.forClass(Map.class);
+
+        // The batch was uploaded on another node, so this one has never seen it
+        when(repository.findStatusesByBatchId("batch-1")).thenReturn(List.of("COMPLETED", "PROCESSING"));
+        service.onSaved(new DetectionResultSaved(result));
+        when(repository.findStatusesByBatchId("batch-1")).thenReturn(List.of("COMPLETED", "FAILED"));
+        service.onSaved(new DetectionResultSaved(result));
+        service.onSaved(new DetectionResultSaved(result));
+
+        verify(broadcaster, times(2)).publishStatus(eq("camera_one"), isNull(), messages.capture(), isNull());
+        assertEquals("BATCH_PROGRESS", messages.getAllValues().get(0).get("type"));
+        assertEquals(1, messages.getAllValues().get(0).get("completed"));
+        assertEquals("BATCH_COMPLETED", messages.getAllValues().get(1).get("type"));
+        assertEquals(1, messages.getAllValues().get(1).get("failed"));
+        assertEquals(2, messages.getAllValues().get(1).get("total"));
+    }
+}
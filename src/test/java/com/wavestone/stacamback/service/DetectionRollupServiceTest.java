@@ -0,0 +1,66 @@
+package com.wavestone.stacamback.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wavestone.stacamback.model.RollupBucket;
+import com.wavestone.stacamback.model.TrackEvent;
+import com.wavestone.stacamback.repository.DetectionRollupRepository;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class DetectionRollupServiceTest {
+
+    private static final String ONE_PERSON = "{\"detections\":[{\"className\":\"person\"}]}";
+    private static final String TWO_PEOPLE = "{\"detections\":[{\"className\":\"person\"},{\"className\":\"person\"}]}";
+    private static final LocalDateTime MORNING = LocalDateTime.of(2026, 3, 1, 6, 30);
+
+    private final DetectionRollupService service =
+            new DetectionRollupService(mock(DetectionRollupRepository.class), new ObjectMapper());
+
+    private static TrackEvent appeared(String trackId) {
+        return new TrackEvent(ObjectTracker.TRACK_APPEARED, trackId, "person", 0.9, null);
+    }
+
+    private RollupBucket bucket(LocalDateTime minute) {
+        List<RollupBucket> series = service.getSeries("camera_one", minute, minute.plusMinutes(1), 1, null);
+        assertEquals(1, series.size());
+        return series.get(0);
+    }
+
+    @Test
+    void trackedPersonStandingInViewAppearsOnce() {
+        service.record("camera_one", MORNING, ONE_PERSON, List.of(appeared("t1")));
+        for (int frame = 0; frame < 100; frame++) {
+            service.record("camera_one", MORNING, ONE_PERSON, List.of());
+        }
+
+        RollupBucket bucket = bucket(MORNING);
+        assertEquals(Map.of("person", 1L), bucket.getAppeared());
+        assertEquals(Map.of("person", 101L), bucket.getDetectionFrames());
+        assertEquals(Map.of("person", 1), bucket.getPeaks());
+    }
+
+    @Test
+    void untrackedResultsOnlyCountDetectionFramesAndPeaks() {
+        service.record("camera_one", MORNING, ONE_PERSON, null);
+        service.record("camera_one", MORNING, TWO_PEOPLE, null);
+
+        RollupBucket bucket = bucket(MORNING);
+        assertTrue(bucket.getAppeared().isEmpty());
+        assertEquals(Map.of("person", 3L), bucket.getDetectionFrames());
+        assertEquals(Map.of("person", 2), bucket.getPeaks());
+    }
+
+    @Test
+    void resultsAreBucketedByCaptureTime() {
+        service.record("camera_one", MORNING.plusSeconds(59), ONE_PERSON, null);
+
+        assertEquals(Map.of("person", 1L), bucket(MORNING).getDetectionFrames());
+        assertTrue(bucket(MORNING.plusMinutes(1)).getDetectionFrames().isEmpty());
+    }
+}
@@ -0,0 +1,220 @@
+package com.wavestone.stacamback.service;
+
+import org.jcodec.api.SequenceEncoder;
+import org.jcodec.common.DemuxerTrack;
+import org.jcodec.common.io.NIOUtils;
+import org.jcodec.common.io.SeekableByteChannel;
+import org.jcodec.common.model.ColorSpace;
+import org.jcodec.common.model.Packet;
+import org.jcodec.common.model.Picture;
+import org.jcodec.containers.mp4.boxes.Box;
+import org.jcodec.containers.mp4.boxes.MovieBox;
+import org.jcodec.containers.mp4.boxes.MovieExtendsBox;
+import org.jcodec.containers.mp4.boxes.TrackExtendsBox;
+import org.jcodec.containers.mp4.demuxer.MP4Demuxer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FragmentedMp4ReaderTest {
+
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+    private static final int FRAGMENTS = 2;
+    private static final int FRAMES_PER_FRAGMENT = 3;
+
+    @TempDir
+    Path dir;
+
+    private Path regular;
+    private Path fragmented;
+    private byte[] bytes;
+    // End offsets of the movie box and of every moof and mdat box, in file order
+    private final List<Long> boxEnds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        regular = dir.resolve("regular.mp4");
+        SequenceEncoder encoder = SequenceEncoder.createSequenceEncoder(regular.toFile(), 25);
+        for (int i = 0; i < FRAGMENTS * FRAMES_PER_FRAGMENT; i++) {
+            encoder.encodeNativeFrame(frame(i));
+        }
+        encoder.finish();
+
+        fragmented = dir.resolve("fragmented.mp4");
+        bytes = fragment(regular);
+        Files.write(fragmented, bytes);
+    }
+
+    private static Picture frame(int index) {
+        Picture picture = Picture.create(WIDTH, HEIGHT, ColorSpace.RGB);
+        byte[] data = picture.getPlaneData(0);
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ((i * 7 + index * 16) % 256 - 128);
+        }
+        return picture;
+    }
+
+    /**
+     * Rewrite a regular MP4 as a fragmented one: the movie box with {@code mvex}, then every few samples a
+     * moof (tfhd + trun with sample sizes) followed by its mdat
+     */
+    private byte[] fragment(Path source) throws IOException {
+        List<ByteBuffer> samples = new ArrayList<>();
+        MovieBox movie;
+        int trackId;
+        try (SeekableByteChannel channel = NIOUtils.readableChannel(source.toFile())) {
+            MP4Demuxer demuxer = MP4Demuxer.createRawMP4Demuxer(channel);
+            movie = demuxer.getMovie();
+            trackId = movie.getVideoTrack().getTrackHeader().getTrackId();
+            DemuxerTrack track = demuxer.getVideoTrack();
+            Packet packet;
+            while ((packet = track.nextFrame()) != null) {
+                samples.add(NIOUtils.clone(packet.getData()));
+            }
+        }
+        assertEquals(FRAGMENTS * FRAMES_PER_FRAGMENT, samples.size());
+
+        TrackExtendsBox trackDefaults = TrackExtendsBox.createTrackExtendsBox();
+        trackDefaults.setTrackId(trackId);
+        trackDefaults.setDefaultSampleDescriptionIndex(1);
+        MovieExtendsBox movieExtends = MovieExtendsBox.createMovieExtendsBox();
+        movieExtends.add(trackDefaults);
+        movie.add(movieExtends);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        write(output, box(movie));
+        boxEnds.add((long) output.size());
+        for (int fragment = 0; fragment < FRAGMENTS; fragment++) {
+            List<ByteBuffer> fragmentSamples = samples.subList(fragment * FRAMES_PER_FRAGMENT,
+                    (fragment + 1) * FRAMES_PER_FRAGMENT);
+            int moofSize = 8 + 16 + 8 + 16 + 20 + 4 * fragmentSamples.size();
+            ByteBuffer moof = ByteBuffer.allocate(moofSize);
+            header(moof, moofSize, "moof");
+            header(moof, 16, "mfhd");
+            moof.putInt(0).putInt(fragment + 1);
+            header(moof, moofSize - 24, "traf");
+            header(moof, 16, "tfhd");
+            moof.putInt(0).putInt(trackId);
+            header(moof, 20 + 4 * fragmentSamples.size(), "trun");
+            // Flags: data offset and sample sizes present
+            moof.putInt(0x000201).putInt(fragmentSamples.size()).putInt(moofSize + 8);
+            int dataSize = 0;
+            for (ByteBuffer sample : fragmentSamples) {
+                moof.putInt(sample.remaining());
+                dataSize += sample.remaining();
+            }
+            write(output, moof.array());
+            boxEnds.add((long) output.size());
+
+            ByteBuffer mdat = ByteBuffer.allocate(8 + dataSize);
+            header(mdat, 8 + dataSize, "mdat");
+            fragmentSamples.forEach(sample -> mdat.put(sample.duplicate()));
+            write(output, mdat.array());
+            boxEnds.add((long) output.size());
+        }
+        return output.toByteArray();
+    }
+
+    private static byte[] box(Box box) {
+        ByteBuffer buffer = ByteBuffer.allocate(box.estimateSize() + 1024);
+        box.write(buffer);
+        buffer.flip();
+        return Arrays.copyOf(buffer.array(), buffer.limit());
+    }
+
+    private static void header(ByteBuffer buffer, int size, String type) {
+        buffer.putInt(size).put(type.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static void write(ByteArrayOutputStream output, byte[] data) {
+        output.write(data, 0, data.length);
+    }
+
+    private long movieEnd() {
+        return boxEnds.get(0);
+    }
+
+    private long moofEnd(int fragment) {
+        return boxEnds.get(1 + fragment * 2);
+    }
+
+    private long mdatEnd(int fragment) {
+        return boxEnds.get(2 + fragment * 2);
+    }
+
+    @Test
+    void waitsForTheWholeMovieBox() throws Exception {
+        try (FragmentedMp4Reader reader = new FragmentedMp4Reader(fragmented)) {
+            assertEquals(0, reader.readAvailable(movieEnd() - 1, false, (frame, picture) -> fail()));
+            assertEquals(FragmentedMp4Reader.State.WAITING_FOR_MOVIE, reader.getState());
+
+            assertEquals(0, reader.readAvailable(movieEnd(), false, (frame, picture) -> fail()));
+            assertEquals(FragmentedMp4Reader.State.FRAGMENTED, reader.getState());
+            assertEquals(WIDTH, reader.getWidth());
+            assertEquals(HEIGHT, reader.getHeight());
+        }
+    }
+
+    @Test
+    void partialMovieFragmentIsNotDecoded() throws Exception {
+        try (FragmentedMp4Reader reader = new FragmentedMp4Reader(fragmented)) {
+            assertEquals(0, reader.readAvailable(moofEnd(0) - 4, false, (frame, picture) -> fail()));
+            assertEquals(FragmentedMp4Reader.State.FRAGMENTED, reader.getState());
+            assertEquals(0, reader.getFrameCount());
+        }
+    }
+
+    @Test
+    void fragmentWithPartialMediaDataIsDecodedOnceComplete() throws Exception {
+        List<Integer> frames = new ArrayList<>();
+        try (FragmentedMp4Reader reader = new FragmentedMp4Reader(fragmented)) {
+            assertEquals(0, reader.readAvailable(moofEnd(0), false, (frame, picture) -> frames.add(frame)));
+            assertEquals(0, reader.readAvailable(mdatEnd(0) - 1, false, (frame, picture) -> frames.add(frame)));
+            assertTrue(frames.isEmpty());
+
+            assertEquals(FRAMES_PER_FRAGMENT,
+                    reader.readAvailable(mdatEnd(0), false, (frame, picture) -> frames.add(frame)));
+            assertEquals(List.of(1, 2, 3), frames);
+        }
+    }
+
+    @Test
+    void growingFileDecodesEveryFrameOnceInOrder() throws Exception {
+        List<Integer> frames = new ArrayList<>();
+        try (FragmentedMp4Reader reader = new FragmentedMp4Reader(fragmented)) {
+            for (long available = 97; available < bytes.length; available += 97) {
+                reader.readAvailable(available, false, (frame, picture) -> {
+                    assertEquals(WIDTH, picture.getCroppedWidth());
+                    frames.add(frame);
+                });
+            }
+            reader.readAvailable(bytes.length, true, (frame, picture) -> frames.add(frame));
+
+            assertEquals(List.of(1, 2, 3, 4, 5, 6), frames);
+            assertEquals(FRAGMENTS * FRAMES_PER_FRAGMENT, reader.getFrameCount());
+        }
+    }
+
+    @Test
+    void regularMp4IsUnsupported() throws Exception {
+        try (FragmentedMp4Reader reader = new FragmentedMp4Reader(regular)) {
+            reader.readAvailable(Files.size(regular), true, (frame, picture) -> fail());
+
+            assertEquals(FragmentedMp4Reader.State.UNSUPPORTED, reader.getState());
+            assertNotNull(reader.getUnsupportedReason());
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.wavestone.stacamback.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class InferenceCacheTest {
+
+    private static final int CELL = 10;
+
+    @TempDir
+    Path dir;
+
+    private InferenceCache cache;
+    private final AtomicInteger inferences = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        cache = new InferenceCache(new ObjectMapper());
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "maxDistance", 4);
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 300L);
+        ReflectionTestUtils.setField(cache, "maxEntries", 100);
+        ReflectionTestUtils.setField(cache, "maxBytes", 1L << 20);
+    }
+
+    /**
+     * Image whose dHash is {@code hash}: a 9x8 grid of gray cells where a set bit makes a cell brighter than
+     * its right neighbour
+     */
+    private String image(String name, long hash) throws IOException {
+        BufferedImage image = new BufferedImage(9 * CELL, 8 * CELL, BufferedImage.TYPE_INT_RGB);
+        for (int row = 0; row < 8; row++) {
+            int gray = 128;
+            for (int column = 0; column < 9; column++) {
+                if (column > 0) {
+                    boolean brighterLeft = (hash >>> (63 - (row * 8 + column - 1)) & 1) == 1;
+                    gray += brighterLeft ? -10 : 10;
+                }
+                int rgb = gray << 16 | gray << 8 | gray;
+                for (int y = row * CELL; y < (row + 1) * CELL; y++) {
+                    for (int x = column * CELL; x < (column + 1) * CELL; x++) {
+                        image.setRGB(x, y, rgb);
+                    }
+                }
+            }
+        }
+        Path file = dir.resolve(name + ".png");
+        ImageIO.write(image, "png", file.toFile());
+        return file.toString();
+    }
+
+    private String detect(String cameraId, String imagePath) throws Exception {
+        return cache.detect(cameraId, imagePath, () -> {
+            inferences.incrementAndGet();
+            return "{\"fileName\":\"" + Path.of(imagePath).getFileName() + "\",\"detections\":[]}";
+        });
+    }
+
+    @Test
+    void imagesWithinMaxDistanceReuseDetections() throws Exception {
+        detect("camera_one", image("base", 0L));
+
+        String reused = detect("camera_one", image("four-bits", 0b1111L));
+
+        assertEquals(1, inferences.get());
+        assertEquals("{\"fileName\":\"four-bits.png\",\"detections\":[]}", reused);
+        assertEquals(1, cache.getStats().getHits());
+    }
+
+    @Test
+    void imagesBeyondMaxDistanceRunTheModel() throws Exception {
+        detect("camera_one", image("base", 0L));
+
+        detect("camera_one", image("five-bits", 0b11111L));
+
+        assertEquals(2, inferences.get());
+        assertEquals(2, cache.getStats().getMisses());
+    }
+
+    @Test
+    void imagesOfAnotherCameraRunTheModel() throws Exception {
+        String image = image("base", 0L);
+        detect("camera_one", image);
+
+        detect("camera_two", image);
+
+        assertEquals(2, inferences.get());
+    }
+
+    @Test
+    void expiredEntriesAreNotReused() throws Exception {
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 0L);
+        String image = image("base", 0L);
+        detect("camera_one", image);
+        Thread.sleep(20);
+
+        detect("camera_one", image);
+
+        assertEquals(2, inferences.get());
+        assertEquals(1, cache.getStats().getEntries());
+    }
+
+    @Test
+    void leastRecentlyUsedEntryIsEvicted() throws Exception {
+        ReflectionTestUtils.setField(cache, "maxEntries", 2);
+        String first = image("first", 0L);
+        String second = image("second", 0xFFFFL);
+        String third = image("third", 0xFFFF0000L);
+        detect("camera_one", first);
+        detect("camera_one", second);
+        // Using the first entry makes the second one the least recently used
+        detect("camera_one", first);
+
+        detect("camera_one", third);
+        assertEquals(3, inferences.get());
+        assertEquals(2, cache.getStats().getEntries());
+
+        detect("camera_one", first);
+        assertEquals(3, inferences.get());
+        detect("camera_one", second);
+        assertEquals(4, inferences.get());
+    }
+
+    @Test
+    void entriesAreEvictedBeyondMaxBytes() throws Exception {
+        String first = image("first", 0L);
+        detect("camera_one", first);
+        long entryBytes = cache.getStats().getBytes();
+        ReflectionTestUtils.setField(cache, "maxBytes", entryBytes + entryBytes / 2);
+
+        detect("camera_one", image("second", 0xFFFFL));
+
+        assertEquals(1, cache.getStats().getEntries());
+        detect("camera_one", first);
+        assertEquals(3, inferences.get());
+    }
+}
@@ -0,0 +1,155 @@
+package com.wavestone.stacamback.service;
+
+import com.wavestone.stacamback.model.TrackEvent;
+import com.wavestone.stacamback.model.TrackedObject;
+import com.wavestone.stacamback.model.TrackingUpdate;
+import com.wavestone.stacamback.model.YoloDetection;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ObjectTrackerTest {
+
+    private static YoloDetection detection(String className, double x, double y) {
+        return new YoloDetection(className, 0.9, new YoloDetection.BoundingBox(x, y, 100, 100));
+    }
+
+    private static List<String> eventTypes(TrackingUpdate update) {
+        return update.getEvents().stream().map(TrackEvent::getType).toList();
+    }
+
+    @Test
+    void iouOfBoxes() {
+        double[] box = {0, 0, 100, 100};
+        assertEquals(1.0, ObjectTracker.iou(box, box.clone()), 1e-9);
+        assertEquals(50.0 / 150.0, ObjectTracker.iou(box, new double[]{50, 0, 100, 100}), 1e-9);
+        assertEquals(0.0, ObjectTracker.iou(box, new double[]{100, 0, 100, 100}), 1e-9);
+    }
+
+    @Test
+    void overlappingDetectionsOfTheSameClassContinueTheTrack() {
+        ObjectTracker tracker = new ObjectTracker("t", 0.3, 0.5, 1, 2, 10);
+
+        TrackingUpdate first = tracker.update(1, List.of(detection("car", 0, 0)));
+        TrackingUpdate second = tracker.update(2, List.of(detection("car", 10, 0)));
+
+        assertEquals(List.of(ObjectTracker.TRACK_APPEARED), eventTypes(first));
+        assertTrue(second.getEvents().isEmpty());
+        List<TrackedObject> active = tracker.getActiveTracks();
+        assertEquals(1, active.size());
+        assertEquals("t1", active.get(0).getTrackId());
+        assertEquals(10, active.get(0).getBoundingBox().getX(), 1e-9);
+    }
+
+    @Test
+    void detectionsOfAnotherClassOrWithoutOverlapStartNewTracks() {
+        ObjectTracker tracker = new ObjectTracker("t", 0.3, 0.5, 1, 2, 10);
+        tracker.update(1, List.of(detection("car", 0, 0)));
+
+        TrackingUpdate update = tracker.update(2, List.of(detection("person", 0, 0), detection("car", 500, 0)));
+
+        assertEquals(List.of(ObjectTracker.TRACK_APPEARED, ObjectTracker.TRACK_APPEARED), eventTypes(update));
+        assertEquals(List.of("t2", "t3"), update.getEvents().stream().map(TrackEvent::getTrackId).toList());
+    }
+
+    @Test
+    void trackAppearsAfterMinHits() {
+        ObjectTracker tracker = new ObjectTracker("t", 0.3, 0.5, 3, 2, 10);
+
+        assertTrue(tracker.update(1, List.of(detection("car", 0, 0))).getEvents().isEmpty());
+        assertTrue(tracker.update(2, List.of(detection("car", 0, 0))).getEvents().isEmpty());
+        assertTrue(tracker.getActiveTracks().isEmpty());
+        TrackingUpdate third = tracker.update(3, List.of(detection("car", 0, 0)));
+
+        assertEquals(List.of(ObjectTracker.TRACK_APPEARED), eventTypes(third));
+        assertEquals(1, tracker.getActiveTracks().size());
+    }
+
+    @Test
+    void trackMovesOnceItDriftsFromTheReportedBox() {
+        ObjectTracker tracker = new ObjectTracker("t", 0.3, 0.5, 1, 2, 10);
+        tracker.update(1, List.of(detection("car", 0, 0)));
+
+        // IoU with the reported box at x=0: 0.82, then 0.54, then 0.33
+        assertTrue(tracker.update(2, List.of(detection("car", 10, 0))).getEvents().isEmpty());
+        assertTrue(tracker.update(3, List.of(detection("car", 30, 0))).getEvents().isEmpty());
+        TrackingUpdate moved = tracker.update(4, List.of(detection("car", 50, 0)));
+
+        assertEquals(List.of(ObjectTracker.TRACK_MOVED), eventTypes(moved));
+        assertEquals("t1", moved.getEvents().get(0).getTrackId());
+        assertEquals(50, moved.getEvents().get(0).getBoundingBox().getX(), 1e-9);
+        // The moved box becomes the new reference
+        assertTrue(tracker.update(5, List.of(detection("car", 60, 0))).getEvents().isEmpty());
+    }
+
+    @Test
+    void trackDisappearsAfterMaxMissedFrames() {
+        ObjectTracker tracker = new ObjectTracker("t", 0.3, 0.5, 1, 2, 10);
+        tracker.update(1, List.of(detection("car", 0, 0)));
+
+        assertTrue(tracker.update(2, List.of()).getEvents().isEmpty());
+        assertTrue(tracker.getActiveTracks().isEmpty());
+        assertTrue(tracker.update(3, List.of()).getEvents().isEmpty());
+        TrackingUpdate gone = tracker.update(4, List.of());
+
+        assertEquals(List.of(ObjectTracker.TRACK_DISAPPEARED), eventTypes(gone));
+        List<TrackedObject> finished = tracker.getFinishedTracks();
+        assertEquals(1, finished.size());
+        assertEquals(1, finished.get(0).getFirstFrame());
+        assertEquals(1, finished.get(0).getLastFrame());
+    }
+
+    @Test
+    void trackCoastingWithinMaxMissedFramesIsContinued() {
+        ObjectTracker tracker = new ObjectTracker("t", 0.3, 0.5, 1, 2, 10);
+        tracker.update(1, List.of(detection("car", 0, 0)));
+        tracker.update(2, List.of());
+        tracker.update(3, List.of());
+
+        TrackingUpdate back = tracker.update(4, List.of(detection("car", 0, 0)));
+
+        assertTrue(back.getEvents().isEmpty());
+        assertEquals("t1", tracker.getActiveTracks().get(0).getTrackId());
+    }
+
+    @Test
+    void unconfirmedTrackDisappearsSilently() {
+        ObjectTracker tracker = new ObjectTracker("t", 0.3, 0.5, 3, 0, 10);
+        tracker.update(1, List.of(detection("car", 0, 0)));
+
+        assertTrue(tracker.update(2, List.of()).getEvents().isEmpty());
+        assertTrue(tracker.close().isEmpty());
+        assertTrue(tracker.getFinishedTracks().isEmpty());
+    }
+
+    @Test
+    void keyframesFollowTheInterval() {
+        ObjectTracker tracker = new ObjectTracker("t", 0.3, 0.5, 1, 2, 3);
+
+        List<Integer> keyframes = new ArrayList<>();
+        for (int frame = 1; frame <= 7; frame++) {
+            TrackingUpdate update = tracker.update(frame, List.of(detection("car", 0, 0)));
+            if (update.isKeyframe()) {
+                keyframes.add(frame);
+                assertEquals(1, update.getTracks().size());
+            } else {
+                assertNull(update.getTracks());
+            }
+        }
+
+        assertEquals(List.of(1, 4, 7), keyframes);
+    }
+
+    @Test
+    void keyframeIsDueAfterSkippedFrames() {
+        ObjectTracker tracker = new ObjectTracker("t", 0.3, 0.5, 1, 2, 3);
+
+        assertTrue(tracker.update(1, List.of()).isKeyframe());
+        assertFalse(tracker.update(2, List.of()).isKeyframe());
+        assertTrue(tracker.update(5, List.of()).isKeyframe());
+        assertFalse(tracker.update(6, List.of()).isKeyframe());
+    }
+}
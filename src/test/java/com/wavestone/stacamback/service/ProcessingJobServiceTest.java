@@ -0,0 +1,242 @@
+package com.wavestone.stacamback.service;
+
+import com.wavestone.stacamback.config.NodeIdentity;
+import com.wavestone.stacamback.config.PipelineExecutors;
+import com.wavestone.stacamback.model.DetectionResult;
+import com.wavestone.stacamback.model.FrameRangeResult;
+import com.wavestone.stacamback.model.ProcessingJob;
+import com.wavestone.stacamback.repository.DetectionResultListener;
+import com.wavestone.stacamback.repository.DetectionResultRepository;
+import com.wavestone.stacamback.repository.ProcessingJobRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Runs the job lifecycle against the database. Every service call commits on its own, as it does when
+ * several nodes share the job table; the node a call runs on is switched through {@link NodeIdentity}.
+ */
+@DataJpaTest(properties = {
+        "app.jobs.mode=cluster",
+        "app.jobs.split-frames=750",
+        "app.jobs.lease-seconds=30",
+        "app.jobs.max-attempts=2"
+})
+@Import({ProcessingJobService.class, DetectionResultListener.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ProcessingJobServiceTest {
+
+    private static final String NODE_A = "node-a";
+    private static final String NODE_B = "node-b";
+
+    @Autowired
+    private ProcessingJobService service;
+
+    @Autowired
+    private ProcessingJobRepository jobRepository;
+
+    @Autowired
+    private DetectionResultRepository detectionResultRepository;
+
+    @MockitoBean
+    private YoloProcessingService yoloProcessingService;
+
+    @MockitoBean
+    private NodeIdentity nodeIdentity;
+
+    @MockitoBean
+    private CancellationRegistry cancellations;
+
+    @MockitoBean
+    private PipelineExecutors pipelineExecutors;
+
+    @BeforeEach
+    void setUp() {
+        onNode(NODE_A);
+        when(yoloProcessingService.markCancelled(any(), anyString())).thenAnswer(invocation -> {
+            DetectionResult result = invocation.getArgument(0);
+            result.setStatus("CANCELLED");
+            return detectionResultRepository.save(result);
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        jobRepository.deleteAll();
+        detectionResultRepository.deleteAll();
+    }
+
+    private void onNode(String nodeId) {
+        when(nodeIdentity.getNodeId()).thenReturn(nodeId);
+    }
+
+    private DetectionResult upload(String fileType) {
+        DetectionResult result = new DetectionResult();
+        result.setFileName("upload");
+        result.setFileType(fileType);
+        result.setFilePath("/uploads/upload");
+        result.setCameraId("camera_one");
+        result.setStatus("PROCESSING");
+        return detectionResultRepository.save(result);
+    }
+
+    /**
+     * A video split into three frame-range jobs of 754 source frames (aligned to the sampling interval)
+     */
+    private DetectionResult splitVideo() {
+        when(yoloProcessingService.getVideoFrameCount(anyString())).thenReturn(2000);
+        DetectionResult video = upload("VIDEO");
+        service.enqueue(video);
+        return video;
+    }
+
+    private ProcessingJob job(Long id) {
+        return jobRepository.findById(id).orElseThrow();
+    }
+
+    private void expireLease(Long jobId) {
+        ProcessingJob job = job(jobId);
+        job.setLeaseExpiresAt(LocalDateTime.now().minusSeconds(1));
+        jobRepository.save(job);
+    }
+
+    private List<ProcessingJob> children(Long detectionResultId) {
+        return jobRepository.findAll().stream()
+                .filter(job -> job.getDetectionResultId().equals(detectionResultId) && job.getParentJobId() != null)
+                .toList();
+    }
+
+    @Test
+    void expiredLeaseIsReclaimedByAnotherNode() {
+        ProcessingJob enqueued = service.enqueue(upload("IMAGE"));
+        Long jobId = service.claim(5).get(0).getId();
+        assertTrue(service.claim(5).isEmpty());
+
+        expireLease(jobId);
+        onNode(NODE_B);
+        List<ProcessingJob> reclaimed = service.claim(5);
+
+        assertEquals(List.of(enqueued.getId()), reclaimed.stream().map(ProcessingJob::getId).toList());
+        ProcessingJob job = job(jobId);
+        assertEquals("RUNNING", job.getStatus());
+        assertEquals(NODE_B, job.getOwnerNode());
+        assertEquals(2, job.getAttempts());
+
+        // The first owner lost its lease, so its late result is ignored
+        onNode(NODE_A);
+        service.complete(jobId, null, "late failure");
+        assertEquals("RUNNING", job(jobId).getStatus());
+        onNode(NODE_B);
+        service.complete(jobId, null, null);
+        assertEquals("COMPLETED", job(jobId).getStatus());
+    }
+
+    @Test
+    void heartbeatKeepsTheLeaseOfItsOwnerOnly() {
+        service.enqueue(upload("IMAGE"));
+        Long jobId = service.claim(5).get(0).getId();
+
+        onNode(NODE_B);
+        assertEquals(0, service.heartbeat(List.of(jobId)));
+        onNode(NODE_A);
+        assertEquals(1, service.heartbeat(List.of(jobId)));
+    }
+
+    @Test
+    void jobIsAbandonedAfterMaxAttempts() {
+        DetectionResult image = upload("IMAGE");
+        Long jobId = service.enqueue(image).getId();
+        for (int attempt = 1; attempt <= 2; attempt++) {
+            assertEquals(1, service.claim(5).size());
+            expireLease(jobId);
+        }
+
+        assertTrue(service.claim(5).isEmpty());
+
+        ProcessingJob job = job(jobId);
+        assertEquals("FAILED", job.getStatus());
+        assertEquals(2, job.getAttempts());
+        assertEquals("Lease expired after 2 attempts", job.getErrorMessage());
+        verify(yoloProcessingService).markFailed(argThat(result -> result.getId().equals(image.getId())),
+                eq("Lease expired after 2 attempts"));
+    }
+
+    @Test
+    void lastFrameRangeCompletesTheVideoExactlyOnce() {
+        DetectionResult video = splitVideo();
+        List<ProcessingJob> ranges = children(video.getId());
+        assertEquals(3, ranges.size());
+        assertEquals(3, service.claim(5).size());
+
+        service.complete(ranges.get(0).getId(), new FrameRangeResult(58, 58), null);
+        service.complete(ranges.get(1).getId(), null, "decoder crashed");
+        verify(yoloProcessingService, never()).completeVideo(any(), anyInt(), anyInt());
+
+        service.complete(ranges.get(2).getId(), new FrameRangeResult(38, 30), null);
+        // Repeated reports of finished ranges change nothing
+        service.complete(ranges.get(2).getId(), new FrameRangeResult(38, 30), null);
+        service.complete(ranges.get(0).getId(), new FrameRangeResult(58, 58), null);
+
+        verify(yoloProcessingService, times(1)).completeVideo(
+                argThat(result -> result.getId().equals(video.getId())), eq(96), eq(88));
+        verify(yoloProcessingService, never()).failVideo(any(), anyString());
+        ProcessingJob parent = job(ranges.get(0).getParentJobId());
+        assertEquals("COMPLETED", parent.getStatus());
+        assertEquals(96, parent.getTotalFrames());
+    }
+
+    @Test
+    void videoFailsOnceWhenEveryFrameRangeFails() {
+        DetectionResult video = splitVideo();
+        service.claim(5);
+
+        for (ProcessingJob range : children(video.getId())) {
+            service.complete(range.getId(), null, "decoder crashed");
+        }
+
+        verify(yoloProcessingService, times(1)).failVideo(
+                argThat(result -> result.getId().equals(video.getId())), eq("All frame-range jobs failed"));
+        verify(yoloProcessingService, never()).completeVideo(any(), anyInt(), anyInt());
+    }
+
+    @Test
+    void cancelStopsEveryJobOfTheUpload() {
+        DetectionResult video = splitVideo();
+        ProcessingJob running = service.claim(1).get(0);
+
+        assertTrue(service.cancel(video.getId()).isPresent());
+
+        assertTrue(jobRepository.findAll().stream().allMatch(job -> "CANCELLED".equals(job.getStatus())));
+        verify(cancellations).cancel(video.getId(), "Cancelled by request");
+        // The node running a range learns about it at its next heartbeat
+        assertEquals(List.of(video.getId()), service.findCancelledUploads(List.of(running.getId())));
+        assertTrue(service.claim(5).isEmpty());
+
+        service.complete(running.getId(), new FrameRangeResult(58, 58), null);
+        assertEquals("CANCELLED", job(running.getId()).getStatus());
+        verify(yoloProcessingService, never()).completeVideo(any(), anyInt(), anyInt());
+    }
+
+    @Test
+    void finishedUploadCannotBeCancelled() {
+        DetectionResult image = upload("IMAGE");
+        image.setStatus("COMPLETED");
+        detectionResultRepository.save(image);
+
+        assertThrows(IllegalStateException.class, () -> service.cancel(image.getId()));
+        assertTrue(service.cancel(-1L).isEmpty());
+    }
+}